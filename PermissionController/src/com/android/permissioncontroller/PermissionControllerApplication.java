@@ -20,15 +20,20 @@ import android.app.Application;
 import android.content.ComponentName;
 import android.content.pm.PackageItemInfo;
 import android.content.pm.PackageManager;
+import android.content.res.Configuration;
 import android.os.Build;
 import android.os.Process;
 import android.util.ArrayMap;
 import android.view.accessibility.AccessibilityManager;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.RequiresApi;
 
 import com.android.modules.utils.build.SdkLevel;
+import com.android.permissioncontroller.permission.utils.AppIconCache;
+import com.android.permissioncontroller.permission.utils.AppLabelCache;
 import com.android.permissioncontroller.permission.utils.KotlinUtils;
+import com.android.permissioncontroller.permission.utils.ProcessWarmer;
 import com.android.permissioncontroller.permission.utils.Utils;
 import com.android.permissioncontroller.privacysources.SafetyCenterAccessibilityListener;
 import com.android.permissioncontroller.role.model.RoleParserInitializer;
@@ -55,6 +60,19 @@ public final class PermissionControllerApplication extends Application {
         if (Utils.isHealthPermissionUiEnabled()) {
             KotlinUtils.INSTANCE.addHealthPermissions(this);
         }
+        if (Utils.isGrantDialogPrewarmEnabled()) {
+            ProcessWarmer.INSTANCE.warmUp(this);
+        }
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+
+        // Cached labels are only valid for the locales they were loaded for, and cached icons for
+        // the icon shape they were rendered with
+        AppLabelCache.onConfigurationChanged(newConfig);
+        AppIconCache.onConfigurationChanged();
     }
 
     /**
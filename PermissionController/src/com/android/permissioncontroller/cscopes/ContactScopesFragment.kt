@@ -44,6 +44,10 @@ class ContactScopesFragment : PackageExtraConfigFragment(), MenuProvider {
 
     lateinit var footer: FooterPreference
 
+    lateinit var viewModelLiveData: ContactScopesViewModelLiveData
+
+    var contactScopesEnabled = false
+
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
 
@@ -91,6 +95,9 @@ class ContactScopesFragment : PackageExtraConfigFragment(), MenuProvider {
 
         footer = createFooterPreference()
 
+        viewModelLiveData = ContactScopesViewModelLiveData[pkgName]
+        viewModelLiveData.observe(this) { updateCategories(it) }
+
         requireActivity().addMenuProvider(this, this)
     }
 
@@ -103,6 +110,7 @@ class ContactScopesFragment : PackageExtraConfigFragment(), MenuProvider {
     override fun update() {
         val gosPackageState = getGosPackageStateOrDefault()
         val enabled = gosPackageState.hasFlag(GosPackageState.FLAG_CONTACT_SCOPES_ENABLED)
+        contactScopesEnabled = enabled
 
         addOrRemove(mainSwitch, !enabled)
         if (!enabled) {
@@ -114,7 +122,8 @@ class ContactScopesFragment : PackageExtraConfigFragment(), MenuProvider {
         categories.forEach { addOrRemove(it, enabled) }
 
         if (enabled) {
-            updateCategories()
+            // categories are updated once the view model is loaded
+            viewModelLiveData.updateAsync()
         }
 
         var footerSummary = 0
@@ -140,8 +149,10 @@ class ContactScopesFragment : PackageExtraConfigFragment(), MenuProvider {
         requireActivity().invalidateMenu()
     }
 
-    fun updateCategories() {
-        val model = callScopedContactsProvider(ContactScopesApi.METHOD_GET_VIEW_MODEL, arg = pkgName)
+    fun updateCategories(model: Map<Int, List<ContactScope>>?) {
+        if (!contactScopesEnabled) {
+            return
+        }
 
         if (model == null) {
             pressBack()
@@ -149,50 +160,67 @@ class ContactScopesFragment : PackageExtraConfigFragment(), MenuProvider {
         }
 
         for (category in categories) {
-            category.removeAll()
-
-            val typeStr: String = category.key
-            val scopes = model.getParcelableArrayList(typeStr, ContactScope::class.java)
+            val type = category.key.toInt()
+            val scopes = model[type]
 
             category.isVisible = scopes != null
 
             if (scopes == null) {
+                category.removeAll()
                 continue
             }
 
-            val type = typeStr.toInt()
+            // reuse the preferences of scopes that are still present, instead of recreating all of
+            // them, which is slow when there are many scopes
+            val oldPrefs = HashMap<String, PreferenceWithImageButton>()
+            for (i in 0 until category.preferenceCount) {
+                val pref = category.getPreference(i) as PreferenceWithImageButton
+                oldPrefs[pref.key] = pref
+            }
 
-            for (scope in scopes) {
-                PreferenceWithImageButton(context).apply {
-                    val scopeId = scope.id
-                    val scopeTitle = scope.title
-                    if (scopeTitle != null) {
-                        title = scopeTitle
-                        scope.summary?.let { summary = it }
-                    } else {
-                        title = getString(R.string.cscope_missing_item, scopeId)
-                    }
-                    setupButton(R.drawable.ic_item_remove, getText(R.string.cscope_btn_remove)) {
-                        removeScope(type, scopeId)
-                    }
-                    val detailsUri = scope.detailsUri
-                    if (detailsUri != null) {
-                        setOnPreferenceClickListener {
-                            if (type == ContactScope.TYPE_GROUP) {
-                                openGroup(scopeId)
-                            } else {
-                                launchIntentView(detailsUri, ContactsContract.Contacts.CONTENT_ITEM_TYPE)
-                            }
-                            true
-                        }
+            scopes.forEachIndexed { index, scope ->
+                val prefKey = "${type}_${scope.id}"
+                val oldPref = oldPrefs.remove(prefKey)
+                val pref = oldPref ?: PreferenceWithImageButton(context).apply { key = prefKey }
+                updateScopePreference(pref, type, scope)
+                pref.order = index
+                if (oldPref == null) {
+                    category.addPreference(pref)
+                }
+            }
+
+            oldPrefs.values.forEach { category.removePreference(it) }
+        }
+    }
+
+    private fun updateScopePreference(pref: PreferenceWithImageButton, type: Int, scope: ContactScope) {
+        pref.apply {
+            val scopeId = scope.id
+            val scopeTitle = scope.title
+            if (scopeTitle != null) {
+                title = scopeTitle
+                summary = scope.summary
+            } else {
+                title = getString(R.string.cscope_missing_item, scopeId)
+                summary = null
+            }
+            setupButton(R.drawable.ic_item_remove, getText(R.string.cscope_btn_remove)) {
+                removeScope(type, scopeId)
+            }
+            val detailsUri = scope.detailsUri
+            if (detailsUri != null) {
+                setOnPreferenceClickListener {
+                    if (type == ContactScope.TYPE_GROUP) {
+                        openGroup(scopeId)
                     } else {
-                        isSelectable = false
+                        launchIntentView(detailsUri, ContactsContract.Contacts.CONTENT_ITEM_TYPE)
                     }
-                    key = "${type}_${scopeId}"
-                }.let {
-                    category.addPreference(it)
+                    true
                 }
+            } else {
+                onPreferenceClickListener = null
             }
+            isSelectable = detailsUri != null
         }
     }
 
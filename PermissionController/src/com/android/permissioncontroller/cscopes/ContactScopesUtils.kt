@@ -5,6 +5,7 @@ import android.content.Context
 import android.content.Intent
 import android.content.pm.GosPackageState
 import com.android.permissioncontroller.ext.ScopesUtils
+import com.android.permissioncontroller.permission.data.GosPackageStateLiveData
 
 const val BUNDLED_CONTACTS_APP_PACKAGE = "com.android.contacts"
 
@@ -22,7 +23,7 @@ object ContactScopesUtils {
 
     @JvmStatic
     fun isContactScopesEnabled(packageName: String): Boolean {
-        val ps = GosPackageState.get(packageName)
+        val ps = GosPackageStateLiveData.getPackageState(packageName)
         return isContactScopesEnabled(ps)
     }
 
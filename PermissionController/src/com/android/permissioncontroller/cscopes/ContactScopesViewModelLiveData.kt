@@ -0,0 +1,92 @@
+package com.android.permissioncontroller.cscopes
+
+import android.app.Application
+import android.database.ContentObserver
+import android.ext.cscopes.ContactScope
+import android.ext.cscopes.ContactScopesApi
+import android.ext.cscopes.ContactScopesApi.SCOPED_CONTACTS_PROVIDER_AUTHORITY
+import android.os.Handler
+import android.os.Looper
+import android.provider.ContactsContract
+import com.android.permissioncontroller.PermissionControllerApplication
+import com.android.permissioncontroller.permission.data.DataRepository
+import com.android.permissioncontroller.permission.data.SmartAsyncMediatorLiveData
+import kotlinx.coroutines.Job
+
+/** The scope types of the contact scopes view model, in display order. */
+private val CONTACT_SCOPE_TYPES = intArrayOf(
+    ContactScope.TYPE_GROUP,
+    ContactScope.TYPE_CONTACT,
+    ContactScope.TYPE_NUMBER,
+    ContactScope.TYPE_EMAIL,
+)
+
+/**
+ * A LiveData which tracks the contact scopes view model of a package, i.e. its contact scopes by
+ * scope type. A type is absent if it shouldn't be shown. The value is null if the scoped contacts
+ * provider has no view model for the package.
+ *
+ * The view model is loaded on request through [updateAsync], e.g. after the contact scopes of the
+ * package are changed, and when contacts change while it is observed.
+ *
+ * @param app The current application
+ * @param packageName The package whose contact scopes view model is tracked
+ */
+class ContactScopesViewModelLiveData(
+    private val app: Application,
+    private val packageName: String
+) : SmartAsyncMediatorLiveData<Map<Int, List<ContactScope>>?>(alwaysUpdateOnActive = false) {
+
+    private val contentObserver =
+        object : ContentObserver(Handler(Looper.getMainLooper())) {
+            override fun onChange(selfChange: Boolean) {
+                updateAsync()
+            }
+        }
+
+    override suspend fun loadDataAndPostValue(job: Job) {
+        if (job.isCancelled) {
+            return
+        }
+
+        val model = app.contentResolver.call(SCOPED_CONTACTS_PROVIDER_AUTHORITY,
+                ContactScopesApi.METHOD_GET_VIEW_MODEL, packageName, null)
+
+        if (model == null) {
+            postValue(null)
+            return
+        }
+
+        val scopesByType = LinkedHashMap<Int, List<ContactScope>>()
+        for (type in CONTACT_SCOPE_TYPES) {
+            val scopes = model.getParcelableArrayList(type.toString(), ContactScope::class.java)
+            if (scopes != null) {
+                scopesByType[type] = scopes
+            }
+        }
+        postValue(scopesByType)
+    }
+
+    override fun onActive() {
+        super.onActive()
+        // titles and summaries of scopes come from the contacts database
+        app.contentResolver.registerContentObserver(ContactsContract.AUTHORITY_URI,
+                true, contentObserver)
+    }
+
+    override fun onInactive() {
+        app.contentResolver.unregisterContentObserver(contentObserver)
+        super.onInactive()
+    }
+
+    /**
+     * Repository for [ContactScopesViewModelLiveData]
+     *
+     * <p> Key value is a package name, value is its corresponding LiveData.
+     */
+    companion object : DataRepository<String, ContactScopesViewModelLiveData>() {
+        override fun newValue(key: String): ContactScopesViewModelLiveData {
+            return ContactScopesViewModelLiveData(PermissionControllerApplication.get(), key)
+        }
+    }
+}
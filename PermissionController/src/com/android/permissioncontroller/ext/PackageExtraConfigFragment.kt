@@ -5,6 +5,7 @@ import android.content.pm.GosPackageState
 import android.os.Bundle
 import android.os.Process
 import android.text.TextUtils
+import com.android.permissioncontroller.permission.data.GosPackageStateLiveData
 import com.android.permissioncontroller.permission.ui.handheld.pressBack
 import com.android.permissioncontroller.permission.utils.KotlinUtils.getBadgedPackageIcon
 import com.android.permissioncontroller.permission.utils.KotlinUtils.getPackageLabel
@@ -26,14 +27,23 @@ abstract class PackageExtraConfigFragment : BaseSettingsWithLargeHeaderFragment(
         }
         val icon = getBadgedPackageIcon(application, pkgName, user)
         setHeader(icon!!, label, null, user, false)
+
+        // keeps the cached package state current, and updates the page when the state changes,
+        // e.g. after it is edited
+        GosPackageStateLiveData[pkgName].observe(this) {
+            if (isResumed) {
+                update()
+            }
+        }
     }
 
     fun getGosPackageStateOrDefault(): GosPackageState {
-        return GosPackageState.getOrDefault(pkgName)
+        return GosPackageStateLiveData.getPackageState(pkgName)
+                ?: GosPackageState.getOrDefault(pkgName)
     }
 
     fun getGosPackageStateOrPressBack(): GosPackageState? {
-        val ps = GosPackageState.get(pkgName)
+        val ps = GosPackageStateLiveData.getPackageState(pkgName)
         if (ps == null) {
             // should happen if the package was racily uninstalled
             pressBack()
@@ -43,7 +53,8 @@ abstract class PackageExtraConfigFragment : BaseSettingsWithLargeHeaderFragment(
 
     fun GosPackageState.Editor.applyOrPressBack() {
         if (apply()) {
-            update()
+            // the page is updated once the edited state is loaded
+            GosPackageStateLiveData.onPackageStateChanged(pkgName)
         } else {
             // apply() fails only if the package is uninstalled
             pressBack()
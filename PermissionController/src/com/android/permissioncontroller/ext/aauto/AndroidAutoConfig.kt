@@ -32,6 +32,7 @@ import com.android.permissioncontroller.R
 import com.android.permissioncontroller.ext.BaseSettingsActivity
 import com.android.permissioncontroller.ext.addCategory
 import com.android.permissioncontroller.ext.addPref
+import com.android.permissioncontroller.permission.data.GosPackageStateLiveData
 import com.android.permissioncontroller.permission.ui.handheld.PermissionsCollapsingToolbarBaseFragment
 import com.android.permissioncontroller.permission.ui.handheld.pressBack
 import getAppInfoOrNull
@@ -262,7 +263,8 @@ class AndroidAutoConfigFragment : PreferenceFragmentCompat() {
 
         potentialIssues.isVisible = aautoVoiceCommandIssues.isVisible
 
-        val ps = GosPackageState.getOrDefault(PKG_NAME)
+        val ps = GosPackageStateLiveData.getPackageState(PKG_NAME)
+                ?: GosPackageState.getOrDefault(PKG_NAME)
 
         pkgFlagPrefs.entries.forEach {
             it.value.isChecked = ps.hasPackageFlags(it.key)
@@ -356,6 +358,7 @@ class AndroidAutoConfigFragment : PreferenceFragmentCompat() {
 
     fun GosPackageState.Editor.applyOrPressBack() {
         if (apply()) {
+            GosPackageStateLiveData.onPackageStateChanged(PKG_NAME)
             update()
         } else {
             // apply() fails only if the package is uninstalled
@@ -60,6 +60,10 @@ class BroadcastReceiverLiveData(
         updateAsync()
     }
 
+    override fun onPackagesUpdated(packageNames: Set<String>) {
+        updateAsync()
+    }
+
     override suspend fun loadDataAndPostValue(job: Job) {
         if (job.isCancelled) {
             return
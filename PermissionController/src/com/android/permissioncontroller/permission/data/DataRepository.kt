@@ -22,6 +22,8 @@ import android.content.res.Configuration
 import androidx.annotation.GuardedBy
 import androidx.annotation.MainThread
 import com.android.permissioncontroller.PermissionControllerApplication
+import com.android.permissioncontroller.PermissionControllerProto.DataRepositoryProto
+import com.android.permissioncontroller.permission.model.livedatatypes.LightAppPermGroup
 import com.android.permissioncontroller.permission.utils.ContextCompat
 import com.android.permissioncontroller.permission.utils.KotlinUtils
 import java.util.concurrent.TimeUnit
@@ -43,6 +45,15 @@ abstract class DataRepository<K, V : DataRepository.InactiveTimekeeper> : Compon
     protected val lock = Any()
     @GuardedBy("lock") protected val data = mutableMapOf<K, V>()
 
+    /** Number of [get] calls that found an existing value */
+    @GuardedBy("lock") private var hitCount = 0L
+    /** Number of [get] calls that had to create a new value */
+    @GuardedBy("lock") private var missCount = 0L
+    /** Number of values removed because the repository exceeded its [memoryBudgetBytes] */
+    @GuardedBy("lock") private var evictionCount = 0L
+    /** Number of values created since the repository was last checked against its budget */
+    @GuardedBy("lock") private var missesSinceBudgetCheck = 0
+
     /** Whether or not this data repository has been registered as a component callback yet */
     private var registered = false
     /** Whether or not this device is a low-RAM device. */
@@ -52,8 +63,17 @@ abstract class DataRepository<K, V : DataRepository.InactiveTimekeeper> : Compon
             ?.isLowRamDevice
             ?: false
 
+    /**
+     * Approximate amount of memory the values of this repository may use before inactive values
+     * are evicted, see [InactiveTimekeeper.estimatedSizeBytes]. Repositories with particularly
+     * large or small values can override this.
+     */
+    protected open val memoryBudgetBytes: Long
+        get() = if (isLowMemoryDevice) LOW_RAM_MEMORY_BUDGET_BYTES else DEFAULT_MEMORY_BUDGET_BYTES
+
     init {
         PermissionControllerApplication.get().registerComponentCallbacks(this)
+        synchronized(allRepositories) { allRepositories.add(this) }
     }
 
     /**
@@ -64,10 +84,78 @@ abstract class DataRepository<K, V : DataRepository.InactiveTimekeeper> : Compon
      */
     operator fun get(key: K): V {
         synchronized(lock) {
-            return data.getOrPut(key) { newValue(key) }
+            return getOrPutLocked(key) { newValue(key) }
+        }
+    }
+
+    /** Get a value, creating it with [createValue] if needed, and keep track of hits and misses */
+    @GuardedBy("lock")
+    protected fun getOrPutLocked(key: K, createValue: () -> V): V {
+        data[key]?.let {
+            hitCount++
+            return it
+        }
+
+        missCount++
+        val value = createValue()
+        data[key] = value
+        onKeyAdded(key)
+
+        // Summing up the sizes visits every value, hence only check every few insertions
+        if (++missesSinceBudgetCheck >= BUDGET_CHECK_INTERVAL) {
+            missesSinceBudgetCheck = 0
+            evictToBudgetLocked()
+        }
+        return value
+    }
+
+    /**
+     * If the values of this repository exceed the [memoryBudgetBytes], remove the values that have
+     * been inactive the longest until the repository is within budget again. Values that only
+     * went inactive recently are kept, as they might just not be observed yet, or be observed
+     * again when the user navigates back.
+     */
+    @GuardedBy("lock")
+    private fun evictToBudgetLocked() {
+        var sizeBytes = data.values.sumOf { it.estimatedSizeBytes.toLong() }
+        val budgetBytes = memoryBudgetBytes
+        if (sizeBytes <= budgetBytes) {
+            return
+        }
+
+        val leastRecentlyUsedFirst =
+            data.entries
+                .mapNotNull { (key, value) ->
+                    val timeInactive = value.timeInactive ?: return@mapNotNull null
+                    if (timeInactive < MIN_TIME_INACTIVE_BEFORE_EVICTION_NANOS) {
+                        return@mapNotNull null
+                    }
+                    Triple(key, timeInactive, value.estimatedSizeBytes)
+                }
+                .sortedByDescending { it.second }
+        for ((key, _, valueSizeBytes) in leastRecentlyUsedFirst) {
+            if (sizeBytes <= budgetBytes) {
+                break
+            }
+            removeLocked(key)
+            evictionCount++
+            sizeBytes -= valueSizeBytes
         }
     }
 
+    @GuardedBy("lock")
+    private fun removeLocked(key: K) {
+        if (data.remove(key) != null) {
+            onKeyRemoved(key)
+        }
+    }
+
+    /** Called when a value is added for [key] */
+    @GuardedBy("lock") protected open fun onKeyAdded(key: K) {}
+
+    /** Called when the value for [key] is removed */
+    @GuardedBy("lock") protected open fun onKeyRemoved(key: K) {}
+
     /**
      * Generate a new value type from the given data
      *
@@ -111,19 +199,38 @@ abstract class DataRepository<K, V : DataRepository.InactiveTimekeeper> : Compon
     }
 
     fun invalidateSingle(key: K) {
-        synchronized(lock) { data.remove(key) }
+        synchronized(lock) { removeLocked(key) }
     }
 
     private fun trimInactiveData(threshold: Long) {
         synchronized(lock) {
             data.keys.toList().forEach { key ->
                 if (data[key]?.timeInactive?.let { it >= threshold } == true) {
-                    data.remove(key)
+                    removeLocked(key)
                 }
             }
         }
     }
 
+    /** Get the usage statistics of this repository, for dumping */
+    fun getStats(): DataRepositoryProto {
+        synchronized(lock) {
+            return DataRepositoryProto.newBuilder()
+                .setName(repositoryName)
+                .setSize(data.size)
+                .setHitCount(hitCount)
+                .setMissCount(missCount)
+                .setEstimatedSizeBytes(data.values.sumOf { it.estimatedSizeBytes.toLong() })
+                .setMemoryBudgetBytes(memoryBudgetBytes)
+                .setEvictionCount(evictionCount)
+                .build()
+        }
+    }
+
+    /** The name of the repository, i.e. the LiveData class it is the companion of */
+    private val repositoryName: String
+        get() = javaClass.enclosingClass?.simpleName ?: javaClass.simpleName
+
     /**
      * Interface which describes an object which can track how long it has been inactive, and if it
      * has any observers.
@@ -146,17 +253,93 @@ abstract class DataRepository<K, V : DataRepository.InactiveTimekeeper> : Compon
                 val time = timeWentInactive ?: return null
                 return System.nanoTime() - time
             }
+
+        /**
+         * Approximate amount of memory used by this object and the value it holds. Only used to
+         * compare against the budget of the repository, hence it does not need to be exact.
+         */
+        val estimatedSizeBytes: Int
+            get() = BASE_VALUE_SIZE_BYTES
+    }
+
+    companion object {
+        /** Budget of each repository, e.g. around 2000 LiveDatas with small values */
+        private const val DEFAULT_MEMORY_BUDGET_BYTES = 2L * 1024 * 1024
+        private const val LOW_RAM_MEMORY_BUDGET_BYTES = 512L * 1024
+        /** Fixed cost of a cached LiveData, including its sources and observers */
+        private const val BASE_VALUE_SIZE_BYTES = 512
+        /** Cost of each element of a collection or map held by a LiveData */
+        private const val ELEMENT_SIZE_BYTES = 128
+        private const val BUDGET_CHECK_INTERVAL = 32
+        private val MIN_TIME_INACTIVE_BEFORE_EVICTION_NANOS =
+            TimeUnit.NANOSECONDS.convert(10, TimeUnit.SECONDS)
+
+        private val allRepositories = mutableListOf<DataRepository<*, *>>()
+
+        /** Get the usage statistics of all repositories, for dumping */
+        fun getAllStats(): List<DataRepositoryProto> {
+            return synchronized(allRepositories) { allRepositories.toList() }.map { it.getStats() }
+        }
+
+        /**
+         * Estimate the memory used by a LiveData holding [value], for
+         * [InactiveTimekeeper.estimatedSizeBytes]. Collections and maps are assumed to hold small
+         * objects, such as permission states.
+         *
+         * @param value The value of the LiveData
+         * @return The approximate size in bytes
+         */
+        fun estimateSizeBytes(value: Any?): Int {
+            val elementCount =
+                when (value) {
+                    is Collection<*> -> value.size
+                    is Map<*, *> -> value.size
+                    is LightAppPermGroup -> value.allPermissions.size
+                    else -> 0
+                }
+            return BASE_VALUE_SIZE_BYTES + elementCount * ELEMENT_SIZE_BYTES
+        }
     }
 }
 
 /**
  * A DataRepository where all values are contingent on the existence of a package. Supports
- * invalidating all values tied to a package. Expects key to be a pair or triple, with the package
- * name as the first value of the key.
+ * invalidating all values tied to a package. Expects key to be a pair, triple or quadruple, with
+ * the package name as the first value of the key.
  */
 abstract class DataRepositoryForPackage<K, V : DataRepository.InactiveTimekeeper> :
     DataRepository<K, V>() {
 
+    /** Index of the keys in [data] by the package name in the key */
+    @GuardedBy("lock") private val keysByPackage = mutableMapOf<String, MutableSet<K>>()
+
+    @GuardedBy("lock")
+    override fun onKeyAdded(key: K) {
+        val packageName = getPackageName(key) ?: return
+        keysByPackage.getOrPut(packageName) { mutableSetOf() }.add(key)
+    }
+
+    @GuardedBy("lock")
+    override fun onKeyRemoved(key: K) {
+        val packageName = getPackageName(key) ?: return
+        val keys = keysByPackage[packageName] ?: return
+        keys.remove(key)
+        if (keys.isEmpty()) {
+            keysByPackage.remove(packageName)
+        }
+    }
+
+    private fun getPackageName(key: K): String? {
+        val first =
+            when (key) {
+                is Pair<*, *> -> key.first
+                is Triple<*, *, *> -> key.first
+                is KotlinUtils.Quadruple<*, *, *, *> -> key.first
+                else -> null
+            }
+        return first as? String
+    }
+
     /**
      * Invalidates every value with the packageName in the key.
      *
@@ -164,14 +347,9 @@ abstract class DataRepositoryForPackage<K, V : DataRepository.InactiveTimekeeper
      */
     fun invalidateAllForPackage(packageName: String) {
         synchronized(lock) {
-            for (key in data.keys.toSet()) {
-                if (
-                    key is Pair<*, *> ||
-                        key is Triple<*, *, *> ||
-                        key is KotlinUtils.Quadruple<*, *, *, *> && key.first == packageName
-                ) {
-                    data.remove(key)
-                }
+            val keys = keysByPackage.remove(packageName) ?: return
+            for (key in keys) {
+                data.remove(key)
             }
         }
     }
@@ -194,7 +372,7 @@ abstract class DataRepositoryForDevice<K, V : DataRepository.InactiveTimekeeper>
 
     fun getWithDeviceId(key: K, deviceId: Int): V {
         synchronized(lock) {
-            return data.getOrPut(key) { newValue(key, deviceId) }
+            return getOrPutLocked(key) { newValue(key, deviceId) }
         }
     }
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.data
+
+import android.content.pm.GosPackageState
+import android.os.Looper
+import android.os.Process
+import android.os.UserHandle
+import androidx.annotation.MainThread
+import kotlinx.coroutines.Job
+
+/**
+ * LiveData for the GosPackageState of a package. The value is null if the package is not
+ * installed.
+ *
+ * The state is reloaded when the package changes, and when [onPackageStateChanged] signals that it
+ * was edited.
+ *
+ * @param packageName The name of the package this LiveData will watch the state of
+ * @param user The user of the package
+ */
+class GosPackageStateLiveData
+private constructor(private val packageName: String, private val user: UserHandle) :
+    SmartAsyncMediatorLiveData<GosPackageState?>(alwaysUpdateOnActive = false),
+    PackageBroadcastReceiver.PackageBroadcastListener {
+
+    /** Incremented on every change, so that a value loaded before a change is not served */
+    @Volatile private var changeCount = 0
+    /** The [changeCount] the last posted value was loaded at */
+    @Volatile private var postedChangeCount = -1
+    /** The [changeCount] the current value was loaded at */
+    private var valueChangeCount = -1
+    /** A state queried while this LiveData was inactive, used instead of loading it on active */
+    private var seededValue: GosPackageState? = null
+    /** The [changeCount] [seededValue] was queried at */
+    private var seededChangeCount = -1
+
+    override suspend fun loadDataAndPostValue(job: Job) {
+        if (job.isCancelled) {
+            return
+        }
+        val loadChangeCount = changeCount
+        val packageState = GosPackageState.get(packageName, user.identifier)
+        postedChangeCount = loadChangeCount
+        postValue(packageState)
+    }
+
+    override fun setValue(newValue: GosPackageState?) {
+        valueChangeCount = postedChangeCount
+        super.setValue(newValue)
+    }
+
+    override fun onPackageUpdate(packageName: String) {
+        onChanged()
+    }
+
+    @MainThread
+    private fun onChanged() {
+        changeCount++
+        if (hasActiveObservers()) {
+            updateAsync()
+        }
+    }
+
+    /**
+     * Whether the value reflects every known change. The value is only kept current while this
+     * LiveData is observed.
+     */
+    @MainThread
+    private fun isCurrent(): Boolean {
+        return hasActiveObservers() && isInitialized && !isStale && valueChangeCount == changeCount
+    }
+
+    /**
+     * Use a state that was just queried as the value when this LiveData goes active, instead of
+     * loading it again. The seed is dropped if the state changes before then.
+     *
+     * Package changes aren't watched while inactive, so this should only be called right before
+     * observing, e.g. when the observer is added in the same main thread message.
+     *
+     * @param packageState The state of the package, or null if the package is not installed
+     */
+    @MainThread
+    fun seed(packageState: GosPackageState?) {
+        if (hasActiveObservers()) {
+            return
+        }
+        seededValue = packageState
+        seededChangeCount = changeCount
+    }
+
+    override fun onActive() {
+        super.onActive()
+        PackageBroadcastReceiver.addChangeCallback(packageName, this)
+        val isSeedCurrent = seededChangeCount == changeCount
+        val packageState = seededValue
+        seededValue = null
+        seededChangeCount = -1
+        if (isSeedCurrent) {
+            value = packageState
+            valueChangeCount = changeCount
+        } else {
+            updateAsync()
+        }
+    }
+
+    override fun onInactive() {
+        PackageBroadcastReceiver.removeChangeCallback(packageName, this)
+        super.onInactive()
+    }
+
+    /**
+     * Repository for [GosPackageStateLiveData]
+     *
+     * <p> Key value is a pair of package name and user, value is its corresponding LiveData.
+     */
+    companion object :
+        DataRepositoryForPackage<Pair<String, UserHandle>, GosPackageStateLiveData>() {
+        override fun newValue(key: Pair<String, UserHandle>): GosPackageStateLiveData {
+            return GosPackageStateLiveData(key.first, key.second)
+        }
+
+        @JvmStatic
+        @JvmOverloads
+        operator fun get(
+            packageName: String,
+            user: UserHandle = Process.myUserHandle()
+        ): GosPackageStateLiveData {
+            return get(packageName to user)
+        }
+
+        /**
+         * Get the GosPackageState of a package. It is served from the observed LiveData of the
+         * package if there is one with a current value, and queried otherwise.
+         *
+         * @param packageName The name of the package
+         * @param user The user of the package
+         * @return The GosPackageState, or null if the package is not installed
+         */
+        @JvmStatic
+        @JvmOverloads
+        fun getPackageState(
+            packageName: String,
+            user: UserHandle = Process.myUserHandle()
+        ): GosPackageState? {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                val liveData = synchronized(lock) { data[packageName to user] }
+                if (liveData != null && liveData.isCurrent()) {
+                    return liveData.value
+                }
+            }
+            return GosPackageState.get(packageName, user.identifier)
+        }
+
+        /**
+         * Signal that the GosPackageState of a package was edited, e.g. after applying a
+         * [GosPackageState.Editor]. The LiveData of the package reloads the state if it is
+         * observed.
+         *
+         * @param packageName The name of the package
+         * @param user The user of the package
+         */
+        @JvmStatic
+        @JvmOverloads
+        @MainThread
+        fun onPackageStateChanged(packageName: String, user: UserHandle = Process.myUserHandle()) {
+            synchronized(lock) { data[packageName to user] }?.onChanged()
+        }
+    }
+}
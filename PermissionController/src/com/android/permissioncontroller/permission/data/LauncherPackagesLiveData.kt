@@ -63,6 +63,10 @@ object LauncherPackagesLiveData :
         update()
     }
 
+    override fun onPackagesUpdated(packageNames: Set<String>) {
+        update()
+    }
+
     override fun onActive() {
         super.onActive()
         update()
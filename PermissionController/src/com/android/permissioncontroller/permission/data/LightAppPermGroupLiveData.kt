@@ -17,7 +17,6 @@
 package com.android.permissioncontroller.permission.data
 
 import android.app.Application
-import android.content.pm.PackageManager
 import android.content.pm.PermissionInfo
 import android.os.Build
 import android.os.UserHandle
@@ -29,6 +28,7 @@ import com.android.permissioncontroller.permission.model.livedatatypes.LightPack
 import com.android.permissioncontroller.permission.model.livedatatypes.LightPermission
 import com.android.permissioncontroller.permission.utils.KotlinUtils
 import com.android.permissioncontroller.permission.utils.LocationUtils
+import com.android.permissioncontroller.permission.utils.PermissionInfoCache
 import com.android.permissioncontroller.permission.utils.Utils
 import com.android.permissioncontroller.permission.utils.Utils.OS_PKG
 
@@ -161,13 +161,11 @@ private constructor(
         for (spi in permissionManager.splitPermissions) {
             val splitPerm = spi.splitPermission
 
-            val pi =
-                try {
-                    app.packageManager.getPermissionInfo(splitPerm, 0)
-                } catch (e: PackageManager.NameNotFoundException) {
-                    Log.w(LOG_TAG, "No such permission: $splitPerm", e)
-                    continue
-                }
+            val pi = PermissionInfoCache.getPermissionInfo(splitPerm)
+            if (pi == null) {
+                Log.w(LOG_TAG, "No such permission: $splitPerm")
+                continue
+            }
 
             // Skip if split permission is not "install" permission.
             if (pi.protection != PermissionInfo.PROTECTION_NORMAL) {
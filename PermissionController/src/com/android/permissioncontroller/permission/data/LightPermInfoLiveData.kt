@@ -17,10 +17,10 @@
 package com.android.permissioncontroller.permission.data
 
 import android.app.Application
-import android.content.pm.PackageManager
 import android.util.Log
 import com.android.permissioncontroller.PermissionControllerApplication
 import com.android.permissioncontroller.permission.model.livedatatypes.LightPermInfo
+import com.android.permissioncontroller.permission.utils.PermissionInfoCache
 import com.android.permissioncontroller.permission.utils.PermissionMapping.isRuntimePlatformPermission
 import com.android.permissioncontroller.permission.utils.Utils.OS_PKG
 import kotlinx.coroutines.Job
@@ -48,6 +48,12 @@ private constructor(private val app: Application, private val permissionName: St
      * Note: packageName is unused.
      */
     override fun onPackageUpdate(packageName: String) {
+        PermissionInfoCache.invalidate(permissionName)
+        updateAsync()
+    }
+
+    override fun onPackagesUpdated(packageNames: Set<String>) {
+        PermissionInfoCache.invalidate(permissionName)
         updateAsync()
     }
 
@@ -65,10 +71,11 @@ private constructor(private val app: Application, private val permissionName: St
             return
         }
 
+        val permInfo = PermissionInfoCache.getPermissionInfo(permissionName)
         val newValue =
-            try {
-                LightPermInfo(app.packageManager.getPermissionInfo(permissionName, 0))
-            } catch (e: PackageManager.NameNotFoundException) {
+            if (permInfo != null) {
+                LightPermInfo(permInfo)
+            } else {
                 Log.w(LOG_TAG, "Permission \"$permissionName\" not found")
                 invalidateSingle(permissionName)
                 null
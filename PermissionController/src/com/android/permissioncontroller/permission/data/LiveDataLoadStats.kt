@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.data
+
+import android.os.Trace
+import androidx.annotation.GuardedBy
+import com.android.permissioncontroller.PermissionControllerProto.LiveDataLoadStatsProto
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+
+/**
+ * Records how often and how long the LiveDatas of each class load their data, see
+ * [SmartUpdateMediatorLiveData.update] and [SmartAsyncMediatorLiveData.updateAsync]. Loads are also
+ * visible as trace sections named after the class.
+ */
+object LiveDataLoadStats {
+    /** Upper bounds of the latency histogram buckets, the last bucket has no upper bound */
+    private val LATENCY_BUCKET_UPPER_BOUNDS_MILLIS = longArrayOf(1, 4, 16, 64, 256, 1024)
+
+    private class ClassStats {
+        @GuardedBy("this") var loadCount = 0L
+        @GuardedBy("this") var cancelCount = 0L
+        @GuardedBy("this") var totalLatencyNanos = 0L
+        @GuardedBy("this")
+        val latencyHistogram = LongArray(LATENCY_BUCKET_UPPER_BOUNDS_MILLIS.size + 1)
+    }
+
+    /** LiveData class name -> stats */
+    private val statsByClass = ConcurrentHashMap<String, ClassStats>()
+
+    /** LiveData class -> name, to not compute the name on every load */
+    private val names = ConcurrentHashMap<Class<*>, String>()
+
+    /**
+     * Get the name to record the loads of a LiveData under. Anonymous and local LiveDatas are named
+     * after the class they are declared in, without the `$1` suffix of their own class.
+     */
+    fun getName(liveData: Any): String {
+        return names.getOrPut(liveData.javaClass) {
+            var namedClass: Class<*> = liveData.javaClass
+            while (namedClass.isAnonymousClass || namedClass.isLocalClass) {
+                namedClass = namedClass.enclosingClass ?: break
+            }
+            namedClass.name.substringAfterLast('.')
+        }
+    }
+
+    /**
+     * Start the trace section of a load, if tracing is enabled.
+     *
+     * @param name The name of the LiveData, see [getName]
+     * @param cookie Identifies the load, as loads of different LiveDatas overlap
+     */
+    fun beginTraceSection(name: String, cookie: Int) {
+        if (Trace.isEnabled()) {
+            Trace.beginAsyncSection(getTraceSectionName(name), cookie)
+        }
+    }
+
+    /**
+     * End the trace section of a load, and record its latency.
+     *
+     * @param name The name of the LiveData, see [getName]
+     * @param cookie The cookie passed to [beginTraceSection]
+     * @param startNanos When the load started, as returned by [System.nanoTime]
+     * @param isCancelled Whether the load was cancelled before it posted a value
+     */
+    fun onLoadFinished(name: String, cookie: Int, startNanos: Long, isCancelled: Boolean) {
+        if (Trace.isEnabled()) {
+            Trace.endAsyncSection(getTraceSectionName(name), cookie)
+        }
+
+        val latencyNanos = System.nanoTime() - startNanos
+        val latencyMillis = TimeUnit.NANOSECONDS.toMillis(latencyNanos)
+        var bucket = LATENCY_BUCKET_UPPER_BOUNDS_MILLIS.indexOfFirst { latencyMillis < it }
+        if (bucket == -1) {
+            bucket = LATENCY_BUCKET_UPPER_BOUNDS_MILLIS.size
+        }
+
+        val stats = statsByClass.getOrPut(name) { ClassStats() }
+        synchronized(stats) {
+            stats.loadCount++
+            if (isCancelled) {
+                stats.cancelCount++
+            }
+            stats.totalLatencyNanos += latencyNanos
+            stats.latencyHistogram[bucket]++
+        }
+    }
+
+    /** Get the load statistics of all LiveData classes that loaded data, for dumping */
+    fun getAllStats(): List<LiveDataLoadStatsProto> {
+        return statsByClass.entries
+            .map { (name, stats) ->
+                synchronized(stats) {
+                    val builder =
+                        LiveDataLoadStatsProto.newBuilder()
+                            .setName(name)
+                            .setLoadCount(stats.loadCount)
+                            .setCancelCount(stats.cancelCount)
+                            .setTotalLatencyMillis(
+                                TimeUnit.NANOSECONDS.toMillis(stats.totalLatencyNanos)
+                            )
+                    for ((bucket, count) in stats.latencyHistogram.withIndex()) {
+                        val bucketBuilder =
+                            LiveDataLoadStatsProto.LatencyBucketProto.newBuilder().setCount(count)
+                        if (bucket < LATENCY_BUCKET_UPPER_BOUNDS_MILLIS.size) {
+                            bucketBuilder.setUpperBoundMillis(
+                                LATENCY_BUCKET_UPPER_BOUNDS_MILLIS[bucket]
+                            )
+                        }
+                        builder.addLatencyHistogram(bucketBuilder)
+                    }
+                    builder.build()
+                }
+            }
+            .sortedByDescending { it.loadCount }
+    }
+
+    private fun getTraceSectionName(name: String): String {
+        // Section names are limited to 127 characters
+        return "LiveDataLoad:$name".take(127)
+    }
+}
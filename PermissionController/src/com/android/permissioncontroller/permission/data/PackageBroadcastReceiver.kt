@@ -21,6 +21,8 @@ import android.content.BroadcastReceiver
 import android.content.Context
 import android.content.Intent
 import android.content.IntentFilter
+import android.os.Handler
+import android.os.Looper
 import com.android.modules.utils.build.SdkLevel
 import com.android.permissioncontroller.PermissionControllerApplication
 import com.android.permissioncontroller.permission.data.v34.LightInstallSourceInfoLiveData
@@ -29,8 +31,16 @@ import kotlinx.coroutines.Dispatchers.Main
 import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.launch
 
-/** Listens for package additions, replacements, and removals, and notifies listeners. */
+/**
+ * Listens for package additions, replacements, and removals, and notifies listeners.
+ *
+ * Listeners for a specific package are notified right away. Listeners for all packages are notified
+ * once per [ALL_CALLBACKS_DELAY_MILLIS] with all packages that changed since, as many packages
+ * change at once when apps are bulk installed or updated, and these listeners usually reload
+ * everything anyway.
+ */
 object PackageBroadcastReceiver : BroadcastReceiver() {
+    private const val ALL_CALLBACKS_DELAY_MILLIS = 100L
 
     private val app: Application = PermissionControllerApplication.get()
     private val intentFilter =
@@ -45,6 +55,13 @@ object PackageBroadcastReceiver : BroadcastReceiver() {
     private val changeCallbacks = mutableMapOf<String, MutableSet<PackageBroadcastListener>>()
     /** A list of listener IDs, which listen to all package additions, changes, and removals. */
     private val allCallbacks = mutableSetOf<PackageBroadcastListener>()
+    /** Listeners for all packages, which are notified right away, see [addAllCallback] */
+    private val immediateAllCallbacks = mutableSetOf<PackageBroadcastListener>()
+
+    /** Packages that changed since [allCallbacks] were last notified */
+    private val pendingPackageNames = mutableSetOf<String>()
+    private val handler = Handler(Looper.getMainLooper())
+    private val notifyAllCallbacksRunnable = Runnable { notifyAllCallbacks() }
 
     /** Add a callback which will be notified when the specified packaged is changed or removed. */
     fun addChangeCallback(packageName: String, listener: PackageBroadcastListener) {
@@ -68,13 +85,19 @@ object PackageBroadcastReceiver : BroadcastReceiver() {
      * Add a callback which will be notified any time a package is added, removed, or changed.
      *
      * @param listener the listener to be added
-     * @return returns the integer ID assigned to the
+     * @param immediate Whether to notify the listener about every package right away, instead of
+     *   in batches. Caches that are read when listeners for specific packages are notified need to
+     *   be invalidated right away.
      */
-    fun addAllCallback(listener: PackageBroadcastListener) {
+    fun addAllCallback(listener: PackageBroadcastListener, immediate: Boolean = false) {
         GlobalScope.launch(Main.immediate) {
             val wasEmpty = hasNoListeners()
 
-            allCallbacks.add(listener)
+            if (immediate) {
+                immediateAllCallbacks.add(listener)
+            } else {
+                allCallbacks.add(listener)
+            }
 
             if (wasEmpty) {
                 app.applicationContext.registerReceiverForAllUsers(
@@ -96,7 +119,11 @@ object PackageBroadcastReceiver : BroadcastReceiver() {
         GlobalScope.launch(Main.immediate) {
             val wasEmpty = hasNoListeners()
 
-            if (allCallbacks.remove(listener) && hasNoListeners() && !wasEmpty) {
+            val wasRemoved = allCallbacks.remove(listener) or immediateAllCallbacks.remove(listener)
+            if (allCallbacks.isEmpty()) {
+                clearPendingPackageNames()
+            }
+            if (wasRemoved && hasNoListeners() && !wasEmpty) {
                 app.applicationContext.unregisterReceiver(this@PackageBroadcastReceiver)
             }
         }
@@ -119,13 +146,20 @@ object PackageBroadcastReceiver : BroadcastReceiver() {
                 }
                 if (hasNoListeners() && !wasEmpty) {
                     app.applicationContext.unregisterReceiver(this@PackageBroadcastReceiver)
+                    clearPendingPackageNames()
                 }
             }
         }
     }
 
+    /** Drop the packages not delivered to [allCallbacks] yet, e.g. as there are none anymore */
+    private fun clearPendingPackageNames() {
+        pendingPackageNames.clear()
+        handler.removeCallbacks(notifyAllCallbacksRunnable)
+    }
+
     private fun getNumListeners(): Int {
-        var numListeners = allCallbacks.size
+        var numListeners = allCallbacks.size + immediateAllCallbacks.size
         for ((_, changeCallbackSet) in changeCallbacks) {
             numListeners += changeCallbackSet.size
         }
@@ -145,10 +179,17 @@ object PackageBroadcastReceiver : BroadcastReceiver() {
     override fun onReceive(context: Context, intent: Intent) {
         val packageName = intent.data?.schemeSpecificPart ?: return
 
-        for (callback in allCallbacks.toList()) {
+        for (callback in immediateAllCallbacks.toList()) {
             callback.onPackageUpdate(packageName)
         }
 
+        if (allCallbacks.isNotEmpty()) {
+            if (pendingPackageNames.isEmpty()) {
+                handler.postDelayed(notifyAllCallbacksRunnable, ALL_CALLBACKS_DELAY_MILLIS)
+            }
+            pendingPackageNames.add(packageName)
+        }
+
         if (intent.action != Intent.ACTION_PACKAGE_ADDED) {
             changeCallbacks[packageName]?.toList()?.let { callbacks ->
                 for (callback in callbacks) {
@@ -172,6 +213,18 @@ object PackageBroadcastReceiver : BroadcastReceiver() {
         }
     }
 
+    private fun notifyAllCallbacks() {
+        if (pendingPackageNames.isEmpty()) {
+            return
+        }
+        val packageNames = pendingPackageNames.toSet()
+        pendingPackageNames.clear()
+
+        for (callback in allCallbacks.toList()) {
+            callback.onPackagesUpdated(packageNames)
+        }
+    }
+
     /** A listener interface for objects desiring to be notified of package broadcasts. */
     interface PackageBroadcastListener {
         /**
@@ -181,5 +234,18 @@ object PackageBroadcastReceiver : BroadcastReceiver() {
          * @param packageName the name of the package which was updated
          */
         fun onPackageUpdate(packageName: String)
+
+        /**
+         * To be called on listeners for all packages, when one or more packages have been
+         * installed, changed or removed. Listeners that reload everything on any change should
+         * override this to only reload once.
+         *
+         * @param packageNames the names of the packages which were updated
+         */
+        fun onPackagesUpdated(packageNames: Set<String>) {
+            for (packageName in packageNames) {
+                onPackageUpdate(packageName)
+            }
+        }
     }
 }
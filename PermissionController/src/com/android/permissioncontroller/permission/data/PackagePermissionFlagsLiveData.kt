@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.data
+
+import android.app.Application
+import android.os.Build
+import android.os.UserHandle
+import android.permission.PermissionManager
+import androidx.annotation.RequiresApi
+import androidx.annotation.VisibleForTesting
+import com.android.permissioncontroller.PermissionControllerApplication
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPackageInfo
+import com.android.permissioncontroller.permission.utils.KotlinUtils
+import com.android.permissioncontroller.permission.utils.Utils
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.Job
+
+/**
+ * A LiveData which tracks the flags of all permissions requested by one package on the default
+ * device. The flags are read with a single call, and shared by all [PermStateLiveData]s of the
+ * package.
+ *
+ * Only available if [KotlinUtils.canGetAllPermissionFlags].
+ *
+ * @param app The current application
+ * @param packageName The name of the package this LiveData will watch for flag changes for
+ * @param user The user of the package
+ */
+@RequiresApi(Build.VERSION_CODES.VANILLA_ICE_CREAM)
+class PackagePermissionFlagsLiveData
+private constructor(
+    private val app: Application,
+    private val packageName: String,
+    private val user: UserHandle
+) :
+    SmartAsyncMediatorLiveData<Map<String, Int>>(),
+    PermissionListenerMultiplexer.PermissionChangeCallback {
+
+    private val permissionManager =
+        Utils.getUserContext(app, user).getSystemService(PermissionManager::class.java)!!
+    private val packageInfoLiveData = LightPackageInfoLiveData[packageName, user]
+
+    private var uid: Int? = null
+    private var registeredUid: Int? = null
+
+    init {
+        addSource(packageInfoLiveData) {
+            checkForUidUpdate(it)
+            updateAsync()
+        }
+    }
+
+    override suspend fun loadDataAndPostValue(job: Job) {
+        if (!packageInfoLiveData.isInitialized) {
+            return
+        }
+
+        if (packageInfoLiveData.value == null) {
+            invalidateSingle(packageName to user)
+            postValue(null)
+            return
+        }
+
+        flagsFetchCount.incrementAndGet()
+        val flags = KotlinUtils.getAllPermissionFlags(permissionManager, packageName)
+        if (job.isCancelled) {
+            return
+        }
+        postValue(flags)
+    }
+
+    override fun onPermissionChange() {
+        updateAsync()
+    }
+
+    private fun checkForUidUpdate(packageInfo: LightPackageInfo?) {
+        if (packageInfo == null) {
+            registeredUid?.let { PermissionListenerMultiplexer.removeCallback(it, this) }
+            return
+        }
+        uid = packageInfo.uid
+        if (uid != registeredUid && hasActiveObservers()) {
+            PermissionListenerMultiplexer.addOrReplaceCallback(registeredUid, packageInfo.uid, this)
+            registeredUid = uid
+        }
+    }
+
+    override fun onInactive() {
+        super.onInactive()
+        registeredUid?.let {
+            PermissionListenerMultiplexer.removeCallback(it, this)
+            registeredUid = null
+        }
+    }
+
+    override fun onActive() {
+        super.onActive()
+        uid?.let {
+            PermissionListenerMultiplexer.addCallback(it, this)
+            registeredUid = uid
+        }
+    }
+
+    /**
+     * Repository for PackagePermissionFlagsLiveDatas.
+     *
+     * <p> Key value is a pair of string package name and UserHandle, value is its corresponding
+     * LiveData.
+     */
+    companion object :
+        DataRepositoryForPackage<Pair<String, UserHandle>, PackagePermissionFlagsLiveData>() {
+        /** Number of times the flags of a package were read, e.g. one per app page loaded */
+        @VisibleForTesting val flagsFetchCount = AtomicInteger()
+
+        override fun newValue(key: Pair<String, UserHandle>): PackagePermissionFlagsLiveData {
+            return PackagePermissionFlagsLiveData(
+                PermissionControllerApplication.get(),
+                key.first,
+                key.second
+            )
+        }
+    }
+}
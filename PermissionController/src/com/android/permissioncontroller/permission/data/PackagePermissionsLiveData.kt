@@ -17,11 +17,11 @@
 package com.android.permissioncontroller.permission.data
 
 import android.app.Application
-import android.content.pm.PackageManager
 import android.content.pm.PermissionInfo
 import android.os.Build
 import android.os.UserHandle
 import com.android.permissioncontroller.PermissionControllerApplication
+import com.android.permissioncontroller.permission.utils.PermissionInfoCache
 import com.android.permissioncontroller.permission.utils.PermissionMapping
 import kotlinx.coroutines.Job
 
@@ -58,12 +58,7 @@ private constructor(private val app: Application, packageName: String, user: Use
         for (permName in packageInfo.requestedPermissions) {
             var groupName = PermissionMapping.getGroupOfPlatformPermission(permName)
             if (groupName == null) {
-                val permInfo =
-                    try {
-                        app.packageManager.getPermissionInfo(permName, 0)
-                    } catch (e: PackageManager.NameNotFoundException) {
-                        continue
-                    }
+                val permInfo = PermissionInfoCache.getPermissionInfo(permName) ?: continue
 
                 if (
                     permInfo.flags and PermissionInfo.FLAG_INSTALLED == 0 ||
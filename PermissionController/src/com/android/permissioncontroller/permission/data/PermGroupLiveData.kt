@@ -58,6 +58,10 @@ private constructor(private val app: Application, private val groupName: String)
         update()
     }
 
+    override fun onPackagesUpdated(packageNames: Set<String>) {
+        update()
+    }
+
     /**
      * Initializes this permission group from scratch. Resets the groupInfo, PermissionInfos, and
      * PackageInfoLiveDatas, then re-adds them.
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.data
+
+import android.Manifest
+import android.app.Application
+import android.content.pm.PackageInfo
+import android.content.pm.PackageManager
+import android.os.Build
+import android.os.UserHandle
+import android.permission.PermissionManager
+import androidx.annotation.MainThread
+import com.android.permissioncontroller.PermissionControllerApplication
+import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGroupUiInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPackageInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.PermGroup
+import com.android.permissioncontroller.permission.model.livedatatypes.PermGroupPackagesSummary
+import com.android.permissioncontroller.permission.model.livedatatypes.PermState
+import com.android.permissioncontroller.permission.utils.KotlinUtils
+import com.android.permissioncontroller.permission.utils.LocationUtils
+import com.android.permissioncontroller.permission.utils.Utils
+import com.android.permissioncontroller.permission.utils.Utils.OS_PKG
+import kotlinx.coroutines.Job
+
+/**
+ * A LiveData with the UI info of all packages of one user which request permissions in one
+ * permission group, as a [PermGroupPackagesSummary].
+ *
+ * The summary is computed in a single pass over the packages of the user shared by
+ * [UserPackageInfosLiveData], instead of through an [AppPermGroupUiInfoLiveData], a
+ * [PermStateLiveData] and a [LightPackageInfoLiveData] per package. When the permissions of a uid
+ * change, only the packages of that uid are computed again.
+ *
+ * @param app The current application
+ * @param permGroupName The name of the permission group
+ * @param user The user of the packages
+ */
+class PermGroupPackagesSummaryLiveData
+private constructor(
+    private val app: Application,
+    private val permGroupName: String,
+    private val user: UserHandle
+) : SmartAsyncMediatorLiveData<PermGroupPackagesSummary>(), LocationUtils.LocationListener {
+
+    private val userContext = Utils.getUserContext(app, user)
+    private val permissionManager = userContext.getSystemService(PermissionManager::class.java)!!
+    private val isLocation = permGroupName == Manifest.permission_group.LOCATION
+    private val permGroupLiveData = PermGroupLiveData[permGroupName]
+    private val packageInfosLiveData = UserPackageInfosLiveData[user]
+
+    /** Map<uid, callback of the uid>, registered while this LiveData is active */
+    private val uidCallbacks = mutableMapOf<Int, UidPermissionChangeCallback>()
+    /** Uids whose permissions changed since their packages were last computed */
+    private val changedUids = mutableSetOf<Int>()
+    /** Whether all packages need to be computed again, e.g. after being inactive */
+    @Volatile private var fullUpdateNeeded = true
+
+    /** The inputs and the UI info of the last computation, only accessed while loading */
+    private var lastPackageInfos: List<LightPackageInfo>? = null
+    private var lastPermGroup: PermGroup? = null
+    private var lastUiInfos = emptyMap<String, AppPermGroupUiInfo>()
+
+    init {
+        addSource(permGroupLiveData) { updateAsync() }
+
+        addSource(packageInfosLiveData) {
+            updateUidCallbacks()
+            updateAsync()
+        }
+    }
+
+    override suspend fun loadDataAndPostValue(job: Job) {
+        if (!permGroupLiveData.isInitialized || !packageInfosLiveData.isInitialized) {
+            return
+        }
+
+        val permGroup = permGroupLiveData.value
+        val packageInfos = packageInfosLiveData.value
+        if (permGroup == null || packageInfos == null) {
+            invalidateSingle(permGroupName to user)
+            postValue(null)
+            return
+        }
+
+        val uidsToUpdate = synchronized(changedUids) { changedUids.toSet() }
+        val isFullUpdate =
+            fullUpdateNeeded || packageInfos !== lastPackageInfos || permGroup !== lastPermGroup
+        fullUpdateNeeded = false
+        // The grant states in the shared package infos are not updated on permission changes
+        val useSnapshotGrants = !packageInfosLiveData.permChangeStale
+
+        // Looked up once for all the packages computed in this pass, as each lookup is an IPC
+        val locationPackages by lazy(LazyThreadSafetyMode.NONE) { SpecialLocationPackages() }
+
+        val uiInfos = mutableMapOf<String, AppPermGroupUiInfo>()
+        val summaryBuilder = PermGroupPackagesSummary.Builder(user, lastUiInfos.size)
+        for (packageInfo in packageInfos) {
+            if (job.isCancelled) {
+                fullUpdateNeeded = true
+                return
+            }
+            val uiInfo =
+                if (packageInfo.uid in uidsToUpdate) {
+                    getUiInfo(
+                        packageInfo,
+                        permGroup,
+                        locationPackages,
+                        useSnapshotGrants = false
+                    )
+                } else if (isFullUpdate) {
+                    getUiInfo(packageInfo, permGroup, locationPackages, useSnapshotGrants)
+                } else {
+                    lastUiInfos[packageInfo.packageName]
+                }
+            if (uiInfo != null) {
+                uiInfos[packageInfo.packageName] = uiInfo
+                summaryBuilder.add(packageInfo.packageName, uiInfo)
+            }
+        }
+
+        synchronized(changedUids) { changedUids.removeAll(uidsToUpdate) }
+        lastPackageInfos = packageInfos
+        lastPermGroup = permGroup
+        lastUiInfos = uiInfos
+        postValue(summaryBuilder.build())
+    }
+
+    /**
+     * Computes the UI info of a package, or returns null if the package does not request
+     * permissions in the permission group.
+     */
+    private fun getUiInfo(
+        packageInfo: LightPackageInfo,
+        permGroup: PermGroup,
+        locationPackages: SpecialLocationPackages,
+        useSnapshotGrants: Boolean
+    ): AppPermGroupUiInfo? {
+        // Do not allow toggling non-platform permission groups for legacy apps via app ops
+        if (
+            packageInfo.targetSdkVersion < Build.VERSION_CODES.M &&
+                permGroup.groupInfo.packageName != OS_PKG
+        ) {
+            return null
+        }
+
+        val packageName = packageInfo.packageName
+        var packageFlags: Map<String, Int>? = null
+        var permissionState: MutableMap<String, PermState>? = null
+        for ((index, permissionName) in packageInfo.requestedPermissions.withIndex()) {
+            if (!permGroup.permissionInfos.containsKey(permissionName)) {
+                continue
+            }
+            if (permissionState == null) {
+                permissionState = mutableMapOf()
+                if (KotlinUtils.canGetAllPermissionFlags()) {
+                    packageFlags = KotlinUtils.getAllPermissionFlags(permissionManager, packageName)
+                }
+            }
+
+            val permFlags =
+                packageFlags?.get(permissionName)
+                    ?: userContext.packageManager.getPermissionFlags(
+                        permissionName,
+                        packageName,
+                        user
+                    )
+            val isRequestGranted =
+                if (useSnapshotGrants) {
+                    packageInfo.requestedPermissionsFlags[index] and
+                        PackageInfo.REQUESTED_PERMISSION_GRANTED != 0
+                } else {
+                    userContext.packageManager.checkPermission(permissionName, packageName) ==
+                        PackageManager.PERMISSION_GRANTED
+                }
+            val granted =
+                isRequestGranted &&
+                    permFlags and PackageManager.FLAG_PERMISSION_REVOKED_COMPAT == 0
+            permissionState[permissionName] = PermState(permFlags, granted)
+        }
+
+        if (permissionState == null) {
+            return null
+        }
+        return AppPermGroupUiInfoCalculator(
+                app,
+                packageName,
+                permGroupName,
+                user,
+                packageName in locationPackages.providerPackages,
+                packageName == locationPackages.controllerExtraPackage
+            )
+            .getAppPermGroupUiInfo(
+                packageInfo,
+                permGroup.groupInfo,
+                permGroup.permissionInfos,
+                permissionState
+            )
+    }
+
+    /** Registers a permission change callback for each uid of the packages while active */
+    @MainThread
+    private fun updateUidCallbacks() {
+        val uids =
+            if (hasActiveObservers()) {
+                packageInfosLiveData.value?.mapTo(mutableSetOf()) { it.uid } ?: emptySet()
+            } else {
+                emptySet()
+            }
+
+        val iterator = uidCallbacks.iterator()
+        while (iterator.hasNext()) {
+            val (uid, callback) = iterator.next()
+            if (uid !in uids) {
+                PermissionListenerMultiplexer.removeCallback(uid, callback)
+                iterator.remove()
+            }
+        }
+        for (uid in uids) {
+            if (uid !in uidCallbacks) {
+                val callback = UidPermissionChangeCallback(uid)
+                uidCallbacks[uid] = callback
+                PermissionListenerMultiplexer.addCallback(uid, callback)
+            }
+        }
+    }
+
+    override fun onLocationStateChange(enabled: Boolean) {
+        fullUpdateNeeded = true
+        updateAsync()
+    }
+
+    override fun onActive() {
+        // Changes while inactive were not observed
+        fullUpdateNeeded = true
+        super.onActive()
+        updateUidCallbacks()
+        if (isLocation) {
+            LocationUtils.addLocationListener(this)
+        }
+    }
+
+    override fun onInactive() {
+        super.onInactive()
+        updateUidCallbacks()
+        if (isLocation) {
+            LocationUtils.removeLocationListener(this)
+        }
+    }
+
+    /** The packages whose location permissions are special for this permission group */
+    private inner class SpecialLocationPackages {
+        val providerPackages: Set<String> =
+            if (isLocation) LocationUtils.getLocationProviderPackages(app) else emptySet()
+        val controllerExtraPackage: String? =
+            LocationUtils.getControllerExtraPackageForGroup(app, permGroupName)
+    }
+
+    private inner class UidPermissionChangeCallback(private val uid: Int) :
+        PermissionListenerMultiplexer.PermissionChangeCallback {
+        override fun onPermissionChange() {
+            synchronized(changedUids) { changedUids.add(uid) }
+            updateAsync()
+        }
+    }
+
+    /**
+     * Repository for PermGroupPackagesSummaryLiveDatas.
+     *
+     * <p> Key value is a pair of string permission group name and UserHandle, value is its
+     * corresponding LiveData.
+     */
+    companion object :
+        DataRepository<Pair<String, UserHandle>, PermGroupPackagesSummaryLiveData>() {
+        override fun newValue(key: Pair<String, UserHandle>): PermGroupPackagesSummaryLiveData {
+            return PermGroupPackagesSummaryLiveData(
+                PermissionControllerApplication.get(),
+                key.first,
+                key.second
+            )
+        }
+    }
+}
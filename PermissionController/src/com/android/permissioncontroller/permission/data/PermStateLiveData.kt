@@ -58,6 +58,17 @@ private constructor(
     private val packageInfoLiveData = LightPackageInfoLiveData[packageName, user, deviceId]
     private val groupLiveData = PermGroupLiveData[permGroupName]
 
+    /**
+     * The flags of all permissions of the package, shared with the PermStateLiveDatas of the other
+     * groups. If null the flags are read one permission at a time.
+     */
+    private val packageFlagsLiveData =
+        if (deviceId == ContextCompat.DEVICE_ID_DEFAULT && KotlinUtils.canGetAllPermissionFlags()) {
+            PackagePermissionFlagsLiveData[packageName, user]
+        } else {
+            null
+        }
+
     private var uid: Int? = null
     private var registeredUid: Int? = null
 
@@ -68,6 +79,9 @@ private constructor(
         }
 
         addSource(groupLiveData) { updateAsync() }
+
+        // The package flags LiveData listens for permission changes on behalf of this LiveData
+        packageFlagsLiveData?.let { addSource(it) { updateAsync() } }
     }
 
     /**
@@ -75,7 +89,11 @@ private constructor(
      * the RequestedPermissionFlags of the PermState.
      */
     override suspend fun loadDataAndPostValue(job: Job) {
-        if (!packageInfoLiveData.isInitialized || !groupLiveData.isInitialized) {
+        if (
+            !packageInfoLiveData.isInitialized ||
+                !groupLiveData.isInitialized ||
+                packageFlagsLiveData?.isInitialized == false
+        ) {
             return
         }
 
@@ -86,14 +104,20 @@ private constructor(
             postValue(null)
             return
         }
+        val packageFlags = packageFlagsLiveData?.value
         val permissionStates = mutableMapOf<String, PermState>()
         for ((index, permissionName) in packageInfo.requestedPermissions.withIndex()) {
             permissionGroup.permissionInfos[permissionName]?.let { permInfo ->
-                val packageFlags = packageInfo.requestedPermissionsFlags[index]
+                val requestedFlags = packageInfo.requestedPermissionsFlags[index]
                 val permFlags =
-                    context.packageManager.getPermissionFlags(permInfo.name, packageName, user)
+                    packageFlags?.get(permInfo.name)
+                        ?: context.packageManager.getPermissionFlags(
+                            permInfo.name,
+                            packageName,
+                            user
+                        )
                 val granted =
-                    packageFlags and PackageInfo.REQUESTED_PERMISSION_GRANTED != 0 &&
+                    requestedFlags and PackageInfo.REQUESTED_PERMISSION_GRANTED != 0 &&
                         permFlags and PackageManager.FLAG_PERMISSION_REVOKED_COMPAT == 0
 
                 if (job.isCancelled) {
@@ -111,6 +135,9 @@ private constructor(
     }
 
     private fun checkForUidUpdate(packageInfo: LightPackageInfo?) {
+        if (packageFlagsLiveData != null) {
+            return
+        }
         if (packageInfo == null) {
             registeredUid?.let { PermissionListenerMultiplexer.removeCallback(it, this) }
             return
@@ -132,6 +159,9 @@ private constructor(
 
     override fun onActive() {
         super.onActive()
+        if (packageFlagsLiveData != null) {
+            return
+        }
         uid?.let {
             PermissionListenerMultiplexer.addCallback(it, this)
             registeredUid = uid
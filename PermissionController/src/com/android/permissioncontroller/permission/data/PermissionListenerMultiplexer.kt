@@ -18,9 +18,19 @@ package com.android.permissioncontroller.permission.data
 
 import android.app.Application
 import android.content.pm.PackageManager
+import android.view.Choreographer
+import androidx.annotation.MainThread
 import com.android.permissioncontroller.PermissionControllerApplication
+import com.android.permissioncontroller.PermissionControllerProto.PermissionChangeStatsProto
+import java.util.concurrent.atomic.AtomicLong
 
-/** Serves as a single shared Permission Change Listener for all AppPermissionGroupLiveDatas. */
+/**
+ * Serves as a single shared Permission Change Listener for all AppPermissionGroupLiveDatas.
+ *
+ * Changes are coalesced until the next frame: A uid that changes several times before then, e.g.
+ * while a backup is restored or a role is granted, only causes one call to its callbacks. A
+ * callback registered for several changed uids is only called once too.
+ */
 object PermissionListenerMultiplexer : PackageManager.OnPermissionsChangedListener {
 
     private val app: Application = PermissionControllerApplication.get()
@@ -31,8 +41,56 @@ object PermissionListenerMultiplexer : PackageManager.OnPermissionsChangedListen
     private val callbacks = mutableMapOf<Int, MutableList<PermissionChangeCallback>>()
     private val pm = app.applicationContext.packageManager
 
+    /** UIDs that changed since the pending changes were last dispatched */
+    private val pendingUids = mutableSetOf<Int>()
+    private val dispatchPendingChangesCallback = Choreographer.FrameCallback {
+        dispatchPendingChanges()
+    }
+
+    /** Number of permission changes reported by the system */
+    private val receivedChangeCount = AtomicLong()
+    /** Number of changes that were merged into an already pending change of the same uid */
+    private val coalescedChangeCount = AtomicLong()
+    /** Number of times a callback was informed about changes */
+    private val deliveredCallbackCount = AtomicLong()
+
+    @MainThread
     override fun onPermissionsChanged(uid: Int) {
-        callbacks[uid]?.toList()?.forEach { callback -> callback.onPermissionChange() }
+        receivedChangeCount.incrementAndGet()
+        if (!callbacks.containsKey(uid)) {
+            return
+        }
+
+        if (!pendingUids.add(uid)) {
+            coalescedChangeCount.incrementAndGet()
+            return
+        }
+        if (pendingUids.size == 1) {
+            Choreographer.getInstance().postFrameCallback(dispatchPendingChangesCallback)
+        }
+    }
+
+    @MainThread
+    private fun dispatchPendingChanges() {
+        val callbacksToNotify = mutableSetOf<PermissionChangeCallback>()
+        for (uid in pendingUids) {
+            callbacks[uid]?.let { callbacksToNotify.addAll(it) }
+        }
+        pendingUids.clear()
+
+        for (callback in callbacksToNotify) {
+            deliveredCallbackCount.incrementAndGet()
+            callback.onPermissionChange()
+        }
+    }
+
+    /** Get the statistics about coalesced changes, for dumping */
+    fun getStats(): PermissionChangeStatsProto {
+        return PermissionChangeStatsProto.newBuilder()
+            .setReceivedChangeCount(receivedChangeCount.get())
+            .setCoalescedChangeCount(coalescedChangeCount.get())
+            .setDeliveredCallbackCount(deliveredCallbackCount.get())
+            .build()
     }
 
     fun addOrReplaceCallback(oldUid: Int?, newUid: Int, callback: PermissionChangeCallback) {
@@ -63,10 +121,13 @@ object PermissionListenerMultiplexer : PackageManager.OnPermissionsChangedListen
 
         if (callbacks[uid]!!.isEmpty()) {
             callbacks.remove(uid)
+            pendingUids.remove(uid)
         }
 
         if (callbacks.isEmpty()) {
             pm.removeOnPermissionsChangeListener(this)
+            pendingUids.clear()
+            Choreographer.getInstance().removeFrameCallback(dispatchPendingChangesCallback)
         }
     }
 
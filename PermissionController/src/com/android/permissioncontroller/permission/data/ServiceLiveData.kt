@@ -101,6 +101,10 @@ class ServiceLiveData(
         updateAsync()
     }
 
+    override fun onPackagesUpdated(packageNames: Set<String>) {
+        updateAsync()
+    }
+
     override suspend fun loadDataAndPostValue(job: Job) {
         if (job.isCancelled) {
             return
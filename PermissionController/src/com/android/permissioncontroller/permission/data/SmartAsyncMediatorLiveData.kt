@@ -59,7 +59,20 @@ abstract class SmartAsyncMediatorLiveData<T>(
 
         GlobalScope.launch(IPC) {
             currentJob = coroutineContext[Job]
-            loadDataAndPostValue(currentJob!!)
+            val loadName = LiveDataLoadStats.getName(this@SmartAsyncMediatorLiveData)
+            val loadCookie = System.identityHashCode(this@SmartAsyncMediatorLiveData)
+            val loadStartNanos = System.nanoTime()
+            LiveDataLoadStats.beginTraceSection(loadName, loadCookie)
+            try {
+                loadDataAndPostValue(currentJob!!)
+            } finally {
+                LiveDataLoadStats.onLoadFinished(
+                    loadName,
+                    loadCookie,
+                    loadStartNanos,
+                    currentJob!!.isCancelled
+                )
+            }
             // TODO ntmyren: generalize this command to the IPC dispatcher
             Binder.flushPendingCommands()
             jobRunning = false
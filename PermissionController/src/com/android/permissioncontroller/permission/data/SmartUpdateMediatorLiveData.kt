@@ -92,14 +92,29 @@ abstract class SmartUpdateMediatorLiveData<T>(private val isStaticVal: Boolean =
 
         if (this is SmartAsyncMediatorLiveData<T>) {
             isStale = true
+            // The load is recorded once it ran in the background, see updateAsync
+            onUpdate()
+            return
+        }
+
+        val loadName = LiveDataLoadStats.getName(this)
+        val loadCookie = System.identityHashCode(this)
+        val loadStartNanos = System.nanoTime()
+        LiveDataLoadStats.beginTraceSection(loadName, loadCookie)
+        try {
+            onUpdate()
+        } finally {
+            LiveDataLoadStats.onLoadFinished(loadName, loadCookie, loadStartNanos, false)
         }
-        onUpdate()
     }
 
     @MainThread protected abstract fun onUpdate()
 
     override var timeWentInactive: Long? = System.nanoTime()
 
+    override val estimatedSizeBytes: Int
+        get() = DataRepository.estimateSizeBytes(value)
+
     /**
      * Some LiveDatas have types, like Drawables which do not have a non-default equals method.
      * Those classes can override this method to change when the value is set upon calling setValue.
@@ -48,6 +48,10 @@ private constructor(private val app: Application, private val user: UserHandle)
         updateAsync()
     }
 
+    override fun onPackagesUpdated(packageNames: Set<String>) {
+        updateAsync()
+    }
+
     // TODO ntmyren: replace with correctly updating
     override fun onPermissionChange() {
         permChangeStale = true
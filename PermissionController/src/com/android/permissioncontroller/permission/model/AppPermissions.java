@@ -69,7 +69,7 @@ public final class AppPermissions {
             boolean delayChanges, Runnable onErrorCallback) {
         mContext = context;
         mPackageInfo = packageInfo;
-        mAppLabel = Utils.getAppLabel(packageInfo.applicationInfo, context);
+        mAppLabel = Utils.getAppLabel(packageInfo, context);
         mSortGroups = sortGroups;
         mDelayChanges = delayChanges;
         mOnErrorCallback = onErrorCallback;
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.model.livedatatypes
+
+import android.os.UserHandle
+import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGroupUiInfo.PermGrantState
+
+/**
+ * The [AppPermGroupUiInfo]s of all packages of a user which request permissions in one permission
+ * group, stored in columns of primitive arrays instead of one object per package. Packages are
+ * accessed by index, from 0 until [size].
+ *
+ * @param user The user of the packages
+ * @param packageNames The names of the packages
+ * @param permGrantStates The ordinals of the [PermGrantState] of each package
+ * @param flags The [FLAG_SHOULD_SHOW], [FLAG_SYSTEM] and [FLAG_USER_SET] flags of each package
+ */
+class PermGroupPackagesSummary
+private constructor(
+    val user: UserHandle,
+    private val packageNames: Array<String>,
+    private val permGrantStates: ByteArray,
+    private val flags: ByteArray
+) {
+    /** The number of packages */
+    val size: Int
+        get() = packageNames.size
+
+    fun getPackageName(index: Int): String = packageNames[index]
+
+    fun getPermGrantState(index: Int): PermGrantState =
+        PERM_GRANT_STATES[permGrantStates[index].toInt()]
+
+    fun shouldShow(index: Int): Boolean = hasFlag(index, FLAG_SHOULD_SHOW)
+
+    fun isSystem(index: Int): Boolean = hasFlag(index, FLAG_SYSTEM)
+
+    fun isUserSet(index: Int): Boolean = hasFlag(index, FLAG_USER_SET)
+
+    /** Get the UI info of a package, e.g. to share code with the per package UI info */
+    fun getUiInfo(index: Int): AppPermGroupUiInfo =
+        AppPermGroupUiInfo(
+            shouldShow(index),
+            getPermGrantState(index),
+            isSystem(index),
+            isUserSet(index)
+        )
+
+    private fun hasFlag(index: Int, flag: Int): Boolean = flags[index].toInt() and flag != 0
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) {
+            return true
+        }
+        if (other !is PermGroupPackagesSummary) {
+            return false
+        }
+        return user == other.user &&
+            packageNames.contentEquals(other.packageNames) &&
+            permGrantStates.contentEquals(other.permGrantStates) &&
+            flags.contentEquals(other.flags)
+    }
+
+    override fun hashCode(): Int {
+        var result = user.hashCode()
+        result = 31 * result + packageNames.contentHashCode()
+        result = 31 * result + permGrantStates.contentHashCode()
+        result = 31 * result + flags.contentHashCode()
+        return result
+    }
+
+    /**
+     * Builder for a [PermGroupPackagesSummary]
+     *
+     * @param user The user of the packages
+     * @param capacity The expected number of packages
+     */
+    class Builder(private val user: UserHandle, capacity: Int) {
+        private val packageNames = ArrayList<String>(capacity)
+        private var permGrantStates = ByteArray(capacity)
+        private var flags = ByteArray(capacity)
+
+        /** Add a package with its UI info */
+        fun add(packageName: String, uiInfo: AppPermGroupUiInfo): Builder {
+            val index = packageNames.size
+            if (index == flags.size) {
+                val newCapacity = maxOf(index * 2, 16)
+                permGrantStates = permGrantStates.copyOf(newCapacity)
+                flags = flags.copyOf(newCapacity)
+            }
+            packageNames.add(packageName)
+            permGrantStates[index] = uiInfo.permGrantState.ordinal.toByte()
+            var packageFlags = 0
+            if (uiInfo.shouldShow) {
+                packageFlags = packageFlags or FLAG_SHOULD_SHOW
+            }
+            if (uiInfo.isSystem) {
+                packageFlags = packageFlags or FLAG_SYSTEM
+            }
+            if (uiInfo.isUserSet) {
+                packageFlags = packageFlags or FLAG_USER_SET
+            }
+            flags[index] = packageFlags.toByte()
+            return this
+        }
+
+        fun build(): PermGroupPackagesSummary {
+            val size = packageNames.size
+            return PermGroupPackagesSummary(
+                user,
+                packageNames.toTypedArray(),
+                permGrantStates.copyOf(size),
+                flags.copyOf(size)
+            )
+        }
+    }
+
+    companion object {
+        private const val FLAG_SHOULD_SHOW = 1
+        private const val FLAG_SYSTEM = 1 shl 1
+        private const val FLAG_USER_SET = 1 shl 2
+
+        private val PERM_GRANT_STATES = PermGrantState.values()
+    }
+}
@@ -16,14 +16,23 @@
 
 package com.android.permissioncontroller.permission.service;
 
+import static android.app.AppOpsManager.MODE_ALLOWED;
+import static android.app.AppOpsManager.MODE_FOREGROUND;
 import static android.content.Context.MODE_PRIVATE;
+import static android.content.pm.PackageManager.FLAG_PERMISSION_GRANTED_BY_DEFAULT;
 import static android.content.pm.PackageManager.FLAG_PERMISSION_POLICY_FIXED;
+import static android.content.pm.PackageManager.FLAG_PERMISSION_REVIEW_REQUIRED;
 import static android.content.pm.PackageManager.FLAG_PERMISSION_SYSTEM_FIXED;
+import static android.content.pm.PackageManager.FLAG_PERMISSION_USER_FIXED;
+import static android.content.pm.PackageManager.FLAG_PERMISSION_USER_SET;
 import static android.content.pm.PackageManager.GET_PERMISSIONS;
 import static android.content.pm.PackageManager.GET_SIGNING_CERTIFICATES;
+import static android.health.connect.HealthPermissions.HEALTH_PERMISSION_GROUP;
 import static android.util.Xml.newSerializer;
 
 import static com.android.permissioncontroller.Constants.DELAYED_RESTORE_PERMISSIONS_FILE;
+import static com.android.permissioncontroller.permission.utils.Utils.FLAGS_PERMISSION_RESTRICTION_ANY_EXEMPT;
+import static com.android.permissioncontroller.permission.utils.Utils.isHealthPermissionUiEnabled;
 
 import static org.xmlpull.v1.XmlPullParser.END_DOCUMENT;
 import static org.xmlpull.v1.XmlPullParser.END_TAG;
@@ -31,16 +40,20 @@ import static org.xmlpull.v1.XmlPullParser.START_TAG;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import android.app.AppOpsManager;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
+import android.content.pm.PermissionInfo;
 import android.content.pm.Signature;
 import android.content.pm.SigningInfo;
 import android.os.Build;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.permission.PermissionManager;
 import android.permission.PermissionManager.SplitPermissionInfo;
+import android.util.ArrayMap;
 import android.util.ArraySet;
 import android.util.Base64;
 import android.util.Log;
@@ -54,7 +67,12 @@ import com.android.permissioncontroller.Constants;
 import com.android.permissioncontroller.permission.model.AppPermissionGroup;
 import com.android.permissioncontroller.permission.model.AppPermissions;
 import com.android.permissioncontroller.permission.model.Permission;
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPackageInfo;
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPermInfo;
 import com.android.permissioncontroller.permission.utils.CollectionUtils;
+import com.android.permissioncontroller.permission.utils.PermissionInfoCache;
+import com.android.permissioncontroller.permission.utils.PermissionMapping;
+import com.android.permissioncontroller.permission.utils.SoftRestrictedPermissionPolicy;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -76,6 +94,7 @@ import java.util.Set;
  */
 public class BackupHelper {
     private static final String LOG_TAG = BackupHelper.class.getSimpleName();
+    private static final String PLATFORM_PACKAGE_NAME = "android";
 
     private static final String TAG_PERMISSION_BACKUP = "perm-grant-backup";
     private static final String ATTR_PLATFORM_VERSION = "version";
@@ -321,6 +340,28 @@ public class BackupHelper {
      */
     private static void writePkgsAsXml(@NonNull XmlSerializer serializer,
             @NonNull ArrayList<BackupPackageState> pkgs) throws IOException {
+        startBackupDocument(serializer);
+
+        int numPkgs = pkgs.size();
+        for (int i = 0; i < numPkgs; i++) {
+            BackupPackageState packageState = pkgs.get(i);
+
+            if (packageState != null) {
+                packageState.writeAsXml(serializer);
+            }
+        }
+
+        endBackupDocument(serializer);
+    }
+
+    /**
+     * Write the start of a backup document, up to and including the opening
+     * {@link #TAG_ALL_GRANTS} tag.
+     *
+     * @param serializer The file to write to
+     */
+    private static void startBackupDocument(@NonNull XmlSerializer serializer)
+            throws IOException {
         serializer.startDocument(null, true);
 
         serializer.startTag(null, TAG_PERMISSION_BACKUP);
@@ -335,16 +376,14 @@ public class BackupHelper {
         }
 
         serializer.startTag(null, TAG_ALL_GRANTS);
+    }
 
-        int numPkgs = pkgs.size();
-        for (int i = 0; i < numPkgs; i++) {
-            BackupPackageState packageState = pkgs.get(i);
-
-            if (packageState != null) {
-                packageState.writeAsXml(serializer);
-            }
-        }
-
+    /**
+     * Write the end of a backup document started by {@link #startBackupDocument}.
+     *
+     * @param serializer The file to write to
+     */
+    private static void endBackupDocument(@NonNull XmlSerializer serializer) throws IOException {
         serializer.endTag(null, TAG_ALL_GRANTS);
         serializer.endTag(null, TAG_PERMISSION_BACKUP);
 
@@ -374,24 +413,47 @@ public class BackupHelper {
     /**
      * Write the state of all packages as XML.
      *
+     * <p>Only the names of the installed packages are loaded up front. The permission state of
+     * each package is then read and serialized one package at a time, so the memory used does not
+     * grow with the number of installed packages.
+     *
      * @param serializer The xml to write to
      */
     void writeState(@NonNull XmlSerializer serializer) throws IOException {
-        List<PackageInfo> pkgs = mContext.getPackageManager().getInstalledPackages(
-                GET_PERMISSIONS | GET_SIGNING_CERTIFICATES);
-        ArrayList<BackupPackageState> backupPkgs = new ArrayList<>();
+        long startTime = SystemClock.elapsedRealtime();
+        PackageManager pm = mContext.getPackageManager();
+        List<PackageInfo> pkgs = pm.getInstalledPackages(0);
+        BackupPermissionInfoCache permInfoCache = new BackupPermissionInfoCache(pm);
+
+        startBackupDocument(serializer);
 
         int numPkgs = pkgs.size();
+        int numPkgsWritten = 0;
         for (int i = 0; i < numPkgs; i++) {
-            BackupPackageState packageState = BackupPackageState.fromAppPermissions(mContext,
-                    pkgs.get(i));
+            String packageName = pkgs.get(i).packageName;
+
+            PackageInfo pkgInfo;
+            try {
+                pkgInfo = pm.getPackageInfo(packageName,
+                        GET_PERMISSIONS | GET_SIGNING_CERTIFICATES);
+            } catch (PackageManager.NameNotFoundException e) {
+                // Uninstalled while the backup was running
+                continue;
+            }
+
+            BackupPackageState packageState = BackupPackageState.fromPackageInfo(mContext,
+                    pkgInfo, permInfoCache);
 
             if (packageState != null) {
-                backupPkgs.add(packageState);
+                packageState.writeAsXml(serializer);
+                numPkgsWritten++;
             }
         }
 
-        writePkgsAsXml(serializer, backupPkgs);
+        endBackupDocument(serializer);
+
+        Log.i(LOG_TAG, "Backed up permissions of " + numPkgsWritten + "/" + numPkgs
+                + " packages in " + (SystemClock.elapsedRealtime() - startTime) + "ms");
     }
 
     /**
@@ -515,89 +577,51 @@ public class BackupHelper {
             return parsedPermissions;
         }
 
-        /**
-         * Is the permission granted, also considering the app-op.
-         *
-         * <p>This does not consider the review-required state of the permission.
-         *
-         * @param perm The permission that might be granted
-         *
-         * @return {@code true} iff the permission and app-op is granted
-         */
-        private static boolean isPermGrantedIncludingAppOp(@NonNull Permission perm) {
-            return perm.isGranted() && (!perm.affectsAppOp() || perm.isAppOpAllowed());
-        }
-
         /**
          * Get the state of a permission to back up.
          *
-         * @param perm The permission to back up
+         * @param permName The name of the permission to back up
+         * @param grantFlags The permission flags of the permission
+         * @param isGrantedIncludingAppOp If the permission and its app-op (if any) are granted.
+         *                                This does not consider the review-required state.
          * @param appSupportsRuntimePermissions If the app supports runtimePermissions
          *
          * @return The state to back up or {@code null} if the permission does not need to be
          * backed up.
          */
         @Nullable
-        private static BackupPermissionState fromPermission(@NonNull Permission perm,
+        private static BackupPermissionState fromPermission(@NonNull String permName,
+                int grantFlags, boolean isGrantedIncludingAppOp,
                 boolean appSupportsRuntimePermissions) {
-            int grantFlags = perm.getFlags();
-
             if ((grantFlags & SYSTEM_RUNTIME_GRANT_MASK) != 0) {
                 return null;
             }
 
-            if (!perm.isUserSet() && perm.isGrantedByDefault()) {
+            boolean isUserSet = (grantFlags & FLAG_PERMISSION_USER_SET) != 0;
+            boolean isUserFixed = (grantFlags & FLAG_PERMISSION_USER_FIXED) != 0;
+
+            if (!isUserSet && (grantFlags & FLAG_PERMISSION_GRANTED_BY_DEFAULT) != 0) {
                 return null;
             }
 
             boolean permissionWasReviewed;
             boolean isNotInDefaultGrantState;
             if (appSupportsRuntimePermissions) {
-                isNotInDefaultGrantState = isPermGrantedIncludingAppOp(perm);
+                isNotInDefaultGrantState = isGrantedIncludingAppOp;
                 permissionWasReviewed = false;
             } else {
-                isNotInDefaultGrantState = !isPermGrantedIncludingAppOp(perm);
-                permissionWasReviewed = !perm.isReviewRequired();
+                isNotInDefaultGrantState = !isGrantedIncludingAppOp;
+                permissionWasReviewed = (grantFlags & FLAG_PERMISSION_REVIEW_REQUIRED) == 0;
             }
 
-            if (isNotInDefaultGrantState || perm.isUserSet() || perm.isUserFixed()
-                    || permissionWasReviewed) {
-                return new BackupPermissionState(perm.getName(), isPermGrantedIncludingAppOp(perm),
-                        perm.isUserSet(), perm.isUserFixed(), permissionWasReviewed);
+            if (isNotInDefaultGrantState || isUserSet || isUserFixed || permissionWasReviewed) {
+                return new BackupPermissionState(permName, isGrantedIncludingAppOp, isUserSet,
+                        isUserFixed, permissionWasReviewed);
             } else {
                 return null;
             }
         }
 
-        /**
-         * Get the states of all permissions of a group to back up.
-         *
-         * @param group The group of the permissions to back up
-         *
-         * @return The state to back up. Empty list if no permissions in the group need to be backed
-         * up
-         */
-        @NonNull
-        static ArrayList<BackupPermissionState> fromPermissionGroup(
-                @NonNull AppPermissionGroup group) {
-            ArrayList<BackupPermissionState> permissionsToRestore = new ArrayList<>();
-            List<Permission> perms = group.getPermissions();
-
-            boolean appSupportsRuntimePermissions =
-                    group.getApp().applicationInfo.targetSdkVersion >= Build.VERSION_CODES.M;
-
-            int numPerms = perms.size();
-            for (int i = 0; i < numPerms; i++) {
-                BackupPermissionState permState = fromPermission(perms.get(i),
-                        appSupportsRuntimePermissions);
-                if (permState != null) {
-                    permissionsToRestore.add(permState);
-                }
-            }
-
-            return permissionsToRestore;
-        }
-
         /**
          * Write this state as XML.
          *
@@ -888,31 +912,101 @@ public class BackupHelper {
         /**
          * Get the state of a package to back up.
          *
+         * <p>This reads the permission state directly from the package, its permission flags and
+         * app-ops instead of building a full {@link AppPermissions} model for it.
+         *
          * @param context A context to use
          * @param pkgInfo The package to back up.
+         * @param permInfoCache The cache to resolve permission information from
          *
          * @return The state to back up or {@code null} if no permission of the package need to be
          * backed up.
          */
         @Nullable
-        static BackupPackageState fromAppPermissions(@NonNull Context context,
-                @NonNull PackageInfo pkgInfo) {
-            AppPermissions appPerms = new AppPermissions(context, pkgInfo, false, null);
+        static BackupPackageState fromPackageInfo(@NonNull Context context,
+                @NonNull PackageInfo pkgInfo, @NonNull BackupPermissionInfoCache permInfoCache) {
+            LightPackageInfo lightPkgInfo = new LightPackageInfo(pkgInfo);
+            PackageManager pm = context.getPackageManager();
+            AppOpsManager appOps = context.getSystemService(AppOpsManager.class);
+            UserHandle user = UserHandle.getUserHandleForUid(lightPkgInfo.getUid());
+            int targetSdkVersion = lightPkgInfo.getTargetSdkVersion();
+
+            // Collect the requested runtime permissions, as AppPermissionGroup#create would
+            List<String> requestedPerms = lightPkgInfo.getRequestedPermissions();
+            ArrayMap<String, LightPermInfo> runtimePerms = new ArrayMap<>();
+            ArrayMap<String, Boolean> runtimePermsGranted = new ArrayMap<>();
+            int numRequestedPerms = requestedPerms.size();
+            for (int i = 0; i < numRequestedPerms; i++) {
+                String permName = requestedPerms.get(i);
+                LightPermInfo permInfo = permInfoCache.getRuntimePermissionInfo(permName);
+                if (permInfo == null) {
+                    continue;
+                }
 
+                // Don't allow toggling non-platform permission groups for legacy apps via app ops.
+                if (targetSdkVersion <= Build.VERSION_CODES.LOLLIPOP_MR1
+                        && !PLATFORM_PACKAGE_NAME.equals(
+                                permInfoCache.getGroupDeclaringPackage(permInfo))) {
+                    continue;
+                }
+
+                runtimePerms.put(permName, permInfo);
+                runtimePermsGranted.put(permName, (lightPkgInfo.getRequestedPermissionsFlags()
+                        .get(i) & PackageInfo.REQUESTED_PERMISSION_GRANTED) != 0);
+            }
+
+            boolean appSupportsRuntimePermissions = targetSdkVersion >= Build.VERSION_CODES.M;
             ArrayList<BackupPermissionState> permissionsToRestore = new ArrayList<>();
-            List<AppPermissionGroup> groups = appPerms.getPermissionGroups();
 
-            int numGroups = groups.size();
-            for (int groupNum = 0; groupNum < numGroups; groupNum++) {
-                AppPermissionGroup group = groups.get(groupNum);
+            int numRuntimePerms = runtimePerms.size();
+            for (int i = 0; i < numRuntimePerms; i++) {
+                String permName = runtimePerms.keyAt(i);
+                LightPermInfo permInfo = runtimePerms.valueAt(i);
+                int flags = pm.getPermissionFlags(permName, lightPkgInfo.getPackageName(), user);
 
-                permissionsToRestore.addAll(BackupPermissionState.fromPermissionGroup(group));
+                if ((permInfo.getFlags() & PermissionInfo.FLAG_HARD_RESTRICTED) != 0
+                        && (flags & FLAGS_PERMISSION_RESTRICTION_ANY_EXEMPT) == 0) {
+                    continue;
+                }
+                if ((permInfo.getFlags() & PermissionInfo.FLAG_SOFT_RESTRICTED) != 0
+                        && !SoftRestrictedPermissionPolicy.shouldShow(lightPkgInfo, permName,
+                                flags)) {
+                    continue;
+                }
 
-                // Background permissions are in a subgroup that is not part of
-                // {@link AppPermission#getPermissionGroups}. Hence add it explicitly here.
-                if (group.getBackgroundPermissions() != null) {
-                    permissionsToRestore.addAll(BackupPermissionState.fromPermissionGroup(
-                            group.getBackgroundPermissions()));
+                String appOp = getAppOp(permInfo);
+                boolean affectsAppOp = appOp != null;
+                boolean isAppOpAllowed = false;
+                if (appOp != null) {
+                    int appOpMode = appOps.unsafeCheckOpRaw(appOp, lightPkgInfo.getUid(),
+                            lightPkgInfo.getPackageName());
+                    isAppOpAllowed = appOpMode == MODE_ALLOWED || appOpMode == MODE_FOREGROUND;
+                }
+
+                // The app-op state of a background permission is the background state of the
+                // app-op of its foreground permissions.
+                for (int fgNum = 0; fgNum < numRuntimePerms; fgNum++) {
+                    LightPermInfo fgPermInfo = runtimePerms.valueAt(fgNum);
+                    if (!permName.equals(fgPermInfo.getBackgroundPermission())) {
+                        continue;
+                    }
+
+                    affectsAppOp = true;
+                    String fgAppOp = getAppOp(fgPermInfo);
+                    if (fgAppOp != null && appOps.unsafeCheckOpRaw(fgAppOp,
+                            lightPkgInfo.getUid(), lightPkgInfo.getPackageName())
+                            == MODE_ALLOWED) {
+                        isAppOpAllowed = true;
+                    }
+                }
+
+                boolean isGrantedIncludingAppOp = runtimePermsGranted.valueAt(i)
+                        && (!affectsAppOp || isAppOpAllowed);
+
+                BackupPermissionState permState = BackupPermissionState.fromPermission(permName,
+                        flags, isGrantedIncludingAppOp, appSupportsRuntimePermissions);
+                if (permState != null) {
+                    permissionsToRestore.add(permState);
                 }
             }
 
@@ -930,6 +1024,24 @@ public class BackupHelper {
                     pkgInfo.packageName, permissionsToRestore, signingInfoState);
         }
 
+        /**
+         * Get the app-op backing a runtime permission, as resolved by
+         * {@link AppPermissionGroup#create}.
+         *
+         * @param permInfo The permission
+         *
+         * @return The app-op or {@code null} if the permission is not backed by an app-op
+         */
+        @Nullable
+        private static String getAppOp(@NonNull LightPermInfo permInfo) {
+            if (PLATFORM_PACKAGE_NAME.equals(permInfo.getPackageName())
+                    || (isHealthPermissionUiEnabled()
+                    && HEALTH_PERMISSION_GROUP.equals(permInfo.getGroup()))) {
+                return AppOpsManager.permissionToOp(permInfo.getName());
+            }
+            return null;
+        }
+
         /**
          * Write this state as XML.
          *
@@ -998,6 +1110,94 @@ public class BackupHelper {
         }
     }
 
+    /**
+     * Permission information resolved while writing a backup.
+     *
+     * <p>The same permissions are requested by many packages, hence each permission and group is
+     * only resolved once per backup. The size of this cache is bound by the number of permissions
+     * defined on the device, not by the number of packages backed up.
+     */
+    private static class BackupPermissionInfoCache {
+        @NonNull
+        private final PackageManager mPackageManager;
+
+        /** Permission name -> info, {@code null} if the permission is not a runtime permission */
+        @NonNull
+        private final ArrayMap<String, LightPermInfo> mRuntimePermissionInfos = new ArrayMap<>();
+
+        /** Group name -> declaring package, {@code null} if the group is not defined */
+        @NonNull
+        private final ArrayMap<String, String> mGroupDeclaringPackages = new ArrayMap<>();
+
+        BackupPermissionInfoCache(@NonNull PackageManager packageManager) {
+            mPackageManager = packageManager;
+        }
+
+        /**
+         * Get the information of an installed runtime permission.
+         *
+         * @param permName The name of the permission
+         *
+         * @return The information or {@code null} if the permission is not an installed runtime
+         * permission
+         */
+        @Nullable
+        LightPermInfo getRuntimePermissionInfo(@NonNull String permName) {
+            int index = mRuntimePermissionInfos.indexOfKey(permName);
+            if (index >= 0) {
+                return mRuntimePermissionInfos.valueAt(index);
+            }
+
+            LightPermInfo permInfo = null;
+            PermissionInfo platformPermInfo = PermissionInfoCache.getPermissionInfo(permName);
+            if (platformPermInfo != null
+                    && (platformPermInfo.protectionLevel & PermissionInfo.PROTECTION_MASK_BASE)
+                    == PermissionInfo.PROTECTION_DANGEROUS
+                    && (platformPermInfo.flags & PermissionInfo.FLAG_INSTALLED) != 0
+                    && (platformPermInfo.flags & PermissionInfo.FLAG_REMOVED) == 0) {
+                permInfo = new LightPermInfo(platformPermInfo);
+            }
+
+            mRuntimePermissionInfos.put(permName, permInfo);
+            return permInfo;
+        }
+
+        /**
+         * Get the package declaring the group of a permission. If the permission does not belong
+         * to a defined group, this is the package declaring the permission.
+         *
+         * @param permInfo The permission
+         *
+         * @return The declaring package
+         */
+        @NonNull
+        String getGroupDeclaringPackage(@NonNull LightPermInfo permInfo) {
+            String group = PermissionMapping.getGroupOfPlatformPermission(permInfo.getName());
+            if (group == null) {
+                group = permInfo.getGroup();
+            }
+            if (group == null) {
+                return permInfo.getPackageName();
+            }
+
+            String declaringPackage;
+            int index = mGroupDeclaringPackages.indexOfKey(group);
+            if (index >= 0) {
+                declaringPackage = mGroupDeclaringPackages.valueAt(index);
+            } else {
+                try {
+                    declaringPackage = mPackageManager.getPermissionGroupInfo(group, 0)
+                            .packageName;
+                } catch (PackageManager.NameNotFoundException e) {
+                    declaringPackage = null;
+                }
+                mGroupDeclaringPackages.put(group, declaringPackage);
+            }
+
+            return declaringPackage != null ? declaringPackage : permInfo.getPackageName();
+        }
+    }
+
     /**
      * Returns whether the signing certificates of the restored app and backed up app are
      * compatible for the restored app to be granted the backed up app's permissions.
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.service
+
+import android.app.Service
+import android.content.Intent
+import android.os.Binder
+import android.os.IBinder
+import com.android.permissioncontroller.permission.utils.ProcessWarmer
+import com.android.permissioncontroller.permission.utils.Utils
+
+/**
+ * A service to bind to in order to start the process and warm up the state of the grant dialog,
+ * e.g. right before an app is expected to request permissions for the first time. The binding
+ * has no interface, warming up starts when it is bound if [Utils.isGrantDialogPrewarmEnabled].
+ */
+class GrantPermissionsWarmUpService : Service() {
+    private val binder = Binder()
+
+    override fun onBind(intent: Intent?): IBinder {
+        if (Utils.isGrantDialogPrewarmEnabled()) {
+            ProcessWarmer.warmUp(application)
+        }
+        return binder
+    }
+}
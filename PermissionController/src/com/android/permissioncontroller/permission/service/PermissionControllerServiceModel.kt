@@ -16,7 +16,6 @@
 
 package com.android.permissioncontroller.permission.service
 
-import android.content.pm.PackageManager
 import android.os.Process
 import android.permission.PermissionControllerManager.COUNT_ONLY_WHEN_GRANTED
 import android.permission.PermissionControllerManager.COUNT_WHEN_SYSTEM
@@ -29,8 +28,11 @@ import androidx.lifecycle.map
 import com.android.permissioncontroller.DumpableLog
 import com.android.permissioncontroller.PermissionControllerProto.PermissionControllerDumpProto
 import com.android.permissioncontroller.permission.data.AppPermGroupUiInfoLiveData
+import com.android.permissioncontroller.permission.data.DataRepository
 import com.android.permissioncontroller.permission.data.HibernationSettingStateLiveData
+import com.android.permissioncontroller.permission.data.LiveDataLoadStats
 import com.android.permissioncontroller.permission.data.PackagePermissionsLiveData
+import com.android.permissioncontroller.permission.data.PermissionListenerMultiplexer
 import com.android.permissioncontroller.permission.data.SmartUpdateMediatorLiveData
 import com.android.permissioncontroller.permission.data.UserPackageInfosLiveData
 import com.android.permissioncontroller.permission.data.get
@@ -38,6 +40,7 @@ import com.android.permissioncontroller.permission.data.getUnusedPackages
 import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGroupUiInfo
 import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGroupUiInfo.PermGrantState
 import com.android.permissioncontroller.permission.model.livedatatypes.LightPackageInfo
+import com.android.permissioncontroller.permission.utils.PermissionInfoCache
 import com.android.permissioncontroller.permission.utils.PermissionMapping
 import com.android.permissioncontroller.permission.utils.Utils
 import java.util.function.IntConsumer
@@ -166,12 +169,7 @@ class PermissionControllerServiceModel(private val service: PermissionController
         // Store the group of all installed, runtime permissions in permissionNames
         val permToGroup = mutableMapOf<String, String?>()
         for (permName in permissionNames) {
-            val permInfo =
-                try {
-                    service.packageManager.getPermissionInfo(permName, 0)
-                } catch (e: PackageManager.NameNotFoundException) {
-                    continue
-                }
+            val permInfo = PermissionInfoCache.getPermissionInfo(permName) ?: continue
 
             if (Utils.isPermissionDangerousInstalledNotRemoved(permInfo)) {
                 permToGroup[permName] = PermissionMapping.getGroupOfPermission(permInfo)
@@ -323,7 +321,12 @@ class PermissionControllerServiceModel(private val service: PermissionController
         return withTimeout(9000) {
             val dumpedLogs = GlobalScope.async(IO) { DumpableLog.get() }
 
-            PermissionControllerDumpProto.newBuilder().addAllLogs(dumpedLogs.await()).build()
+            PermissionControllerDumpProto.newBuilder()
+                .addAllLogs(dumpedLogs.await())
+                .addAllDataRepositories(DataRepository.getAllStats())
+                .setPermissionChanges(PermissionListenerMultiplexer.getStats())
+                .addAllLiveDataLoads(LiveDataLoadStats.getAllStats())
+                .build()
         }
     }
 }
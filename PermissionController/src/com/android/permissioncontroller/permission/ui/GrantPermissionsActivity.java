@@ -51,6 +51,8 @@ import android.graphics.drawable.Icon;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.text.Annotation;
 import android.text.SpannableString;
 import android.text.Spanned;
@@ -76,10 +78,12 @@ import com.android.modules.utils.build.SdkLevel;
 import com.android.permissioncontroller.DeviceUtils;
 import com.android.permissioncontroller.R;
 import com.android.permissioncontroller.cscopes.ContactScopesUtils;
+import com.android.permissioncontroller.permission.data.GosPackageStateLiveData;
 import com.android.permissioncontroller.permission.model.livedatatypes.LightPermGroupInfo;
 import com.android.permissioncontroller.permission.ui.auto.GrantPermissionsAutoViewHandler;
 import com.android.permissioncontroller.permission.ui.handheld.ExtraPermissionLinkKt;
 import com.android.permissioncontroller.permission.ui.model.DenyButton;
+import com.android.permissioncontroller.permission.ui.model.GrantPermissionsPrefetcher;
 import com.android.permissioncontroller.permission.ui.model.GrantPermissionsViewModel;
 import com.android.permissioncontroller.permission.ui.model.GrantPermissionsViewModel.RequestInfo;
 import com.android.permissioncontroller.permission.ui.model.NewGrantPermissionsViewModelFactory;
@@ -89,6 +93,7 @@ import com.android.permissioncontroller.permission.utils.ContextCompat;
 import com.android.permissioncontroller.permission.utils.KotlinUtils;
 import com.android.permissioncontroller.permission.utils.MultiDeviceUtils;
 import com.android.permissioncontroller.permission.utils.PermissionMapping;
+import com.android.permissioncontroller.permission.utils.ProcessWarmer;
 import com.android.permissioncontroller.permission.utils.Utils;
 import com.android.permissioncontroller.sscopes.StorageScopesUtils;
 
@@ -109,6 +114,11 @@ public class GrantPermissionsActivity extends SettingsActivity
         implements GrantPermissionsViewHandler.ResultListener {
 
     private static final String LOG_TAG = "GrantPermissionsActivity";
+    private static final String TRACE_TIME_TO_FIRST_FRAME = "GrantPermissionsTimeToFirstFrame";
+    private static final String TRACE_COLD_START_TO_FIRST_FRAME =
+            "GrantPermissionsColdStartToFirstFrameMillis";
+    /** How soon after the process started the first dialog has to be created to be a cold start */
+    private static final long COLD_START_MAX_DELAY_MILLIS = 5000;
 
     private static final String KEY_SESSION_ID = GrantPermissionsActivity.class.getName()
             + "_REQUEST_ID";
@@ -148,6 +158,9 @@ public class GrantPermissionsActivity extends SettingsActivity
 
     public static final String INTENT_PHOTOS_SELECTED = "intent_extra_result";
 
+    /** Whether no dialog was created in this process before */
+    private static boolean sIsFirstDialogOfProcess = true;
+
     /**
      * A map of the currently shown GrantPermissionsActivity for this user, per package and task ID
      */
@@ -208,8 +221,21 @@ public class GrantPermissionsActivity extends SettingsActivity
     /** Which device the permission will affect. Default is the primary device. */
     private int mTargetDeviceId = ContextCompat.DEVICE_ID_DEFAULT;
 
+    /** Keeps the state of the dialog loading until the view model observes it */
+    @Nullable
+    private GrantPermissionsPrefetcher mPrefetcher;
+    /** Whether the time to first frame is still being traced */
+    private boolean mIsTracingTimeToFirstFrame;
+    /** Whether the process was started to show this dialog, and its first frame is pending */
+    private boolean mIsColdStart;
+
     @Override
     public void onCreate(Bundle icicle) {
+        Trace.beginAsyncSection(TRACE_TIME_TO_FIRST_FRAME, System.identityHashCode(this));
+        mIsTracingTimeToFirstFrame = true;
+        mIsColdStart = sIsFirstDialogOfProcess && SystemClock.uptimeMillis()
+                - Process.getStartUptimeMillis() < COLD_START_MAX_DELAY_MILLIS;
+        sIsFirstDialogOfProcess = false;
         if (DeviceUtils.isAuto(this)) {
             setTheme(R.style.GrantPermissions_Car_FilterTouches);
         }
@@ -306,9 +332,21 @@ public class GrantPermissionsActivity extends SettingsActivity
 
         mOriginalRequestedPermissions = mRequestedPermissions.toArray(new String[0]);
 
+        if (icicle == null) {
+            mPrefetcher = new GrantPermissionsPrefetcher(mTargetPackage, mTargetDeviceId,
+                    mRequestedPermissions);
+        }
+
+        // Keep the package state of the app loaded while the dialog is shown, so that it isn't
+        // queried again when the result is delivered. The state queried here is seeded into the
+        // LiveData, so that it isn't loaded a second time when the dialog starts.
+        GosPackageState packageState = GosPackageStateLiveData.getPackageState(mTargetPackage);
+        GosPackageStateLiveData packageStateLiveData = GosPackageStateLiveData.get(mTargetPackage);
+        packageStateLiveData.seed(packageState);
+        packageStateLiveData.observe(this, state -> { });
 
         List<String> requestedPermissionsForViewModel = filterRequestedPermissionsForViewModel(
-                mTargetPackage, mRequestedPermissions);
+                packageState, mRequestedPermissions);
         if (requestedPermissionsForViewModel.isEmpty()) {
             mForceResultDelivery = true;
             setResultAndFinish();
@@ -471,6 +509,8 @@ public class GrantPermissionsActivity extends SettingsActivity
     }
 
     private void onRequestInfoLoad(List<RequestInfo> requests) {
+        // The view model observes the prefetched state now
+        releasePrefetcher();
         if (!mViewModel.getRequestInfosLiveData().isInitialized() || isResultSet() || mDelegated) {
             return;
         } else if (requests == null) {
@@ -615,9 +655,40 @@ public class GrantPermissionsActivity extends SettingsActivity
                 manager.hideSoftInputFromWindow(mRootView.getWindowToken(), 0);
             }
             mRootView.setVisibility(View.VISIBLE);
+            if (mIsTracingTimeToFirstFrame) {
+                mRootView.getViewTreeObserver().registerFrameCommitCallback(
+                        this::onFirstFrameCommitted);
+            }
+        }
+    }
+
+    private void onFirstFrameCommitted() {
+        if (mIsColdStart) {
+            mIsColdStart = false;
+            long coldStartToFirstFrameMillis =
+                    SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+            Trace.setCounter(TRACE_COLD_START_TO_FIRST_FRAME, coldStartToFirstFrameMillis);
+            Log.i(LOG_TAG, "Cold start to first frame took " + coldStartToFirstFrameMillis
+                    + "ms, warmed up: " + ProcessWarmer.INSTANCE.isWarmedUp());
+        }
+        endTimeToFirstFrameTrace();
+    }
+
+    private void endTimeToFirstFrameTrace() {
+        if (mIsTracingTimeToFirstFrame) {
+            mIsTracingTimeToFirstFrame = false;
+            Trace.endAsyncSection(TRACE_TIME_TO_FIRST_FRAME, System.identityHashCode(this));
         }
     }
 
+    private void releasePrefetcher() {
+        if (mPrefetcher != null) {
+            mPrefetcher.release();
+            mPrefetcher = null;
+        }
+        ProcessWarmer.INSTANCE.release();
+    }
+
     private int getMessageId(String permGroupName, Prompt prompt, Boolean isDeviceAware) {
         return switch (prompt) {
             case UPGRADE_SETTINGS_LINK, OT_UPGRADE_SETTINGS_LINK -> Utils.getUpgradeRequest(
@@ -850,6 +921,9 @@ public class GrantPermissionsActivity extends SettingsActivity
     @Override
     public void onDestroy() {
         super.onDestroy();
+        releasePrefetcher();
+        // The dialog was never shown
+        endTimeToFirstFrameTrace();
         if (!isResultSet()) {
             removeActivityFromMap();
         }
@@ -929,7 +1003,7 @@ public class GrantPermissionsActivity extends SettingsActivity
                     && mTargetPackage != null) {
                 PackageManager pm = getPackageManager();
 
-                GosPackageState ps = GosPackageState.get(mTargetPackage);
+                GosPackageState ps = GosPackageStateLiveData.getPackageState(mTargetPackage);
 
                 for (int i = 0; i < resultPermissions.length; i++) {
                     grantResults[i] = pm.checkPermission(resultPermissions[i], mTargetPackage);
@@ -1100,9 +1174,7 @@ public class GrantPermissionsActivity extends SettingsActivity
 
     private boolean mForceResultDelivery;
 
-    private static List<String> filterRequestedPermissionsForViewModel(String packageName, List<String> requestedPermissions) {
-        GosPackageState ps = GosPackageState.get(packageName);
-
+    private static List<String> filterRequestedPermissionsForViewModel(GosPackageState ps, List<String> requestedPermissions) {
         if (ps == null) {
             return requestedPermissions;
         }
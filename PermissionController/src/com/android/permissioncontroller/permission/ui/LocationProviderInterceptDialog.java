@@ -52,7 +52,7 @@ public final class LocationProviderInterceptDialog extends FragmentActivity {
                 .setIcon(R.drawable.ic_dialog_alert_material)
                 .setTitle(android.R.string.dialog_alert_title)
                 .setMessage(getString(R.string.location_warning,
-                        Utils.getAppLabel(getPackageInfo(packageName).applicationInfo, this)))
+                        Utils.getAppLabel(getPackageInfo(packageName), this)))
                 .setNegativeButton(R.string.ok, null)
                 .setPositiveButton(R.string.location_settings, (dialog, which) ->
                         startActivity(new Intent(Settings.ACTION_LOCATION_SOURCE_SETTINGS)))
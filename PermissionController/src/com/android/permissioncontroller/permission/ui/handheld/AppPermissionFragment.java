@@ -76,6 +76,7 @@ import androidx.lifecycle.ViewModelProvider;
 import com.android.modules.utils.build.SdkLevel;
 import com.android.permissioncontroller.R;
 import com.android.permissioncontroller.permission.data.FullStoragePermissionAppsLiveData.FullStoragePackageState;
+import com.android.permissioncontroller.permission.data.GosPackageStateLiveData;
 import com.android.permissioncontroller.permission.ui.GrantPermissionsViewHandler;
 import com.android.permissioncontroller.permission.ui.model.AppPermissionViewModel;
 import com.android.permissioncontroller.permission.ui.model.AppPermissionViewModel.ButtonState;
@@ -767,7 +768,7 @@ public class AppPermissionFragment extends SettingsWithLargeHeader
         Context ctx = requireContext();
 
         String packageName = mPackageName;
-        GosPackageState packageState = GosPackageState.get(packageName);
+        GosPackageState packageState = GosPackageStateLiveData.getPackageState(packageName);
 
         String denyItemSuffix = link.getSettingsDeniedRadioButtonSuffix(ctx, packageName, packageState);
 
@@ -347,7 +347,7 @@ class PermissionPreference extends MultiTargetSwitchPreference {
      * @return The label of the app
      */
     private String getAppLabel() {
-        String label = Utils.getAppLabel(mViewModel.getPackageInfo().applicationInfo,
+        String label = Utils.getAppLabel(mViewModel.getPackageInfo(),
                 mViewModel.getApp());
         return BidiFormatter.getInstance().unicodeWrap(label);
     }
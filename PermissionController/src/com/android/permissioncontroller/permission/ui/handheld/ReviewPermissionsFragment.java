@@ -61,6 +61,7 @@ import com.android.permissioncontroller.permission.ui.model.ReviewPermissionView
 import com.android.permissioncontroller.permission.ui.model.ReviewPermissionsViewModel;
 import com.android.permissioncontroller.permission.ui.model.ReviewPermissionsViewModel.PermissionTarget;
 import com.android.permissioncontroller.permission.utils.KotlinUtils;
+import com.android.permissioncontroller.permission.utils.PermissionChangeTransaction;
 import com.android.permissioncontroller.permission.utils.Utils;
 
 import java.util.ArrayList;
@@ -192,6 +193,8 @@ public final class ReviewPermissionsFragment extends PreferenceFragmentCompat
         final int preferenceGroupCount = preferenceGroups.size();
         long changeIdForLogging = new Random().nextLong();
         Application app = getActivity().getApplication();
+        // All groups belong to the same app, hence kill it at most once
+        PermissionChangeTransaction transaction = new PermissionChangeTransaction(app);
         for (int groupNum = 0; groupNum < preferenceGroupCount; groupNum++) {
             final PreferenceGroup preferenceGroup = preferenceGroups.get(groupNum);
 
@@ -207,21 +210,27 @@ public final class ReviewPermissionsFragment extends PreferenceFragmentCompat
                     if (permPreference.getState().and(
                             PermissionTarget.PERMISSION_FOREGROUND)
                             != PermissionTarget.PERMISSION_NONE.getValue()) {
-                        KotlinUtils.INSTANCE.grantForegroundRuntimePermissions(app, group);
+                        KotlinUtils.INSTANCE.grantForegroundRuntimePermissions(app, group,
+                                group.getPermissions().keySet(), false, false, false,
+                                transaction);
                     }
                     if (permPreference.getState().and(
                             PermissionTarget.PERMISSION_BACKGROUND)
                             != PermissionTarget.PERMISSION_NONE.getValue()) {
-                        KotlinUtils.INSTANCE.grantBackgroundRuntimePermissions(app, group);
+                        KotlinUtils.INSTANCE.grantBackgroundRuntimePermissions(app, group,
+                                group.getPermissions().keySet(), transaction);
                     }
                     if (permPreference.getState() == PermissionTarget.PERMISSION_NONE) {
-                        KotlinUtils.INSTANCE.revokeForegroundRuntimePermissions(app, group);
-                        KotlinUtils.INSTANCE.revokeBackgroundRuntimePermissions(app, group);
+                        KotlinUtils.INSTANCE.revokeForegroundRuntimePermissions(app, group, false,
+                                false, false, group.getPermissions().keySet(), transaction);
+                        KotlinUtils.INSTANCE.revokeBackgroundRuntimePermissions(app, group, false,
+                                false, false, group.getPermissions().keySet(), transaction);
                     }
                     logReviewPermissionsFragmentResult(changeIdForLogging, group);
                 }
             }
         }
+        transaction.commit();
 
         // Some permission might be restricted and hence there is no AppPermissionGroup for it.
         // Manually unset all review-required flags, regardless of restriction.
@@ -281,7 +290,7 @@ public final class ReviewPermissionsFragment extends PreferenceFragmentCompat
                 ? R.string.permission_review_title_template_update
                 : R.string.permission_review_title_template_install;
         Spanned message = Html.fromHtml(getString(labelTemplateResId,
-                Utils.getAppLabel(mViewModel.getPackageInfo().applicationInfo,
+                Utils.getAppLabel(mViewModel.getPackageInfo(),
                         getActivity().getApplication())), 0);
         // Set the permission message as the title so it can be announced.
         activity.setTitle(message.toString());
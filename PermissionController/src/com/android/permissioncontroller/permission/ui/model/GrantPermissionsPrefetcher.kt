@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.ui.model
+
+import android.os.Handler
+import android.os.Looper
+import android.os.Process
+import android.os.Trace
+import androidx.annotation.MainThread
+import androidx.lifecycle.LiveData
+import androidx.lifecycle.Observer
+import com.android.modules.utils.build.SdkLevel
+import com.android.permissioncontroller.permission.data.LightAppPermGroupLiveData
+import com.android.permissioncontroller.permission.data.LightPackageInfoLiveData
+import com.android.permissioncontroller.permission.data.PackagePermissionFlagsLiveData
+import com.android.permissioncontroller.permission.data.PackagePermissionsLiveData
+import com.android.permissioncontroller.permission.data.get
+import com.android.permissioncontroller.permission.utils.ContextCompat
+import com.android.permissioncontroller.permission.utils.IPC
+import com.android.permissioncontroller.permission.utils.KotlinUtils
+import com.android.permissioncontroller.permission.utils.PermissionInfoCache
+import com.android.permissioncontroller.permission.utils.PermissionMapping
+import com.android.permissioncontroller.permission.utils.forEachInParallel
+import kotlinx.coroutines.GlobalScope
+import kotlinx.coroutines.launch
+
+/**
+ * Starts loading the state shown by the grant dialog as soon as the requested permissions are
+ * known.
+ *
+ * [GrantPermissionsViewModel] loads the package first, then its permissions, and only then the
+ * [LightAppPermGroupLiveData]s of the requested groups. The groups of platform permissions are
+ * known upfront though, hence their LiveDatas, the package, its permission flags and the requested
+ * permission infos are all loaded in parallel here. The LiveDatas are kept active until the
+ * dialog observes them itself, so the view model finds them loaded or loading in the repositories.
+ *
+ * A prefetcher created without a request only keeps the LiveDatas passed to [prefetch] active,
+ * e.g. to warm up the state of any dialog before a request is known.
+ */
+class GrantPermissionsPrefetcher @MainThread constructor() {
+    private val liveDatas = mutableListOf<LiveData<*>>()
+    private val observer = Observer<Any?> {}
+    private val handler = Handler(Looper.getMainLooper())
+    private val releaseRunnable = Runnable { release() }
+    private var isReleased = false
+
+    init {
+        // In case the dialog never shows, e.g. because the request is delegated
+        handler.postDelayed(releaseRunnable, MAX_PREFETCH_DURATION_MILLIS)
+    }
+
+    /**
+     * @param packageName The package requesting the permissions
+     * @param deviceId The device the permissions are requested for
+     * @param requestedPermissions The requested permissions
+     */
+    @MainThread
+    constructor(
+        packageName: String,
+        deviceId: Int,
+        requestedPermissions: List<String>
+    ) : this() {
+        Trace.beginSection("GrantPermissionsPrefetcher")
+        try {
+            val user = Process.myUserHandle()
+            prefetch(LightPackageInfoLiveData[packageName, user, deviceId])
+            prefetch(PackagePermissionsLiveData[packageName, user])
+            if (
+                SdkLevel.isAtLeastV() &&
+                    deviceId == ContextCompat.DEVICE_ID_DEFAULT &&
+                    KotlinUtils.canGetAllPermissionFlags()
+            ) {
+                prefetch(PackagePermissionFlagsLiveData[packageName, user])
+            }
+            requestedPermissions
+                .mapNotNullTo(mutableSetOf()) { PermissionMapping.getGroupOfPlatformPermission(it) }
+                .forEach { groupName ->
+                    prefetch(LightAppPermGroupLiveData[packageName, groupName, user, deviceId])
+                }
+
+            // Infos of permissions not defined by the platform are only loaded once the groups of
+            // the package are known
+            GlobalScope.launch(IPC) {
+                requestedPermissions.forEachInParallel(IPC) {
+                    PermissionInfoCache.getPermissionInfo(it)
+                }
+            }
+        } finally {
+            Trace.endSection()
+        }
+    }
+
+    /**
+     * Start loading a LiveData, and keep it active until this prefetcher is released. Does nothing
+     * once released.
+     *
+     * @param liveData The LiveData to load
+     */
+    @MainThread
+    fun prefetch(liveData: LiveData<*>) {
+        if (isReleased) {
+            return
+        }
+        liveData.observeForever(observer)
+        liveDatas.add(liveData)
+    }
+
+    /**
+     * Stop keeping the prefetched LiveDatas active. Call once the dialog observes its state, or is
+     * destroyed.
+     */
+    @MainThread
+    fun release() {
+        isReleased = true
+        handler.removeCallbacks(releaseRunnable)
+        liveDatas.forEach { it.removeObserver(observer) }
+        liveDatas.clear()
+    }
+
+    companion object {
+        private const val MAX_PREFETCH_DURATION_MILLIS = 10_000L
+    }
+}
@@ -109,6 +109,7 @@ import com.android.permissioncontroller.permission.utils.KotlinUtils.grantForegr
 import com.android.permissioncontroller.permission.utils.KotlinUtils.openPhotoPickerForApp
 import com.android.permissioncontroller.permission.utils.KotlinUtils.revokeBackgroundRuntimePermissions
 import com.android.permissioncontroller.permission.utils.KotlinUtils.revokeForegroundRuntimePermissions
+import com.android.permissioncontroller.permission.utils.PermissionChangeTransaction
 import com.android.permissioncontroller.permission.utils.PermissionMapping
 import com.android.permissioncontroller.permission.utils.PermissionMapping.getPartialStorageGrantPermissionsForGroup
 import com.android.permissioncontroller.permission.utils.SafetyNetLogger
@@ -765,10 +766,12 @@ class GrantPermissionsViewModel(
                 groupState.group.permissions.keys.filter { it != READ_MEDIA_VISUAL_USER_SELECTED }
             // If the permission is implicit, grant USER_SELECTED as user set, and all other
             // permissions as one time, and without app ops.
+            val transaction = PermissionChangeTransaction(app)
             grantForegroundRuntimePermissions(
                 app,
                 groupState.group,
-                listOf(READ_MEDIA_VISUAL_USER_SELECTED)
+                listOf(READ_MEDIA_VISUAL_USER_SELECTED),
+                transaction = transaction
             )
             grantForegroundRuntimePermissions(
                 app,
@@ -776,8 +779,10 @@ class GrantPermissionsViewModel(
                 nonSelectedPerms,
                 isOneTime = true,
                 userFixed = false,
-                withoutAppOps = true
+                withoutAppOps = true,
+                transaction = transaction
             )
+            transaction.commit()
             val appPermGroup =
                 AppPermissionGroup.create(
                     app,
@@ -795,19 +800,23 @@ class GrantPermissionsViewModel(
                 }
             val nonSelectedPerms = groupState.affectedPermissions.filter { it !in partialPerms }
             val setUserFixed = userSelectedPerm.isUserFixed || userSelectedPerm.isUserSet
+            val transaction = PermissionChangeTransaction(app)
             grantForegroundRuntimePermissions(
                 app,
                 groupState.group,
                 partialPerms.toList(),
-                userFixed = setUserFixed
+                userFixed = setUserFixed,
+                transaction = transaction
             )
             revokeForegroundRuntimePermissions(
                 app,
                 groupState.group,
                 userFixed = setUserFixed,
                 oneTime = false,
-                filterPermissions = nonSelectedPerms
+                filterPermissions = nonSelectedPerms,
+                transaction = transaction
             )
+            transaction.commit()
         }
         groupState.state = STATE_GRANTED
         reportButtonClickResult(
@@ -46,8 +46,9 @@ import com.android.permissioncontroller.R
 import com.android.permissioncontroller.permission.data.AllPackageInfosLiveData
 import com.android.permissioncontroller.permission.data.FullStoragePermissionAppsLiveData
 import com.android.permissioncontroller.permission.data.FullStoragePermissionAppsLiveData.FullStoragePackageState
-import com.android.permissioncontroller.permission.data.SinglePermGroupPackagesUiInfoLiveData
+import com.android.permissioncontroller.permission.data.PermGroupPackagesSummaryLiveData
 import com.android.permissioncontroller.permission.data.SmartUpdateMediatorLiveData
+import com.android.permissioncontroller.permission.data.UsersLiveData
 import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGroupUiInfo.PermGrantState
 import com.android.permissioncontroller.permission.model.v31.AppPermissionUsage
 import com.android.permissioncontroller.permission.ui.Category
@@ -56,6 +57,7 @@ import com.android.permissioncontroller.permission.ui.model.PermissionAppsViewMo
 import com.android.permissioncontroller.permission.ui.model.PermissionAppsViewModel.Companion.HAS_SYSTEM_APPS_KEY
 import com.android.permissioncontroller.permission.ui.model.PermissionAppsViewModel.Companion.SHOULD_SHOW_SYSTEM_KEY
 import com.android.permissioncontroller.permission.ui.model.PermissionAppsViewModel.Companion.SHOW_ALWAYS_ALLOWED
+import com.android.permissioncontroller.permission.utils.AppLabelCache
 import com.android.permissioncontroller.permission.utils.KotlinUtils.getPackageUid
 import com.android.permissioncontroller.permission.utils.KotlinUtils.is7DayToggleEnabled
 import com.android.permissioncontroller.permission.utils.LocationUtils
@@ -162,15 +164,16 @@ class PermissionAppsViewModel(
         }
     }
 
-    inner class CategorizedAppsLiveData(groupName: String) :
+    inner class CategorizedAppsLiveData(private val groupName: String) :
         MediatorLiveData<
             @kotlin.jvm.JvmSuppressWildcards Map<Category, List<Pair<String, UserHandle>>>
         >() {
-        private val packagesUiInfoLiveData = SinglePermGroupPackagesUiInfoLiveData[groupName]
+        /** Map<user, LiveData of the UI info of the packages of the user in this group> */
+        private val packagesSummaryLiveDatas =
+            mutableMapOf<UserHandle, PermGroupPackagesSummaryLiveData>()
+        private var fullStorageLiveData: FullStoragePermissionAppsLiveData? = null
 
         init {
-            var fullStorageLiveData: FullStoragePermissionAppsLiveData? = null
-
             // If this is the Storage group, observe a FullStoragePermissionAppsLiveData, update
             // the packagesWithFullFileAccess list, and call update to populate the subtitles.
             if (groupName == Manifest.permission_group.STORAGE) {
@@ -178,30 +181,62 @@ class PermissionAppsViewModel(
                 addSource(FullStoragePermissionAppsLiveData) { fullAccessPackages ->
                     if (fullAccessPackages != packagesWithFullFileAccess) {
                         packagesWithFullFileAccess = fullAccessPackages.filter { it.isGranted }
-                        if (packagesUiInfoLiveData.isInitialized) {
+                        if (arePackagesSummariesInitialized()) {
                             update()
                         }
                     }
                 }
             }
 
-            addSource(packagesUiInfoLiveData) {
-                if (fullStorageLiveData == null || fullStorageLiveData.isInitialized) update()
-            }
+            addSource(UsersLiveData) { users -> updateUsers(users ?: emptyList()) }
             addSource(shouldShowSystemLiveData) {
-                if (fullStorageLiveData == null || fullStorageLiveData.isInitialized) update()
+                if (isFullStorageInitialized()) update()
             }
 
-            if (
-                (fullStorageLiveData == null || fullStorageLiveData.isInitialized) &&
-                    packagesUiInfoLiveData.isInitialized
-            ) {
+            if (isFullStorageInitialized() && arePackagesSummariesInitialized()) {
                 packagesWithFullFileAccess =
                     fullStorageLiveData?.value?.filter { it.isGranted } ?: emptyList()
                 update()
             }
         }
 
+        private fun updateUsers(users: List<UserHandle>) {
+            val iterator = packagesSummaryLiveDatas.iterator()
+            while (iterator.hasNext()) {
+                val (user, packagesSummaryLiveData) = iterator.next()
+                if (user !in users) {
+                    removeSource(packagesSummaryLiveData)
+                    iterator.remove()
+                }
+            }
+            for (user in users) {
+                if (user in packagesSummaryLiveDatas) {
+                    continue
+                }
+                val packagesSummaryLiveData = PermGroupPackagesSummaryLiveData[groupName to user]
+                packagesSummaryLiveDatas[user] = packagesSummaryLiveData
+                addSource(packagesSummaryLiveData) { summary ->
+                    summary?.let {
+                        AppLabelCache.preloadAppLabels(
+                            List(it.size) { index -> it.getPackageName(index) to it.user },
+                            0f
+                        )
+                    }
+                    if (isFullStorageInitialized()) update()
+                }
+            }
+            if (isFullStorageInitialized()) update()
+        }
+
+        private fun isFullStorageInitialized(): Boolean {
+            return fullStorageLiveData?.isInitialized ?: true
+        }
+
+        private fun arePackagesSummariesInitialized(): Boolean {
+            return packagesSummaryLiveDatas.isNotEmpty() &&
+                packagesSummaryLiveDatas.values.all { it.isInitialized }
+        }
+
         fun update() {
             val categoryMap = mutableMapOf<Category, MutableList<Pair<String, UserHandle>>>()
             val showSystem: Boolean = state.get(SHOULD_SHOW_SYSTEM_KEY) ?: false
@@ -211,59 +246,63 @@ class PermissionAppsViewModel(
             categoryMap[Category.ASK] = mutableListOf()
             categoryMap[Category.DENIED] = mutableListOf()
 
-            val packageMap =
-                packagesUiInfoLiveData.value
-                    ?: run {
-                        if (packagesUiInfoLiveData.isInitialized) {
-                            value = categoryMap
-                        }
-                        return
-                    }
+            if (!arePackagesSummariesInitialized()) {
+                return
+            }
+            val summaries = packagesSummaryLiveDatas.values.mapNotNull { it.value }
 
-            val hasSystem = packageMap.any { it.value.isSystem && it.value.shouldShow }
+            val hasSystem =
+                summaries.any { summary ->
+                    (0 until summary.size).any { summary.isSystem(it) && summary.shouldShow(it) }
+                }
             if (hasSystem != state.get(HAS_SYSTEM_APPS_KEY)) {
                 state.set(HAS_SYSTEM_APPS_KEY, hasSystem)
             }
 
             var showAlwaysAllowedString = false
 
-            for ((packageUserPair, uiInfo) in packageMap) {
-                if (!uiInfo.shouldShow) {
-                    continue
-                }
-
-                if (uiInfo.isSystem && !showSystem) {
-                    continue
-                }
+            for (summary in summaries) {
+                for (index in 0 until summary.size) {
+                    if (!summary.shouldShow(index)) {
+                        continue
+                    }
 
-                if (
-                    uiInfo.permGrantState == PermGrantState.PERMS_ALLOWED_ALWAYS ||
-                        uiInfo.permGrantState == PermGrantState.PERMS_ALLOWED_FOREGROUND_ONLY
-                ) {
-                    showAlwaysAllowedString = true
-                }
+                    if (summary.isSystem(index) && !showSystem) {
+                        continue
+                    }
 
-                var category =
-                    when (uiInfo.permGrantState) {
-                        PermGrantState.PERMS_ALLOWED -> Category.ALLOWED
-                        PermGrantState.PERMS_ALLOWED_FOREGROUND_ONLY -> Category.ALLOWED_FOREGROUND
-                        PermGrantState.PERMS_ALLOWED_ALWAYS -> Category.ALLOWED
-                        PermGrantState.PERMS_DENIED -> Category.DENIED
-                        PermGrantState.PERMS_ASK -> Category.ASK
+                    val permGrantState = summary.getPermGrantState(index)
+                    if (
+                        permGrantState == PermGrantState.PERMS_ALLOWED_ALWAYS ||
+                            permGrantState == PermGrantState.PERMS_ALLOWED_FOREGROUND_ONLY
+                    ) {
+                        showAlwaysAllowedString = true
                     }
 
-                if (
-                    !SdkLevel.isAtLeastT() &&
-                        groupName == Manifest.permission_group.STORAGE &&
-                        packagesWithFullFileAccess.any {
-                            !it.isLegacy &&
-                                it.isGranted &&
-                                it.packageName to it.user == packageUserPair
+                    var category =
+                        when (permGrantState) {
+                            PermGrantState.PERMS_ALLOWED -> Category.ALLOWED
+                            PermGrantState.PERMS_ALLOWED_FOREGROUND_ONLY ->
+                                Category.ALLOWED_FOREGROUND
+                            PermGrantState.PERMS_ALLOWED_ALWAYS -> Category.ALLOWED
+                            PermGrantState.PERMS_DENIED -> Category.DENIED
+                            PermGrantState.PERMS_ASK -> Category.ASK
                         }
-                ) {
-                    category = Category.ALLOWED
+
+                    val packageUserPair = summary.getPackageName(index) to summary.user
+                    if (
+                        !SdkLevel.isAtLeastT() &&
+                            groupName == Manifest.permission_group.STORAGE &&
+                            packagesWithFullFileAccess.any {
+                                !it.isLegacy &&
+                                    it.isGranted &&
+                                    it.packageName to it.user == packageUserPair
+                            }
+                    ) {
+                        category = Category.ALLOWED
+                    }
+                    categoryMap[category]!!.add(packageUserPair)
                 }
-                categoryMap[category]!!.add(packageUserPair)
             }
             showAllowAlwaysStringLiveData.value = showAlwaysAllowedString
             value = categoryMap
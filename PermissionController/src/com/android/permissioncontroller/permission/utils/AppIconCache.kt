@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.utils
+
+import android.content.ContentValues
+import android.content.Context
+import android.content.pm.ApplicationInfo
+import android.content.pm.PackageManager
+import android.database.sqlite.SQLiteDatabase
+import android.database.sqlite.SQLiteException
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.drawable.AdaptiveIconDrawable
+import android.graphics.drawable.BitmapDrawable
+import android.graphics.drawable.Drawable
+import android.os.UserHandle
+import android.os.UserManager
+import android.util.Log
+import android.util.LruCache
+import android.util.SparseLongArray
+import com.android.launcher3.icons.IconFactory
+import com.android.launcher3.util.SQLiteCacheHelper
+import com.android.permissioncontroller.PermissionControllerApplication
+import com.android.permissioncontroller.permission.data.PackageBroadcastReceiver
+import java.io.ByteArrayOutputStream
+import java.util.Objects
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.GlobalScope
+import kotlinx.coroutines.launch
+
+/**
+ * A cache for the badged icons of packages.
+ *
+ * Icons are kept in a size bound in-memory LRU cache, keyed by package and user, and persisted in a
+ * database keyed by package, user and the last update time of the package. Entries of a package
+ * are dropped when it is added, changed, replaced or removed.
+ */
+object AppIconCache : PackageBroadcastReceiver.PackageBroadcastListener {
+    private val LOG_TAG = AppIconCache::class.java.simpleName
+
+    private const val DB_NAME = "app_icon_cache.db"
+    private const val DB_RELEASE_VERSION = 1
+
+    /** Fraction of the maximum heap size the in-memory cache may use */
+    private const val MEMORY_CACHE_HEAP_FRACTION = 16
+
+    private val app = PermissionControllerApplication.get()
+
+    /** The density the cached icons are rendered for */
+    private val iconDpi = app.resources.configuration.densityDpi
+
+    private val memoryCache =
+        object :
+            LruCache<Pair<String, UserHandle>, Bitmap>(
+                (Runtime.getRuntime().maxMemory() / MEMORY_CACHE_HEAP_FRACTION).toInt()
+            ) {
+            override fun sizeOf(key: Pair<String, UserHandle>, value: Bitmap): Int {
+                return value.allocationByteCount
+            }
+        }
+
+    /** The shape of adaptive icons the cached icons are rendered for */
+    @Volatile private var iconShape = getIconShape()
+
+    /**
+     * Whether the icon shape changed since the database was opened. Its icons are then not used
+     * anymore, and it is dropped the next time the process starts.
+     */
+    @Volatile private var isIconDbStale = false
+
+    private val iconDb by lazy {
+        val version = Objects.hash(DB_RELEASE_VERSION, iconDpi, iconShape) and Int.MAX_VALUE
+        IconDb(app, version.coerceAtLeast(1))
+    }
+
+    /** Cache: user id -> user serial number */
+    private val userSerials = SparseLongArray()
+
+    /** Incremented on every invalidation, so that icons loaded concurrently are not cached */
+    private val invalidationCount = AtomicInteger()
+
+    private val isListeningForPackageChanges = AtomicBoolean()
+
+    /**
+     * Get the badged icon of an app, loading and caching it if it is not cached yet.
+     *
+     * @param context The context to use
+     * @param appInfo The app to get the icon for
+     * @param lastUpdateTime The last update time of the app if known. If not known the icon is
+     *   created from the app when it is not in memory, without a lookup in the database, as that
+     *   would need the package info of the app.
+     * @return The badged icon
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun getBadgedIcon(
+        context: Context,
+        appInfo: ApplicationInfo,
+        lastUpdateTime: Long? = null
+    ): Drawable {
+        val user = UserHandle.getUserHandleForUid(appInfo.uid)
+        if (context.resources.configuration.densityDpi != iconDpi) {
+            return BitmapDrawable(context.resources, createBadgedIconBitmap(context, appInfo, user))
+        }
+
+        startListeningForPackageChanges()
+
+        val key = appInfo.packageName to user
+        memoryCache.get(key)?.let {
+            return BitmapDrawable(context.resources, it)
+        }
+
+        val invalidationCountAtStart = invalidationCount.get()
+        val dbUpdateTime = if (isIconDbStale) null else lastUpdateTime
+        var icon = dbUpdateTime?.let { readFromDb(appInfo.packageName, user, it) }
+        if (icon == null) {
+            icon = createBadgedIconBitmap(context, appInfo, user)
+            if (dbUpdateTime != null) {
+                writeToDb(appInfo.packageName, user, dbUpdateTime, icon)
+            }
+        }
+
+        if (invalidationCount.get() == invalidationCountAtStart) {
+            memoryCache.put(key, icon)
+        }
+        return BitmapDrawable(context.resources, icon)
+    }
+
+    /**
+     * Get the badged icon of a package if it is already in the in-memory cache.
+     *
+     * @param context The context to use
+     * @param packageName The package to get the icon for
+     * @param user The user of the package
+     * @return The badged icon, or null if it is not cached
+     */
+    @JvmStatic
+    fun getCachedBadgedIcon(context: Context, packageName: String, user: UserHandle): Drawable? {
+        if (context.resources.configuration.densityDpi != iconDpi) {
+            return null
+        }
+        return memoryCache.get(packageName to user)?.let { BitmapDrawable(context.resources, it) }
+    }
+
+    /**
+     * Drop all icons if the icon shape changed, e.g. through an overlay. Call when the configuration
+     * changed.
+     */
+    @JvmStatic
+    fun onConfigurationChanged() {
+        val newIconShape = getIconShape()
+        if (newIconShape == iconShape) {
+            return
+        }
+
+        iconShape = newIconShape
+        isIconDbStale = true
+        invalidationCount.incrementAndGet()
+        memoryCache.evictAll()
+    }
+
+    /** Identifies the shape of adaptive icons, the mask of which comes from the system */
+    private fun getIconShape(): Int {
+        return AdaptiveIconDrawable(null, null).iconMask.approximate(0.5f).contentHashCode()
+    }
+
+    override fun onPackageUpdate(packageName: String) {
+        invalidationCount.incrementAndGet()
+        for (key in memoryCache.snapshot().keys) {
+            if (key.first == packageName) {
+                memoryCache.remove(key)
+            }
+        }
+        GlobalScope.launch(IPC) {
+            iconDb.delete("$COLUMN_PACKAGE = ?", arrayOf(packageName))
+        }
+    }
+
+    private fun startListeningForPackageChanges() {
+        if (isListeningForPackageChanges.compareAndSet(false, true)) {
+            PackageBroadcastReceiver.addAllCallback(this, immediate = true)
+        }
+    }
+
+    private fun createBadgedIconBitmap(
+        context: Context,
+        appInfo: ApplicationInfo,
+        user: UserHandle
+    ): Bitmap {
+        IconFactory.obtain(context).use { iconFactory ->
+            return iconFactory
+                .createBadgedIconBitmap(
+                    appInfo.loadUnbadgedIcon(context.packageManager),
+                    user,
+                    false
+                )
+                .icon
+        }
+    }
+
+    /** Get the serial number of a user, which unlike its id is not reused */
+    internal fun getSerialNumberForUser(user: UserHandle): Long {
+        synchronized(userSerials) {
+            val index = userSerials.indexOfKey(user.identifier)
+            if (index >= 0) {
+                return userSerials.valueAt(index)
+            }
+            val serial = app.getSystemService(UserManager::class.java)!!.getSerialNumberForUser(user)
+            userSerials.put(user.identifier, serial)
+            return serial
+        }
+    }
+
+    private fun readFromDb(packageName: String, user: UserHandle, lastUpdateTime: Long): Bitmap? {
+        try {
+            iconDb
+                .query(
+                    arrayOf(COLUMN_ICON),
+                    "$COLUMN_PACKAGE = ? AND $COLUMN_USER = ? AND $COLUMN_LAST_UPDATED = ?",
+                    arrayOf(
+                        packageName,
+                        getSerialNumberForUser(user).toString(),
+                        lastUpdateTime.toString()
+                    )
+                )
+                .use { cursor ->
+                    if (!cursor.moveToNext()) {
+                        return null
+                    }
+                    val data = cursor.getBlob(0) ?: return null
+                    return BitmapFactory.decodeByteArray(data, 0, data.size)
+                }
+        } catch (e: SQLiteException) {
+            Log.w(LOG_TAG, "Could not read icon of $packageName from cache", e)
+            return null
+        }
+    }
+
+    private fun writeToDb(packageName: String, user: UserHandle, lastUpdateTime: Long, icon: Bitmap) {
+        val userSerial = getSerialNumberForUser(user)
+        GlobalScope.launch(IPC) {
+            val data = ByteArrayOutputStream()
+            if (!icon.compress(Bitmap.CompressFormat.PNG, 100, data)) {
+                return@launch
+            }
+
+            iconDb.insertOrReplace(
+                ContentValues().apply {
+                    put(COLUMN_PACKAGE, packageName)
+                    put(COLUMN_USER, userSerial)
+                    put(COLUMN_LAST_UPDATED, lastUpdateTime)
+                    put(COLUMN_ICON, data.toByteArray())
+                }
+            )
+        }
+    }
+
+    private const val TABLE_NAME = "icons"
+    private const val COLUMN_PACKAGE = "package"
+    private const val COLUMN_USER = "user"
+    private const val COLUMN_LAST_UPDATED = "lastUpdated"
+    private const val COLUMN_ICON = "icon"
+
+    /** The persistent layer of the cache. Dropped whenever [iconDpi] or [iconShape] change. */
+    private class IconDb(context: Context, version: Int) :
+        SQLiteCacheHelper(context, DB_NAME, version, TABLE_NAME) {
+        override fun onCreateTable(db: SQLiteDatabase) {
+            db.execSQL(
+                "CREATE TABLE IF NOT EXISTS $TABLE_NAME (" +
+                    "$COLUMN_PACKAGE TEXT NOT NULL, " +
+                    "$COLUMN_USER INTEGER NOT NULL, " +
+                    "$COLUMN_LAST_UPDATED INTEGER NOT NULL DEFAULT 0, " +
+                    "$COLUMN_ICON BLOB, " +
+                    "PRIMARY KEY ($COLUMN_PACKAGE, $COLUMN_USER)" +
+                    ");"
+            )
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.utils
+
+import android.content.ContentValues
+import android.content.Context
+import android.content.pm.ApplicationInfo
+import android.content.pm.PackageManager
+import android.content.res.Configuration
+import android.database.sqlite.SQLiteDatabase
+import android.database.sqlite.SQLiteException
+import android.os.Build
+import android.os.LocaleList
+import android.os.UserHandle
+import android.text.TextUtils
+import android.util.Log
+import android.util.LruCache
+import androidx.core.text.BidiFormatter
+import com.android.launcher3.util.SQLiteCacheHelper
+import com.android.permissioncontroller.PermissionControllerApplication
+import com.android.permissioncontroller.permission.data.PackageBroadcastReceiver
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import kotlinx.coroutines.GlobalScope
+import kotlinx.coroutines.launch
+
+/**
+ * A cache for the labels of packages.
+ *
+ * Loading a label resolves the resources of the package from its APK. Hence labels are kept in an
+ * in-memory LRU cache, keyed by package, user and the size they are ellipsized to, and the unsafe
+ * labels are persisted across processes in a database keyed by package, user and the last update
+ * time of the package. Entries of a package are dropped when it is added, changed, replaced or
+ * removed, and all entries are dropped when the locales change.
+ */
+object AppLabelCache : PackageBroadcastReceiver.PackageBroadcastListener {
+    private val LOG_TAG = AppLabelCache::class.java.simpleName
+
+    private const val DB_NAME = "app_label_cache.db"
+    private const val DB_VERSION = 1
+
+    private const val MEMORY_CACHE_SIZE = 1000
+
+    /** Same as PackageItemInfo.MAX_SAFE_LABEL_LENGTH */
+    private const val MAX_SAFE_LABEL_LENGTH = 1000
+
+    private val app = PermissionControllerApplication.get()
+
+    /** Cache: (package name, user, ellipsizeDip) -> safe label */
+    private val memoryCache = LruCache<Triple<String, UserHandle, Float>, String>(MEMORY_CACHE_SIZE)
+
+    private val labelDb by lazy { LabelDb(app) }
+
+    /** The locales the cached labels are loaded for */
+    @Volatile private var locales: LocaleList = app.resources.configuration.locales
+
+    /** Incremented on every invalidation, so that labels loaded concurrently are not cached */
+    private val invalidationCount = AtomicInteger()
+
+    private val isListeningForPackageChanges = AtomicBoolean()
+
+    /**
+     * Get the safe label of an app, loading and caching it if it is not cached yet.
+     *
+     * @param context The context to use
+     * @param appInfo The app to get the label for
+     * @param ellipsizeDip see [TextUtils.makeSafeForPresentation]
+     * @param lastUpdateTime The last update time of the app if known. If not known the label is
+     *   loaded from the app when it is not in memory, without a lookup in the database, as that
+     *   would need the package info of the app.
+     * @return The label
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun getAppLabel(
+        context: Context,
+        appInfo: ApplicationInfo,
+        ellipsizeDip: Float,
+        lastUpdateTime: Long? = null
+    ): String {
+        val user = UserHandle.getUserHandleForUid(appInfo.uid)
+        if (context.resources.configuration.locales != locales) {
+            return toSafeLabel(appInfo.loadLabel(context.packageManager).toString(), ellipsizeDip)
+        }
+
+        startListeningForPackageChanges()
+
+        val key = Triple(appInfo.packageName, user, ellipsizeDip)
+        memoryCache.get(key)?.let {
+            return it
+        }
+
+        val invalidationCountAtStart = invalidationCount.get()
+        var unsafeLabel = lastUpdateTime?.let { readFromDb(appInfo.packageName, user, it) }
+        if (unsafeLabel == null) {
+            unsafeLabel = appInfo.loadLabel(context.packageManager).toString()
+            if (lastUpdateTime != null) {
+                writeToDb(appInfo.packageName, user, lastUpdateTime, unsafeLabel)
+            }
+        }
+
+        val label = toSafeLabel(unsafeLabel, ellipsizeDip)
+        if (invalidationCount.get() == invalidationCountAtStart) {
+            memoryCache.put(key, label)
+        }
+        return label
+    }
+
+    /**
+     * Get the safe label of a package if it is already in the in-memory cache.
+     *
+     * @param packageName The package to get the label for
+     * @param user The user of the package
+     * @param ellipsizeDip see [TextUtils.makeSafeForPresentation]
+     * @return The label, or null if it is not cached
+     */
+    @JvmStatic
+    fun getCachedAppLabel(packageName: String, user: UserHandle, ellipsizeDip: Float): String? {
+        return memoryCache.get(Triple(packageName, user, ellipsizeDip))
+    }
+
+    /**
+     * Load the labels of the given packages into the cache in the background, so that they can be
+     * shown without delay once the list of packages is displayed.
+     *
+     * @param packages The packages to load the labels for
+     * @param ellipsizeDip see [TextUtils.makeSafeForPresentation]
+     */
+    @JvmStatic
+    fun preloadAppLabels(packages: Collection<Pair<String, UserHandle>>, ellipsizeDip: Float) {
+        val packagesToLoad =
+            packages.filter { (packageName, user) ->
+                getCachedAppLabel(packageName, user, ellipsizeDip) == null
+            }
+        if (packagesToLoad.isEmpty()) {
+            return
+        }
+
+        GlobalScope.launch(IPC) {
+            for ((packageName, user) in packagesToLoad) {
+                try {
+                    val packageInfo =
+                        Utils.getUserContext(app, user)
+                            .packageManager
+                            .getPackageInfo(packageName, 0)
+                    getAppLabel(
+                        app,
+                        packageInfo.applicationInfo!!,
+                        ellipsizeDip,
+                        packageInfo.lastUpdateTime
+                    )
+                } catch (e: PackageManager.NameNotFoundException) {
+                    // Removed since the list was loaded
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop all labels if the locales changed.
+     *
+     * @param newConfig The new configuration
+     */
+    @JvmStatic
+    fun onConfigurationChanged(newConfig: Configuration) {
+        if (newConfig.locales == locales) {
+            return
+        }
+
+        locales = newConfig.locales
+        invalidationCount.incrementAndGet()
+        memoryCache.evictAll()
+    }
+
+    override fun onPackageUpdate(packageName: String) {
+        invalidationCount.incrementAndGet()
+        for (key in memoryCache.snapshot().keys) {
+            if (key.first == packageName) {
+                memoryCache.remove(key)
+            }
+        }
+        GlobalScope.launch(IPC) {
+            labelDb.delete("$COLUMN_PACKAGE = ?", arrayOf(packageName))
+        }
+    }
+
+    private fun startListeningForPackageChanges() {
+        if (isListeningForPackageChanges.compareAndSet(false, true)) {
+            PackageBroadcastReceiver.addAllCallback(this, immediate = true)
+        }
+    }
+
+    private fun toSafeLabel(unsafeLabel: String, ellipsizeDip: Float): String {
+        return BidiFormatter.getInstance()
+            .unicodeWrap(
+                TextUtils.makeSafeForPresentation(
+                        unsafeLabel,
+                        MAX_SAFE_LABEL_LENGTH,
+                        ellipsizeDip,
+                        TextUtils.SAFE_STRING_FLAG_TRIM or TextUtils.SAFE_STRING_FLAG_FIRST_LINE
+                    )
+                    .toString()
+            )
+    }
+
+    /**
+     * Labels depend on the locales, and system app labels can change with a system update without
+     * the last update time of the app changing.
+     */
+    private fun getSystemState(): String {
+        return locales.toLanguageTags() + "," + Build.FINGERPRINT
+    }
+
+    private fun readFromDb(packageName: String, user: UserHandle, lastUpdateTime: Long): String? {
+        try {
+            labelDb
+                .query(
+                    arrayOf(COLUMN_LABEL),
+                    "$COLUMN_PACKAGE = ? AND $COLUMN_USER = ? AND $COLUMN_LAST_UPDATED = ? AND " +
+                        "$COLUMN_SYSTEM_STATE = ?",
+                    arrayOf(
+                        packageName,
+                        AppIconCache.getSerialNumberForUser(user).toString(),
+                        lastUpdateTime.toString(),
+                        getSystemState()
+                    )
+                )
+                .use { cursor ->
+                    return if (cursor.moveToNext()) cursor.getString(0) else null
+                }
+        } catch (e: SQLiteException) {
+            Log.w(LOG_TAG, "Could not read label of $packageName from cache", e)
+            return null
+        }
+    }
+
+    private fun writeToDb(packageName: String, user: UserHandle, lastUpdateTime: Long, label: String) {
+        val values =
+            ContentValues().apply {
+                put(COLUMN_PACKAGE, packageName)
+                put(COLUMN_USER, AppIconCache.getSerialNumberForUser(user))
+                put(COLUMN_LAST_UPDATED, lastUpdateTime)
+                put(COLUMN_SYSTEM_STATE, getSystemState())
+                put(COLUMN_LABEL, label)
+            }
+        GlobalScope.launch(IPC) { labelDb.insertOrReplace(values) }
+    }
+
+    private const val TABLE_NAME = "labels"
+    private const val COLUMN_PACKAGE = "package"
+    private const val COLUMN_USER = "user"
+    private const val COLUMN_LAST_UPDATED = "lastUpdated"
+    private const val COLUMN_SYSTEM_STATE = "systemState"
+    private const val COLUMN_LABEL = "label"
+
+    /** The persistent layer of the cache */
+    private class LabelDb(context: Context) :
+        SQLiteCacheHelper(context, DB_NAME, DB_VERSION, TABLE_NAME) {
+        override fun onCreateTable(db: SQLiteDatabase) {
+            db.execSQL(
+                "CREATE TABLE IF NOT EXISTS $TABLE_NAME (" +
+                    "$COLUMN_PACKAGE TEXT NOT NULL, " +
+                    "$COLUMN_USER INTEGER NOT NULL, " +
+                    "$COLUMN_LAST_UPDATED INTEGER NOT NULL DEFAULT 0, " +
+                    "$COLUMN_SYSTEM_STATE TEXT, " +
+                    "$COLUMN_LABEL TEXT, " +
+                    "PRIMARY KEY ($COLUMN_PACKAGE, $COLUMN_USER)" +
+                    ");"
+            )
+        }
+    }
+}
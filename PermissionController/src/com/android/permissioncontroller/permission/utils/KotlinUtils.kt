@@ -36,6 +36,7 @@ import android.app.AppOpsManager.OPSTR_AUTO_REVOKE_PERMISSIONS_IF_UNUSED
 import android.app.AppOpsManager.permissionToOp
 import android.app.Application
 import android.app.compat.gms.GmsCompat
+import android.companion.virtual.VirtualDeviceManager
 import android.content.Context
 import android.content.Intent
 import android.content.Intent.ACTION_MAIN
@@ -65,6 +66,7 @@ import android.os.Bundle
 import android.os.UserHandle
 import android.os.UserManager
 import android.permission.PermissionManager
+import android.permission.flags.Flags as PermissionFlags
 import android.provider.DeviceConfig
 import android.provider.MediaStore
 import android.provider.Settings
@@ -74,6 +76,7 @@ import android.text.Html
 import android.text.TextUtils
 import android.util.Log
 import androidx.annotation.ChecksSdkIntAtLeast
+import androidx.annotation.RequiresApi
 import androidx.lifecycle.LiveData
 import androidx.lifecycle.Observer
 import androidx.navigation.NavController
@@ -210,6 +213,39 @@ object KotlinUtils {
         return SdkLevel.isAtLeastS()
     }
 
+    /** Whether [getAllPermissionFlags] can be used on this device. */
+    @ChecksSdkIntAtLeast(Build.VERSION_CODES.VANILLA_ICE_CREAM)
+    fun canGetAllPermissionFlags(): Boolean {
+        return SdkLevel.isAtLeastV() && PermissionFlags.deviceAwarePermissionApisEnabled()
+    }
+
+    /**
+     * Get the flags of all permissions requested by a package on the default device in a single
+     * call.
+     *
+     * @param permissionManager The permission manager of the user of the package
+     * @param packageName The package to get the flags for
+     * @return A map <permission name, permission flags>. Permissions unknown to the system are not
+     *   included. Empty if the package could not be found.
+     */
+    @RequiresApi(Build.VERSION_CODES.VANILLA_ICE_CREAM)
+    fun getAllPermissionFlags(
+        permissionManager: PermissionManager,
+        packageName: String
+    ): Map<String, Int> {
+        return try {
+            permissionManager
+                .getAllPermissionStates(
+                    packageName,
+                    VirtualDeviceManager.PERSISTENT_DEVICE_ID_DEFAULT
+                )
+                .mapValues { it.value.flags }
+        } catch (e: IllegalArgumentException) {
+            Log.w(LOG_TAG, "Could not get permission flags for $packageName", e)
+            emptyMap()
+        }
+    }
+
     /**
      * Whether we should enable the 7-day toggle in privacy dashboard
      *
@@ -540,10 +576,17 @@ object KotlinUtils {
      * @return The package's icon, or null, if the package does not exist
      */
     fun getBadgedPackageIcon(app: Application, packageName: String, user: UserHandle): Drawable? {
+        AppIconCache.getCachedBadgedIcon(app, packageName, user)?.let {
+            return it
+        }
         return try {
             val userContext = Utils.getUserContext(app, user)
-            val appInfo = userContext.packageManager.getApplicationInfo(packageName, 0)
-            Utils.getBadgedIcon(app, appInfo)
+            val packageInfo = userContext.packageManager.getPackageInfo(packageName, 0)
+            AppIconCache.getBadgedIcon(
+                app,
+                packageInfo.applicationInfo!!,
+                packageInfo.lastUpdateTime
+            )
         } catch (e: PackageManager.NameNotFoundException) {
             null
         }
@@ -582,10 +625,18 @@ object KotlinUtils {
      * @return The package's label
      */
     fun getPackageLabel(app: Application, packageName: String, user: UserHandle): String {
+        AppLabelCache.getCachedAppLabel(packageName, user, 0f)?.let {
+            return it
+        }
         return try {
             val userContext = Utils.getUserContext(app, user)
-            val appInfo = userContext.packageManager.getApplicationInfo(packageName, 0)
-            Utils.getFullAppLabel(appInfo, app)
+            val packageInfo = userContext.packageManager.getPackageInfo(packageName, 0)
+            AppLabelCache.getAppLabel(
+                app,
+                packageInfo.applicationInfo!!,
+                0f,
+                packageInfo.lastUpdateTime
+            )
         } catch (e: PackageManager.NameNotFoundException) {
             packageName
         }
@@ -796,6 +847,8 @@ object KotlinUtils {
      * @param group The group whose permissions should be granted
      * @param filterPermissions If not specified, all permissions of the group will be granted.
      *   Otherwise only permissions in {@code filterPermissions} will be granted.
+     * @param transaction If specified, flag updates and kills are added to this transaction, and
+     *   are applied once it is committed. Otherwise they are applied before returning.
      * @return a new LightAppPermGroup, reflecting the new state
      */
     @JvmOverloads
@@ -806,6 +859,7 @@ object KotlinUtils {
         isOneTime: Boolean = false,
         userFixed: Boolean = false,
         withoutAppOps: Boolean = false,
+        transaction: PermissionChangeTransaction? = null
     ): LightAppPermGroup {
         return grantRuntimePermissions(
             app,
@@ -814,7 +868,8 @@ object KotlinUtils {
             isOneTime,
             userFixed,
             withoutAppOps,
-            filterPermissions
+            filterPermissions,
+            transaction
         )
     }
 
@@ -827,13 +882,16 @@ object KotlinUtils {
      * @param group The group whose permissions should be granted
      * @param filterPermissions If not specified, all permissions of the group will be granted.
      *   Otherwise only permissions in {@code filterPermissions} will be granted.
+     * @param transaction If specified, flag updates and kills are added to this transaction, and
+     *   are applied once it is committed. Otherwise they are applied before returning.
      * @return a new LightAppPermGroup, reflecting the new state
      */
     @JvmOverloads
     fun grantBackgroundRuntimePermissions(
         app: Application,
         group: LightAppPermGroup,
-        filterPermissions: Collection<String> = group.permissions.keys
+        filterPermissions: Collection<String> = group.permissions.keys,
+        transaction: PermissionChangeTransaction? = null
     ): LightAppPermGroup {
         return grantRuntimePermissions(
             app,
@@ -842,7 +900,8 @@ object KotlinUtils {
             isOneTime = false,
             userFixed = false,
             withoutAppOps = false,
-            filterPermissions = filterPermissions
+            filterPermissions = filterPermissions,
+            transaction = transaction
         )
     }
 
@@ -854,9 +913,11 @@ object KotlinUtils {
         isOneTime: Boolean = false,
         userFixed: Boolean = false,
         withoutAppOps: Boolean = false,
-        filterPermissions: Collection<String> = group.permissions.keys
+        filterPermissions: Collection<String> = group.permissions.keys,
+        transaction: PermissionChangeTransaction? = null
     ): LightAppPermGroup {
         val deviceId = group.deviceId
+        val tx = transaction ?: PermissionChangeTransaction(app)
         val newPerms = group.permissions.toMutableMap()
         var shouldKillForAnyPermission = false
         for (permName in filterPermissions) {
@@ -864,7 +925,15 @@ object KotlinUtils {
             val isBackgroundPerm = permName in group.backgroundPermNames
             if (isBackgroundPerm == grantBackground) {
                 val (newPerm, shouldKill) =
-                    grantRuntimePermission(app, perm, group, isOneTime, userFixed, withoutAppOps)
+                    grantRuntimePermission(
+                        app,
+                        perm,
+                        group,
+                        isOneTime,
+                        userFixed,
+                        withoutAppOps,
+                        tx
+                    )
                 newPerms[newPerm.name] = newPerm
                 shouldKillForAnyPermission = shouldKillForAnyPermission || shouldKill
             }
@@ -877,10 +946,12 @@ object KotlinUtils {
         if (!newPerms.isEmpty()) {
             val user = UserHandle.getUserHandleForUid(group.packageInfo.uid)
             for (groupPerm in group.allPermissions.values) {
-                var permFlags = groupPerm.flags
-                permFlags = permFlags.clearFlag(FLAG_PERMISSION_AUTO_REVOKED)
-                if (groupPerm.flags != permFlags) {
-                    context.packageManager.updatePermissionFlags(
+                // Permissions granted above already had their flags updated
+                val oldFlags = newPerms[groupPerm.name]?.flags ?: groupPerm.flags
+                val permFlags = oldFlags.clearFlag(FLAG_PERMISSION_AUTO_REVOKED)
+                if (oldFlags != permFlags) {
+                    tx.updatePermissionFlags(
+                        context,
                         groupPerm.name,
                         group.packageInfo.packageName,
                         PERMISSION_CONTROLLER_CHANGED_FLAG_MASK,
@@ -892,10 +963,7 @@ object KotlinUtils {
         }
 
         if (shouldKillForAnyPermission) {
-            (app.getSystemService(ActivityManager::class.java) as ActivityManager).killUid(
-                group.packageInfo.uid,
-                KILL_REASON_APP_OP_CHANGE
-            )
+            tx.killUid(group.packageInfo.uid, KILL_REASON_APP_OP_CHANGE)
         }
         val newGroup =
             LightAppPermGroup(
@@ -907,6 +975,8 @@ object KotlinUtils {
             )
         // If any permission in the group is one time granted, start one time permission session.
         if (newGroup.permissions.any { it.value.isOneTime && it.value.isGrantedIncludingAppOp }) {
+            // The session relies on the one time flags
+            tx.flushPermissionFlags()
             if (SdkLevel.isAtLeastT()) {
                 context
                     .getSystemService(PermissionManager::class.java)!!
@@ -928,6 +998,9 @@ object KotlinUtils {
                     )
             }
         }
+        if (transaction == null) {
+            tx.commit()
+        }
         return newGroup
     }
 
@@ -942,6 +1015,7 @@ object KotlinUtils {
      * @param withoutAppOps If these permission have app ops associated, and this value is true,
      *   then do not grant the app op when the permission is granted, and add the REVOKED_COMPAT
      *   flag.
+     * @param transaction The transaction to add the final flag update to
      * @return a LightPermission and boolean pair <permission with updated state (or the original
      *   state, if it wasn't changed), should kill app>
      */
@@ -950,8 +1024,9 @@ object KotlinUtils {
         perm: LightPermission,
         group: LightAppPermGroup,
         isOneTime: Boolean,
-        userFixed: Boolean = false,
-        withoutAppOps: Boolean = false
+        userFixed: Boolean,
+        withoutAppOps: Boolean,
+        transaction: PermissionChangeTransaction
     ): Pair<LightPermission, Boolean> {
         val pkgInfo = group.packageInfo
         val user = UserHandle.getUserHandleForUid(pkgInfo.uid)
@@ -985,6 +1060,8 @@ object KotlinUtils {
                 // flag, so that the PermissionPolicyService doesn't reset the app op state
                 if (affectsAppOp && withoutAppOps) {
                     oldFlags = oldFlags.setFlag(PackageManager.FLAG_PERMISSION_REVOKED_COMPAT)
+                    // This update needs to be applied before the grant, and after any pending one
+                    transaction.flushPermissionFlags()
                     context.packageManager.updatePermissionFlags(
                         perm.name,
                         group.packageName,
@@ -1061,7 +1138,8 @@ object KotlinUtils {
         }
 
         if (oldFlags != newFlags) {
-            context.packageManager.updatePermissionFlags(
+            transaction.updatePermissionFlags(
+                context,
                 perm.name,
                 group.packageInfo.packageName,
                 PERMISSION_CONTROLLER_CHANGED_FLAG_MASK,
@@ -1100,6 +1178,8 @@ object KotlinUtils {
      * @param oneTime If the permission should be mark as one-time
      * @param filterPermissions If not specified, all permissions of the group will be revoked.
      *   Otherwise only permissions in {@code filterPermissions} will be revoked.
+     * @param transaction If specified, flag updates and kills are added to this transaction, and
+     *   are applied once it is committed. Otherwise they are applied before returning.
      * @return a LightAppPermGroup representing the new state
      */
     @JvmOverloads
@@ -1109,7 +1189,8 @@ object KotlinUtils {
         userFixed: Boolean = false,
         oneTime: Boolean = false,
         forceRemoveRevokedCompat: Boolean = false,
-        filterPermissions: Collection<String> = group.permissions.keys
+        filterPermissions: Collection<String> = group.permissions.keys,
+        transaction: PermissionChangeTransaction? = null
     ): LightAppPermGroup {
         return revokeRuntimePermissions(
             app,
@@ -1118,7 +1199,8 @@ object KotlinUtils {
             userFixed,
             oneTime,
             forceRemoveRevokedCompat,
-            filterPermissions
+            filterPermissions,
+            transaction
         )
     }
 
@@ -1132,6 +1214,8 @@ object KotlinUtils {
      * @param userFixed If the user requested that they do not want to be asked again
      * @param filterPermissions If not specified, all permissions of the group will be revoked.
      *   Otherwise only permissions in {@code filterPermissions} will be revoked.
+     * @param transaction If specified, flag updates and kills are added to this transaction, and
+     *   are applied once it is committed. Otherwise they are applied before returning.
      * @return a LightAppPermGroup representing the new state
      */
     @JvmOverloads
@@ -1141,7 +1225,8 @@ object KotlinUtils {
         userFixed: Boolean = false,
         oneTime: Boolean = false,
         forceRemoveRevokedCompat: Boolean = false,
-        filterPermissions: Collection<String> = group.permissions.keys
+        filterPermissions: Collection<String> = group.permissions.keys,
+        transaction: PermissionChangeTransaction? = null
     ): LightAppPermGroup {
         return revokeRuntimePermissions(
             app,
@@ -1150,7 +1235,8 @@ object KotlinUtils {
             userFixed,
             oneTime,
             forceRemoveRevokedCompat,
-            filterPermissions
+            filterPermissions,
+            transaction
         )
     }
 
@@ -1161,9 +1247,11 @@ object KotlinUtils {
         userFixed: Boolean,
         oneTime: Boolean,
         forceRemoveRevokedCompat: Boolean = false,
-        filterPermissions: Collection<String>
+        filterPermissions: Collection<String>,
+        transaction: PermissionChangeTransaction?
     ): LightAppPermGroup {
         val deviceId = group.deviceId
+        val tx = transaction ?: PermissionChangeTransaction(app)
         val wasOneTime = group.isOneTime
         val newPerms = group.permissions.toMutableMap()
         var shouldKillForAnyPermission = false
@@ -1178,7 +1266,8 @@ object KotlinUtils {
                         userFixed,
                         oneTime,
                         forceRemoveRevokedCompat,
-                        group
+                        group,
+                        tx
                     )
                 newPerms[newPerm.name] = newPerm
                 shouldKillForAnyPermission = shouldKillForAnyPermission || shouldKill
@@ -1186,10 +1275,7 @@ object KotlinUtils {
         }
 
         if (shouldKillForAnyPermission && !shouldSkipKillForGroup(app, group)) {
-            (app.getSystemService(ActivityManager::class.java) as ActivityManager).killUid(
-                group.packageInfo.uid,
-                KILL_REASON_APP_OP_CHANGE
-            )
+            tx.killUid(group.packageInfo.uid, KILL_REASON_APP_OP_CHANGE)
         }
 
         val newGroup =
@@ -1201,6 +1287,10 @@ object KotlinUtils {
                 group.specialLocationGrant
             )
 
+        if (wasOneTime) {
+            // The flags of the other groups of the package are read back below
+            tx.flushPermissionFlags()
+        }
         if (wasOneTime && !anyPermsOfPackageOneTimeGranted(app, newGroup.packageInfo, newGroup)) {
             // Create a new context with the given deviceId so that permission updates will be bound
             // to the device
@@ -1209,6 +1299,9 @@ object KotlinUtils {
                 .getSystemService(PermissionManager::class.java)!!
                 .stopOneTimePermissionSession(group.packageName)
         }
+        if (transaction == null) {
+            tx.commit()
+        }
         return newGroup
     }
 
@@ -1282,6 +1375,7 @@ object KotlinUtils {
      * @param userFixed If the user requested that they do not want to be asked again
      * @param group An optional app permission group in which to look for background or foreground
      *   permissions
+     * @param transaction The transaction to add the flag update to
      * @return a LightPermission and boolean pair <permission with updated state (or the original
      *   state, if it wasn't changed), should kill app>
      */
@@ -1291,7 +1385,8 @@ object KotlinUtils {
         userFixed: Boolean,
         oneTime: Boolean,
         forceRemoveRevokedCompat: Boolean,
-        group: LightAppPermGroup
+        group: LightAppPermGroup,
+        transaction: PermissionChangeTransaction
     ): Pair<LightPermission, Boolean> {
         // Do not touch permissions fixed by the system.
         if (perm.isSystemFixed) {
@@ -1365,7 +1460,8 @@ object KotlinUtils {
         newFlags = newFlags.clearFlag(PackageManager.FLAG_PERMISSION_REVIEW_REQUIRED)
 
         if (perm.flags != newFlags) {
-            context.packageManager.updatePermissionFlags(
+            transaction.updatePermissionFlags(
+                context,
                 perm.name,
                 group.packageInfo.packageName,
                 PERMISSION_CONTROLLER_CHANGED_FLAG_MASK,
@@ -31,14 +31,17 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.UserHandle;
 import android.provider.Settings;
+import android.util.ArraySet;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.android.permissioncontroller.PermissionControllerApplication;
 import com.android.permissioncontroller.R;
 
 import java.util.ArrayList;
+import java.util.Set;
 
 public class LocationUtils {
 
@@ -89,6 +92,20 @@ public class LocationUtils {
         return context.getSystemService(LocationManager.class).isProviderPackage(packageName);
     }
 
+    /**
+     * Returns the packages of all location providers, which {@link #isLocationProvider} is true
+     * for. Cheaper than checking many packages one by one, as the number of providers is small.
+     */
+    @NonNull
+    public static Set<String> getLocationProviderPackages(@NonNull Context context) {
+        LocationManager locationManager = context.getSystemService(LocationManager.class);
+        Set<String> packageNames = new ArraySet<>();
+        for (String provider : locationManager.getAllProviders()) {
+            packageNames.addAll(locationManager.getProviderPackages(provider));
+        }
+        return packageNames;
+    }
+
     public static boolean isLocationGroupAndProvider(Context context, String groupName,
             String packageName) {
         return LOCATION_PERMISSION.equals(groupName) && isLocationProvider(context, packageName);
@@ -96,10 +113,22 @@ public class LocationUtils {
 
     public static boolean isLocationGroupAndControllerExtraPackage(@NonNull Context context,
             @NonNull String groupName, @NonNull String packageName) {
-        return (LOCATION_PERMISSION.equals(groupName)
-            || ACTIVITY_RECOGNITION_PERMISSION.equals(groupName))
-                && packageName.equals(context.getSystemService(LocationManager.class)
-                        .getExtraLocationControllerPackage());
+        return packageName.equals(getControllerExtraPackageForGroup(context, groupName));
+    }
+
+    /**
+     * Returns the location controller extra package if the given permission group is one it is
+     * special for, see {@link #isLocationGroupAndControllerExtraPackage}.
+     */
+    @Nullable
+    public static String getControllerExtraPackageForGroup(@NonNull Context context,
+            @NonNull String groupName) {
+        if (!LOCATION_PERMISSION.equals(groupName)
+                && !ACTIVITY_RECOGNITION_PERMISSION.equals(groupName)) {
+            return null;
+        }
+        return context.getSystemService(LocationManager.class)
+                .getExtraLocationControllerPackage();
     }
 
     /** Returns whether the location controller extra package is enabled. */
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.utils
+
+import android.annotation.SuppressLint
+import android.app.ActivityManager
+import android.app.Application
+import android.content.Context
+import android.os.UserHandle
+import androidx.annotation.VisibleForTesting
+import com.android.permissioncontroller.permission.model.livedatatypes.LightAppPermGroup
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Accumulates the permission flag changes and app kills caused by granting or revoking the
+ * permissions of one or more [LightAppPermGroup]s, e.g. all groups confirmed on the review screen.
+ *
+ * Several flag changes of the same permission are merged into a single update, and a uid is
+ * killed at most once, no matter how many of its groups require it. Changes are applied by
+ * [commit]. Grants, revokes and app op changes are still applied immediately, as the system
+ * relies on their order.
+ *
+ * Not thread safe.
+ *
+ * @param app The current application
+ */
+class PermissionChangeTransaction(private val app: Application) {
+    private data class FlagsKey(
+        val deviceId: Int,
+        val packageName: String,
+        val user: UserHandle,
+        val permissionName: String
+    )
+
+    private class PendingFlags(val context: Context, var flagMask: Int, var flagValues: Int)
+
+    private val pendingFlags = LinkedHashMap<FlagsKey, PendingFlags>()
+    /** uid -> reason to kill it */
+    private val pendingKills = LinkedHashMap<Int, String>()
+
+    /**
+     * Update the flags of a permission when the transaction is committed. Updates of the same
+     * permission are merged, later updates take precedence.
+     *
+     * @param context The context to update the flags with, bound to the device of the permission
+     * @param permissionName The permission to update the flags of
+     * @param packageName The package the permission belongs to
+     * @param flagMask The flags to update
+     * @param flagValues The new values of the flags in [flagMask]
+     * @param user The user of the package
+     */
+    fun updatePermissionFlags(
+        context: Context,
+        permissionName: String,
+        packageName: String,
+        flagMask: Int,
+        flagValues: Int,
+        user: UserHandle
+    ) {
+        val key = FlagsKey(ContextCompat.getDeviceId(context), packageName, user, permissionName)
+        val pending = pendingFlags[key]
+        if (pending == null) {
+            pendingFlags[key] = PendingFlags(context, flagMask, flagValues and flagMask)
+            return
+        }
+
+        mergedFlagUpdateCount.incrementAndGet()
+        pending.flagValues = (pending.flagValues and flagMask.inv()) or (flagValues and flagMask)
+        pending.flagMask = pending.flagMask or flagMask
+    }
+
+    /**
+     * Kill a uid when the transaction is committed, after all flags are updated.
+     *
+     * @param uid The uid to kill
+     * @param reason The reason to kill it, if it was not scheduled to be killed yet
+     */
+    fun killUid(uid: Int, reason: String) {
+        if (pendingKills.putIfAbsent(uid, reason) != null) {
+            skippedKillCount.incrementAndGet()
+        }
+    }
+
+    /**
+     * Apply the pending flag updates now, e.g. because the flags are about to be read back from
+     * the system.
+     */
+    fun flushPermissionFlags() {
+        for ((key, pending) in pendingFlags) {
+            flagUpdateCount.incrementAndGet()
+            pending.context.packageManager.updatePermissionFlags(
+                key.permissionName,
+                key.packageName,
+                pending.flagMask,
+                pending.flagValues,
+                key.user
+            )
+        }
+        pendingFlags.clear()
+    }
+
+    /** Apply all pending changes. The transaction can be reused afterwards. */
+    @SuppressLint("MissingPermission")
+    fun commit() {
+        flushPermissionFlags()
+
+        if (pendingKills.isEmpty()) {
+            return
+        }
+        val activityManager = app.getSystemService(ActivityManager::class.java)!!
+        for ((uid, reason) in pendingKills) {
+            killCount.incrementAndGet()
+            activityManager.killUid(uid, reason)
+        }
+        pendingKills.clear()
+    }
+
+    companion object {
+        /** Number of flag updates sent to the system */
+        @VisibleForTesting val flagUpdateCount = AtomicLong()
+        /** Number of flag updates merged into another update of the same permission */
+        @VisibleForTesting val mergedFlagUpdateCount = AtomicLong()
+        /** Number of uids killed */
+        @VisibleForTesting val killCount = AtomicLong()
+        /** Number of kills skipped as the uid was already going to be killed */
+        @VisibleForTesting val skippedKillCount = AtomicLong()
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.utils
+
+import android.content.pm.PackageManager
+import android.content.pm.PermissionInfo
+import com.android.permissioncontroller.PermissionControllerApplication
+import com.android.permissioncontroller.permission.data.PackageBroadcastReceiver
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * A process wide cache for [PermissionInfo]s.
+ *
+ * Permission infos are not specific to a user, hence they are shared by all users of the cache.
+ * Permissions that do not exist are cached too, as apps commonly request permissions that are not
+ * defined on the device. The entries of the permissions defined by a package, and all entries of
+ * permissions that do not exist, are dropped when a package is added, changed, replaced or removed.
+ */
+object PermissionInfoCache : PackageBroadcastReceiver.PackageBroadcastListener {
+    private val app = PermissionControllerApplication.get()
+
+    /** Marker for permissions that do not exist */
+    private val NOT_FOUND = PermissionInfo()
+
+    /** Cache: permission name -> info, or [NOT_FOUND] */
+    private val permissionInfos = ConcurrentHashMap<String, PermissionInfo>()
+
+    /** Incremented on every invalidation, so that infos loaded concurrently are not cached */
+    private val invalidationCount = AtomicInteger()
+
+    private val isListeningForPackageChanges = AtomicBoolean()
+
+    /**
+     * Get the info of a permission, loading and caching it if it is not cached yet.
+     *
+     * @param permissionName The name of the permission
+     * @return A copy of the info, or null if the permission does not exist
+     */
+    @JvmStatic
+    fun getPermissionInfo(permissionName: String): PermissionInfo? {
+        startListeningForPackageChanges()
+
+        val cachedPermInfo = permissionInfos[permissionName]
+        if (cachedPermInfo != null) {
+            return if (cachedPermInfo === NOT_FOUND) null else PermissionInfo(cachedPermInfo)
+        }
+
+        val invalidationCountAtStart = invalidationCount.get()
+        val permInfo =
+            try {
+                app.packageManager.getPermissionInfo(permissionName, 0)
+            } catch (e: PackageManager.NameNotFoundException) {
+                null
+            }
+
+        // Only cache the result if no package changed while it was loaded
+        synchronized(this) {
+            if (invalidationCount.get() == invalidationCountAtStart) {
+                permissionInfos[permissionName] = permInfo?.let { PermissionInfo(it) } ?: NOT_FOUND
+            }
+        }
+        return permInfo
+    }
+
+    /**
+     * Drop the cached info of a permission, e.g. because the package defining it might have
+     * changed.
+     *
+     * @param permissionName The name of the permission
+     */
+    @JvmStatic
+    fun invalidate(permissionName: String) {
+        synchronized(this) {
+            invalidationCount.incrementAndGet()
+            permissionInfos.remove(permissionName)
+        }
+    }
+
+    override fun onPackageUpdate(packageName: String) {
+        synchronized(this) {
+            invalidationCount.incrementAndGet()
+            // A newly added package might define permissions that did not exist before
+            permissionInfos.values.removeIf { it === NOT_FOUND || it.packageName == packageName }
+        }
+    }
+
+    private fun startListeningForPackageChanges() {
+        if (isListeningForPackageChanges.compareAndSet(false, true)) {
+            PackageBroadcastReceiver.addAllCallback(this, immediate = true)
+        }
+    }
+}
@@ -19,7 +19,6 @@ package com.android.permissioncontroller.permission.utils
 
 import android.Manifest
 import android.app.AppOpsManager
-import android.content.pm.PackageManager
 import android.content.pm.PermissionInfo
 import android.health.connect.HealthPermissions.HEALTH_PERMISSION_GROUP
 import android.util.Log
@@ -255,21 +254,17 @@ object PermissionMapping {
     /**
      * Get the [infos][PermissionInfo] for all platform permissions belonging to a group.
      *
-     * @param pm Package manager to use to resolve permission infos
      * @param group the group
      * @return The infos for platform permissions belonging to the group or an empty list if the
      *   group does not have platform runtime permissions
      */
     @JvmStatic
-    fun getPlatformPermissionsOfGroup(pm: PackageManager, group: String): List<PermissionInfo> {
+    fun getPlatformPermissionsOfGroup(group: String): List<PermissionInfo> {
         val permInfos = mutableListOf<PermissionInfo>()
         for (permName in PLATFORM_PERMISSION_GROUPS[group] ?: emptyList()) {
-            val permInfo: PermissionInfo =
-                try {
-                    pm.getPermissionInfo(permName, 0)
-                } catch (e: PackageManager.NameNotFoundException) {
-                    throw IllegalStateException("$permName not defined by platform", e)
-                }
+            val permInfo =
+                PermissionInfoCache.getPermissionInfo(permName)
+                    ?: throw IllegalStateException("$permName not defined by platform")
             permInfos.add(permInfo)
         }
         return permInfos
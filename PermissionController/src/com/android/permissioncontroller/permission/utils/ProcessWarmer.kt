@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.utils
+
+import android.Manifest
+import android.app.Application
+import android.os.Looper
+import android.os.Trace
+import androidx.annotation.MainThread
+import com.android.launcher3.icons.IconFactory
+import com.android.permissioncontroller.permission.data.PermGroupLiveData
+import com.android.permissioncontroller.permission.ui.model.GrantPermissionsPrefetcher
+import kotlinx.coroutines.GlobalScope
+import kotlinx.coroutines.launch
+
+/**
+ * Warms up the state the grant dialog needs, so that the first permission request of an app after
+ * the process started does not wait for it.
+ *
+ * The platform permission mapping, the infos of the platform permissions and the icon factory are
+ * loaded in the background. The [PermGroupLiveData]s of the commonly requested groups are loaded
+ * one at a time while the main thread is idle, as they load synchronously, and are kept active by a
+ * [GrantPermissionsPrefetcher] until the first dialog observes its state, so the dialog finds them
+ * loaded instead of loading them again.
+ *
+ * Warming up happens if [Utils.isGrantDialogPrewarmEnabled], whenever the process starts or is
+ * bound through the warm-up service.
+ */
+object ProcessWarmer {
+    /** The groups of the most commonly requested platform permissions */
+    private val COMMON_PERMISSION_GROUPS =
+        listOf(
+            Manifest.permission_group.LOCATION,
+            Manifest.permission_group.CAMERA,
+            Manifest.permission_group.MICROPHONE,
+            Manifest.permission_group.NOTIFICATIONS,
+            Manifest.permission_group.READ_MEDIA_VISUAL,
+            Manifest.permission_group.NEARBY_DEVICES
+        )
+
+    private var prefetcher: GrantPermissionsPrefetcher? = null
+
+    /** Whether warming up started in this process */
+    @Volatile
+    var isWarmedUp = false
+        private set
+
+    /**
+     * Start warming up, unless it already started.
+     *
+     * @param app The current application
+     */
+    @MainThread
+    fun warmUp(app: Application) {
+        if (isWarmedUp) {
+            return
+        }
+        isWarmedUp = true
+
+        Trace.beginSection("ProcessWarmer")
+        try {
+            val platformGroupNames = PermissionMapping.getPlatformPermissionGroups()
+
+            GlobalScope.launch(IPC) {
+                IconFactory.obtain(app).use {}
+                platformGroupNames.forEachInParallel(IPC) { groupName ->
+                    for (permissionName in
+                        PermissionMapping.getPlatformPermissionNamesOfGroup(groupName)) {
+                        PermissionInfoCache.getPermissionInfo(permissionName)
+                    }
+                }
+            }
+
+            val prefetcher = GrantPermissionsPrefetcher()
+            this.prefetcher = prefetcher
+            val pendingGroupNames =
+                ArrayDeque(COMMON_PERMISSION_GROUPS.filter { it in platformGroupNames })
+            Looper.myQueue().addIdleHandler {
+                pendingGroupNames.removeFirstOrNull()?.let { groupName ->
+                    prefetcher.prefetch(PermGroupLiveData[groupName])
+                }
+                // Stop once released, the remaining groups would not be kept active
+                pendingGroupNames.isNotEmpty() && this.prefetcher === prefetcher
+            }
+        } finally {
+            Trace.endSection()
+        }
+    }
+
+    /**
+     * Stop keeping the warmed up LiveDatas active. Call once a grant dialog observes its state, or
+     * is destroyed.
+     */
+    @MainThread
+    fun release() {
+        prefetcher?.release()
+        prefetcher = null
+    }
+}
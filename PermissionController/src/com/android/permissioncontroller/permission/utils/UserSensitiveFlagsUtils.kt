@@ -20,6 +20,7 @@ package com.android.permissioncontroller.permission.utils
 
 import android.content.pm.PackageManager
 import android.os.UserHandle
+import android.permission.PermissionManager
 import android.util.Log
 import com.android.permissioncontroller.PermissionControllerApplication
 import com.android.permissioncontroller.permission.data.UserSensitivityLiveData
@@ -60,17 +61,40 @@ private fun updateUserSensitiveForUidsInternal(
 ) {
     val userContext = Utils.getUserContext(PermissionControllerApplication.get(), user)
     val pm = userContext.packageManager
+    val permissionManager = userContext.getSystemService(PermissionManager::class.java)!!
+    val canGetAllFlags = KotlinUtils.canGetAllPermissionFlags()
 
+    var numPermsChecked = 0
+    var numFlagsFetches = 0
+    var numFlagsUpdates = 0
     for ((uid, uidState) in uidsUserSensitivity) {
         for (pkg in uidState.packages) {
+            // Read the current flags of the whole package in one go where possible, once a
+            // permission needs to be checked, and fall back to reading them one at a time
+            var allFlags: Map<String, Int>? = null
+
             for (perm in pkg.requestedPermissions) {
-                var flags = uidState.permStates[perm] ?: continue
+                val flags = uidState.permStates[perm] ?: continue
+                numPermsChecked++
 
                 try {
-                    val oldFlags =
-                        pm.getPermissionFlags(perm, pkg.packageName, user) and
-                            FLAGS_ALWAYS_USER_SENSITIVE
+                    if (canGetAllFlags && allFlags == null) {
+                        numFlagsFetches++
+                        allFlags =
+                            KotlinUtils.getAllPermissionFlags(permissionManager, pkg.packageName)
+                    }
+                    val currentFlags =
+                        if (allFlags != null) {
+                            // Permissions unknown to the system are not part of allFlags
+                            allFlags[perm] ?: continue
+                        } else {
+                            numFlagsFetches++
+                            pm.getPermissionFlags(perm, pkg.packageName, user)
+                        }
+                    val oldFlags = currentFlags and FLAGS_ALWAYS_USER_SENSITIVE
+
                     if (flags != oldFlags) {
+                        numFlagsUpdates++
                         pm.updatePermissionFlags(
                             perm,
                             pkg.packageName,
@@ -94,6 +118,16 @@ private fun updateUserSensitiveForUidsInternal(
             }
         }
     }
+
+    // Reading the flags one permission at a time takes one IPC per checked permission
+    val numIpcs = numFlagsFetches + numFlagsUpdates
+    val numIpcsAvoided = numPermsChecked - numFlagsFetches
+    Log.i(
+        LOG_TAG,
+        "Checked user sensitive flags of $numPermsChecked permissions for $user with " +
+            "$numIpcs IPCs ($numFlagsFetches flag fetches, $numFlagsUpdates flag updates), " +
+            "avoided $numIpcsAvoided IPCs"
+    )
     callback?.run()
 }
 
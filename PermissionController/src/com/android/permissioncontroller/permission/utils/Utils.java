@@ -70,8 +70,6 @@ import android.content.pm.PermissionInfo;
 import android.content.pm.ResolveInfo;
 import android.content.res.Resources;
 import android.content.res.Resources.Theme;
-import android.graphics.Bitmap;
-import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.hardware.SensorPrivacyManager;
 import android.health.connect.HealthConnectManager;
@@ -101,7 +99,6 @@ import androidx.annotation.StringRes;
 import androidx.core.text.BidiFormatter;
 import androidx.core.util.Preconditions;
 
-import com.android.launcher3.icons.IconFactory;
 import com.android.modules.utils.build.SdkLevel;
 import com.android.permissioncontroller.Constants;
 import com.android.permissioncontroller.DeviceUtils;
@@ -174,6 +171,10 @@ public final class Utils {
     private static final String PROPERTY_HEALTH_PERMISSION_UI_ENABLED =
             "health_permission_ui_enabled";
 
+    /** Whether to warm up the state of the grant dialog whenever the process starts */
+    private static final String PROPERTY_GRANT_DIALOG_PREWARM_ENABLED =
+            "grant_dialog_prewarm_enabled";
+
 
     /** How frequently to check permission event store to scrub old data */
     public static final String PROPERTY_PERMISSION_EVENTS_CHECK_OLD_FREQUENCY_MILLIS =
@@ -478,7 +479,7 @@ public final class Utils {
             @NonNull PackageManager pm, @NonNull String group)
             throws PackageManager.NameNotFoundException {
         List<PermissionInfo> permissions = pm.queryPermissionsByGroup(group, 0);
-        permissions.addAll(PermissionMapping.getPlatformPermissionsOfGroup(pm, group));
+        permissions.addAll(PermissionMapping.getPlatformPermissionsOfGroup(group));
 
         /*
          * If the undefined group is requested, the package manager will return all platform
@@ -514,7 +515,7 @@ public final class Utils {
             @NonNull PackageManager pm, @NonNull String group)
             throws PackageManager.NameNotFoundException {
         List<PermissionInfo> permissions = pm.queryPermissionsByGroup(group, 0);
-        permissions.addAll(PermissionMapping.getPlatformPermissionsOfGroup(pm, group));
+        permissions.addAll(PermissionMapping.getPlatformPermissionsOfGroup(group));
 
         List<PermissionInfo> installedRuntime = new ArrayList<>();
         for (PermissionInfo permissionInfo: permissions) {
@@ -610,6 +611,23 @@ public final class Utils {
         return getAppLabel(applicationInfo, DEFAULT_MAX_LABEL_SIZE_PX, context);
     }
 
+    /**
+     * Get the label for an application, truncating if it is too long.
+     *
+     * <p>Prefer this over {@link #getAppLabel(ApplicationInfo, Context)} when the package info is
+     * at hand, as its last update time allows the label to be read from the persisted cache.
+     *
+     * @param packageInfo the {@link PackageInfo} of the application
+     * @param context the {@code Context} to retrieve {@code PackageManager}
+     *
+     * @return the label for the application
+     */
+    @NonNull
+    public static String getAppLabel(@NonNull PackageInfo packageInfo, @NonNull Context context) {
+        return AppLabelCache.getAppLabel(context, packageInfo.applicationInfo,
+                DEFAULT_MAX_LABEL_SIZE_PX, packageInfo.lastUpdateTime);
+    }
+
     /**
      * Get the full label for an application without truncation.
      *
@@ -636,10 +654,7 @@ public final class Utils {
     @NonNull
     private static String getAppLabel(@NonNull ApplicationInfo applicationInfo, float ellipsizeDip,
             @NonNull Context context) {
-        return BidiFormatter.getInstance().unicodeWrap(applicationInfo.loadSafeLabel(
-                context.getPackageManager(), ellipsizeDip,
-                TextUtils.SAFE_STRING_FLAG_TRIM | TextUtils.SAFE_STRING_FLAG_FIRST_LINE)
-                .toString());
+        return AppLabelCache.getAppLabel(context, applicationInfo, ellipsizeDip);
     }
 
     public static Drawable loadDrawable(PackageManager pm, String pkg, int resId) {
@@ -975,12 +990,7 @@ public final class Utils {
      */
     public static @NonNull Drawable getBadgedIcon(@NonNull Context context,
             @NonNull ApplicationInfo appInfo) {
-        UserHandle user = UserHandle.getUserHandleForUid(appInfo.uid);
-        try (IconFactory iconFactory = IconFactory.obtain(context)) {
-            Bitmap iconBmp = iconFactory.createBadgedIconBitmap(
-                    appInfo.loadUnbadgedIcon(context.getPackageManager()), user, false).icon;
-            return new BitmapDrawable(context.getResources(), iconBmp);
-        }
+        return AppIconCache.getBadgedIcon(context, appInfo);
     }
 
     /**
@@ -1046,6 +1056,20 @@ public final class Utils {
         }
     }
 
+    /**
+     * Whether the state of the grant dialog should be warmed up whenever the process starts or is
+     * bound through the warm-up service, see {@link ProcessWarmer}.
+     */
+    public static boolean isGrantDialogPrewarmEnabled() {
+        final long token = Binder.clearCallingIdentity();
+        try {
+            return DeviceConfig.getBoolean(DeviceConfig.NAMESPACE_PERMISSIONS,
+                    PROPERTY_GRANT_DIALOG_PREWARM_ENABLED, false);
+        } finally {
+            Binder.restoreCallingIdentity(token);
+        }
+    }
+
     /**
      * Returns true if the group name passed is that of the Platform health group.
      * @param permGroupName name of the group that needs to be checked.
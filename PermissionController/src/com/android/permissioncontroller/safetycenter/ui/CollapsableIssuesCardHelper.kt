@@ -25,6 +25,7 @@ import android.safetycenter.SafetyCenterIssue
 import android.safetycenter.SafetyCenterIssue.ISSUE_SEVERITY_LEVEL_OK
 import androidx.annotation.RequiresApi
 import androidx.fragment.app.FragmentManager
+import androidx.preference.Preference
 import androidx.preference.PreferenceGroup
 import com.android.permissioncontroller.R
 import com.android.permissioncontroller.safetycenter.SafetyCenterConstants.EXPAND_ISSUE_GROUP_QS_FRAGMENT_KEY
@@ -84,7 +85,9 @@ class CollapsableIssuesCardHelper(
         outState.putBoolean(EXPAND_ISSUE_GROUP_SAVED_INSTANCE_STATE_KEY, issueCardsExpanded)
 
     /**
-     * Add the [IssueCardPreference] managed by this helper to the specified [PreferenceGroup]
+     * Set the [IssueCardPreference] managed by this helper as the preferences of the specified
+     * [PreferenceGroup], keeping the existing preferences of unchanged issues, see
+     * [PreferenceGroupUpdater]
      *
      * @param context Current context
      * @param safetyCenterViewModel {@link SafetyCenterViewModel} used when executing issue actions
@@ -426,30 +429,32 @@ class CollapsableIssuesCardHelper(
             numberOfIssuesToShowWhenCollapsed: Int,
             issueCardsExpanded: Boolean
         ) {
+            val preferences = mutableListOf<Preference>()
             // Index of first hidden issue (zero based) is equal to number of shown issues when
             // collapsed
             val indexOfFirstHiddenIssue: Int = numberOfIssuesToShowWhenCollapsed
             issueCardPreferences.forEachIndexed { index, issueCardPreference ->
                 if (index == indexOfFirstHiddenIssue) {
-                    issuesPreferenceGroup.addPreference(moreIssuesCardPreference)
+                    preferences.add(moreIssuesCardPreference)
                 }
                 issueCardPreference.isVisible =
                     index < indexOfFirstHiddenIssue || issueCardsExpanded
-                issuesPreferenceGroup.addPreference(issueCardPreference)
+                preferences.add(issueCardPreference)
             }
             if (dismissedIssueCardPreferences.isNotEmpty()) {
                 if (issueCardPreferences.size <= numberOfIssuesToShowWhenCollapsed) {
-                    issuesPreferenceGroup.addPreference(moreIssuesCardPreference)
+                    preferences.add(moreIssuesCardPreference)
                 }
                 dismissedIssuesHeaderPreference?.let {
                     it.isVisible = issueCardsExpanded
-                    issuesPreferenceGroup.addPreference(it)
+                    preferences.add(it)
                 }
                 dismissedIssueCardPreferences.forEach {
                     it.isVisible = issueCardsExpanded
-                    issuesPreferenceGroup.addPreference(it)
+                    preferences.add(it)
                 }
             }
+            PreferenceGroupUpdater.setPreferences(issuesPreferenceGroup, preferences)
         }
     }
 
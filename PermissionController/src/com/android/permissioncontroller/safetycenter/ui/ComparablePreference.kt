@@ -22,10 +22,18 @@ import androidx.preference.Preference
  *
  * @see SafetyPreferenceComparisonCallback
  */
-internal interface ComparablePreference {
+interface ComparablePreference {
     /** Returns true if given Preference represents an item of the same kind. */
     fun isSameItem(preference: Preference): Boolean
 
     /** Returns true if given Preference contains the same data. */
     fun hasSameContents(preference: Preference): Boolean
+
+    /**
+     * Takes the callbacks of given Preference, which has the same contents and is dropped in favor
+     * of this one, as they may capture state that isn't part of the contents.
+     *
+     * @see PreferenceGroupUpdater
+     */
+    fun takeCallbacksFrom(preference: Preference) {}
 }
@@ -34,7 +34,7 @@ internal class MoreIssuesCardPreference(
     private var newMoreIssuesCardData: MoreIssuesCardData,
     private val dismissedOnly: Boolean,
     val isStaticHeader: Boolean,
-    private val onClickListener: () -> Unit
+    private var onClickListener: () -> Unit
 ) : Preference(context), ComparablePreference {
 
     init {
@@ -61,9 +61,11 @@ internal class MoreIssuesCardPreference(
                         R.string.safety_center_more_issues_card_title
                     }
                 ),
-                overrideChevronIconResId,
-                onClickListener
-            )
+                overrideChevronIconResId
+            ) {
+                // The listener may be replaced after binding, see takeCallbacksFrom
+                onClickListener()
+            }
         }
     }
 
@@ -86,6 +88,12 @@ internal class MoreIssuesCardPreference(
             dismissedOnly == preference.dismissedOnly
     }
 
+    override fun takeCallbacksFrom(preference: Preference) {
+        if (preference is MoreIssuesCardPreference) {
+            onClickListener = preference.onClickListener
+        }
+    }
+
     companion object {
         val TAG: String = MoreIssuesCardPreference::class.java.simpleName
     }
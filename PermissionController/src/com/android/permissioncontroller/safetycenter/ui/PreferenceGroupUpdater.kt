@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.permissioncontroller.safetycenter.ui
+
+import androidx.preference.Preference
+import androidx.preference.PreferenceGroup
+
+/**
+ * Updates the preferences of a [PreferenceGroup] to a new list of preferences, keeping the
+ * existing preferences that represent the same item with the same contents, as defined by
+ * [ComparablePreference].
+ *
+ * Replacing all the preferences of a group on every Safety Center data update detaches every
+ * preference and makes the adapter diff and rebind the whole group, even though an update usually
+ * only changes a few items. Only the range between the unchanged leading and trailing preferences
+ * is replaced instead.
+ */
+object PreferenceGroupUpdater {
+
+    /**
+     * Set the preferences of [group] to [preferences].
+     *
+     * The new preferences must not be attached to a group yet. Kept preferences take the
+     * visibility, click listener, intent and other callbacks of the new preference they stand for,
+     * see [ComparablePreference.takeCallbacksFrom].
+     *
+     * @return the preferences of [group] after the update, which are either kept preferences or
+     *   [preferences]
+     */
+    @JvmStatic
+    fun setPreferences(group: PreferenceGroup, preferences: List<Preference>): List<Preference> {
+        val oldPreferences = List(group.preferenceCount) { group.getPreference(it) }
+        val maxKept = minOf(oldPreferences.size, preferences.size)
+
+        var prefixSize = 0
+        while (
+            prefixSize < maxKept &&
+                isUnchanged(oldPreferences[prefixSize], preferences[prefixSize])
+        ) {
+            prefixSize++
+        }
+        var suffixSize = 0
+        while (
+            suffixSize < maxKept - prefixSize &&
+                isUnchanged(
+                    oldPreferences[oldPreferences.size - 1 - suffixSize],
+                    preferences[preferences.size - 1 - suffixSize]
+                )
+        ) {
+            suffixSize++
+        }
+
+        for (i in prefixSize until oldPreferences.size - suffixSize) {
+            group.removePreference(oldPreferences[i])
+        }
+
+        // Orders are set before adding the new preferences, so that they are inserted in between
+        // the kept preferences
+        for (i in 0 until prefixSize) {
+            keep(oldPreferences[i], preferences[i], i)
+        }
+        for (i in 0 until suffixSize) {
+            val index = preferences.size - suffixSize + i
+            keep(oldPreferences[oldPreferences.size - suffixSize + i], preferences[index], index)
+        }
+        for (i in prefixSize until preferences.size - suffixSize) {
+            val preference = preferences[i]
+            preference.order = i
+            group.addPreference(preference)
+        }
+
+        return List(group.preferenceCount) { group.getPreference(it) }
+    }
+
+    private fun keep(oldPreference: Preference, newPreference: Preference, order: Int) {
+        oldPreference.order = order
+        oldPreference.isVisible = newPreference.isVisible
+        oldPreference.onPreferenceClickListener = newPreference.onPreferenceClickListener
+        oldPreference.intent = newPreference.intent
+        (oldPreference as ComparablePreference).takeCallbacksFrom(newPreference)
+    }
+
+    private fun isUnchanged(oldPreference: Preference, newPreference: Preference): Boolean =
+        oldPreference is ComparablePreference &&
+            oldPreference.isSameItem(newPreference) &&
+            oldPreference.hasSameContents(newPreference)
+}
@@ -57,6 +57,7 @@ import com.android.safetycenter.resources.SafetyCenterResourcesApk;
 
 import kotlin.Unit;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -204,8 +205,8 @@ public final class SafetyCenterDashboardFragment extends SafetyCenterFragment {
             return;
         }
 
-        // TODO(b/208212820): Only update entries that have changed since last
-        // update, rather than deleting and re-adding all.
+        // Only the preferences that changed since the last update are replaced, see
+        // PreferenceGroupUpdater
         updateIssues(context, data.getIssues(), uiData.getResolvedIssues());
 
         if (!mIsQuickSettingsFragment) {
@@ -216,7 +217,6 @@ public final class SafetyCenterDashboardFragment extends SafetyCenterFragment {
 
     private void updateIssues(
             Context context, List<SafetyCenterIssue> issues, Map<String, String> resolvedIssues) {
-        mIssuesGroup.removeAll();
         getCollapsableIssuesCardHelper()
                 .addIssues(
                         context,
@@ -232,7 +232,7 @@ public final class SafetyCenterDashboardFragment extends SafetyCenterFragment {
     // TODO(b/208212820): Add groups and move to separate controller
     private void updateSafetyEntries(
             Context context, List<SafetyCenterEntryOrGroup> entriesOrGroups) {
-        mEntriesGroup.removeAll();
+        List<Preference> entryPreferences = new ArrayList<>(entriesOrGroups.size());
 
         for (int i = 0, size = entriesOrGroups.size(); i < size; i++) {
             SafetyCenterEntryOrGroup entryOrGroup = entriesOrGroups.get(i);
@@ -243,68 +243,78 @@ public final class SafetyCenterDashboardFragment extends SafetyCenterFragment {
             boolean isLastElement = i == size - 1;
 
             if (SafetyCenterUiFlags.getShowSubpages() && group != null) {
-                mEntriesGroup.addPreference(
+                entryPreferences.add(
                         new SafetyHomepageEntryPreference(
                                 context, group, getSafetyCenterSessionId()));
             } else if (entry != null) {
-                addTopLevelEntry(context, entry, isFirstElement, isLastElement);
+                entryPreferences.add(
+                        createTopLevelEntry(context, entry, isFirstElement, isLastElement));
             } else if (group != null) {
-                addGroupEntries(context, group, isFirstElement, isLastElement);
+                entryPreferences.add(
+                        createGroupEntries(context, group, isFirstElement, isLastElement));
             }
         }
+
+        PreferenceGroupUpdater.setPreferences(mEntriesGroup, entryPreferences);
     }
 
-    private void addTopLevelEntry(
+    private Preference createTopLevelEntry(
             Context context,
             SafetyCenterEntry entry,
             boolean isFirstElement,
             boolean isLastElement) {
-        mEntriesGroup.addPreference(
-                new SafetyEntryPreference(
-                        context,
-                        PendingIntentSender.getTaskIdForEntry(
-                                entry.getId(), getSameTaskSourceIds(), requireActivity()),
-                        entry,
-                        PositionInCardList.calculate(isFirstElement, isLastElement),
-                        getSafetyCenterViewModel()));
+        return new SafetyEntryPreference(
+                context,
+                PendingIntentSender.getTaskIdForEntry(
+                        entry.getId(), getSameTaskSourceIds(), requireActivity()),
+                entry,
+                PositionInCardList.calculate(isFirstElement, isLastElement),
+                getSafetyCenterViewModel());
     }
 
-    private void addGroupEntries(
+    private Preference createGroupEntries(
             Context context,
             SafetyCenterEntryGroup group,
             boolean isFirstCard,
             boolean isLastCard) {
-        mEntriesGroup.addPreference(
-                new SafetyGroupPreference(
-                        context,
-                        group,
-                        mCollapsableGroupCardHelper::isGroupExpanded,
-                        isFirstCard,
-                        isLastCard,
-                        (entryId) ->
-                                PendingIntentSender.getTaskIdForEntry(
-                                        entryId, getSameTaskSourceIds(), requireActivity()),
-                        getSafetyCenterViewModel(),
-                        (groupId) -> {
-                            mCollapsableGroupCardHelper.onGroupExpanded(groupId);
-                            return Unit.INSTANCE;
-                        },
-                        (groupId) -> {
-                            mCollapsableGroupCardHelper.onGroupCollapsed(groupId);
-                            return Unit.INSTANCE;
-                        }));
+        return new SafetyGroupPreference(
+                context,
+                group,
+                mCollapsableGroupCardHelper::isGroupExpanded,
+                isFirstCard,
+                isLastCard,
+                (entryId) ->
+                        PendingIntentSender.getTaskIdForEntry(
+                                entryId, getSameTaskSourceIds(), requireActivity()),
+                getSafetyCenterViewModel(),
+                (groupId) -> {
+                    mCollapsableGroupCardHelper.onGroupExpanded(groupId);
+                    return Unit.INSTANCE;
+                },
+                (groupId) -> {
+                    mCollapsableGroupCardHelper.onGroupCollapsed(groupId);
+                    return Unit.INSTANCE;
+                });
     }
 
     private void updateStaticSafetyEntries(Context context, SafetyCenterData data) {
-        mStaticEntriesGroup.removeAll();
-
-        for (SafetyCenterStaticEntryGroup group : data.getStaticEntryGroups()) {
+        List<SafetyCenterStaticEntryGroup> groups = data.getStaticEntryGroups();
+        List<Preference> categories = new ArrayList<>(groups.size());
+        for (int i = 0, size = groups.size(); i < size; i++) {
             PreferenceCategory category = new ComparablePreferenceCategory(context);
-            category.setTitle(group.getTitle());
-            mStaticEntriesGroup.addPreference(category);
+            category.setTitle(groups.get(i).getTitle());
+            categories.add(category);
+        }
+
+        // Categories only compare their titles, their entries are updated separately as they can
+        // only be added once the categories are attached
+        categories = PreferenceGroupUpdater.setPreferences(mStaticEntriesGroup, categories);
 
-            for (SafetyCenterStaticEntry entry : group.getStaticEntries()) {
-                category.addPreference(
+        for (int i = 0, size = groups.size(); i < size; i++) {
+            List<SafetyCenterStaticEntry> entries = groups.get(i).getStaticEntries();
+            List<Preference> entryPreferences = new ArrayList<>(entries.size());
+            for (SafetyCenterStaticEntry entry : entries) {
+                entryPreferences.add(
                         new StaticSafetyEntryPreference(
                                 context,
                                 requireActivity().getTaskId(),
@@ -312,6 +322,8 @@ public final class SafetyCenterDashboardFragment extends SafetyCenterFragment {
                                 SafetyCenterBundles.getStaticEntryId(data, entry),
                                 getSafetyCenterViewModel()));
             }
+            PreferenceGroupUpdater.setPreferences(
+                    (PreferenceGroup) categories.get(i), entryPreferences);
         }
     }
 }
@@ -43,6 +43,7 @@ import androidx.preference.PreferenceCategory;
 import com.android.permissioncontroller.R;
 import com.android.permissioncontroller.ext.PackageExtraConfigFragment;
 import com.android.permissioncontroller.ext.PreferenceWithImageButton;
+import com.android.permissioncontroller.permission.data.GosPackageStateLiveData;
 import com.android.settingslib.widget.ActionButtonsPreference;
 import com.android.settingslib.widget.FooterPreference;
 import com.android.settingslib.widget.MainSwitchPreference;
@@ -211,7 +212,8 @@ public final class StorageScopesFragment extends PackageExtraConfigFragment {
             return;
         }
 
-        update();
+        // the page is updated once the edited state is loaded
+        GosPackageStateLiveData.onPackageStateChanged(pkgName);
     }
 
     boolean ignoreMainSwitchChange;
@@ -258,7 +260,7 @@ public final class StorageScopesFragment extends PackageExtraConfigFragment {
     }
 
     void removeScope(StorageScope scope) {
-        GosPackageState ps = GosPackageState.get(pkgName);
+        GosPackageState ps = GosPackageStateLiveData.getPackageState(pkgName);
 
         if (ps == null) {
             return;
@@ -289,7 +291,7 @@ public final class StorageScopesFragment extends PackageExtraConfigFragment {
         changedPaths.add(scope.path);
         invalidateMediaProviderCache(changedPaths);
 
-        update();
+        GosPackageStateLiveData.onPackageStateChanged(pkgName);
     }
 
     void launchPicker(int mode) {
@@ -357,7 +359,7 @@ public final class StorageScopesFragment extends PackageExtraConfigFragment {
             return;
         }
 
-        GosPackageState curPkgState = GosPackageState.get(pkgName);
+        GosPackageState curPkgState = GosPackageStateLiveData.getPackageState(pkgName);
         if (!storageScopesEnabled(curPkgState)) {
             // other instance of this fragment updated curPkgState
             pressBack(this);
@@ -450,6 +452,8 @@ public final class StorageScopesFragment extends PackageExtraConfigFragment {
             pressBack(this);
             return;
         }
+
+        GosPackageStateLiveData.onPackageStateChanged(pkgName);
     }
 
     private void invalidateMediaProviderCache(@Nullable ArrayList<String> changedPaths) {
@@ -36,6 +36,7 @@ import android.util.Log;
 import androidx.annotation.Nullable;
 
 import com.android.permissioncontroller.ext.ScopesUtils;
+import com.android.permissioncontroller.permission.data.GosPackageStateLiveData;
 import com.android.permissioncontroller.permission.utils.KotlinUtils;
 
 import java.io.File;
@@ -242,7 +243,7 @@ public class StorageScopesUtils {
     }
 
     public static boolean storageScopesEnabled(String pkgName) {
-        return storageScopesEnabled(GosPackageState.get(pkgName));
+        return storageScopesEnabled(GosPackageStateLiveData.getPackageState(pkgName));
     }
 
     public static boolean storageScopesEnabled(@Nullable GosPackageState ps) {
@@ -251,7 +252,7 @@ public class StorageScopesUtils {
 
     @Nullable
     static StorageScope[] getStorageScopes(String pkgName) {
-        GosPackageState s = GosPackageState.get(pkgName);
+        GosPackageState s = GosPackageStateLiveData.getPackageState(pkgName);
         if (!storageScopesEnabled(s)) {
             return null;
         }
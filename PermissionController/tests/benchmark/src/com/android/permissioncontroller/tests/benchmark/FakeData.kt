@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.benchmark
+
+import android.content.pm.PackageInfo.REQUESTED_PERMISSION_GRANTED
+import android.content.pm.PackageManager.FLAG_PERMISSION_USER_SET
+import android.content.pm.PermissionInfo
+import android.os.Build
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPackageInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPermGroupInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPermInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPermission
+
+/** Synthetic package and permission data, so that benchmarks do not depend on installed apps */
+object FakeData {
+    const val PACKAGE_NAME = "com.example.benchmark"
+    const val PERMISSION_GROUP = "com.example.benchmark.permission-group.GROUP"
+    private const val UID = 10_123
+
+    /** Name of the foreground permission [index] of the fake group */
+    fun foregroundPermissionName(index: Int) = "com.example.benchmark.permission.FG_$index"
+
+    /** Name of the background permission of the fake group */
+    const val BACKGROUND_PERMISSION = "com.example.benchmark.permission.BG"
+
+    /**
+     * Create the info of a package requesting [foregroundPermissionCount] dangerous permissions,
+     * and one background permission for all of them.
+     */
+    fun createPackageInfo(foregroundPermissionCount: Int): LightPackageInfo {
+        val permissionNames =
+            (0 until foregroundPermissionCount).map { foregroundPermissionName(it) } +
+                BACKGROUND_PERMISSION
+        return LightPackageInfo(
+            PACKAGE_NAME,
+            emptyList(),
+            permissionNames,
+            permissionNames.indices.map { if (it % 2 == 0) REQUESTED_PERMISSION_GRANTED else 0 },
+            UID,
+            Build.VERSION_CODES.TIRAMISU,
+            isInstantApp = false,
+            enabled = true,
+            appFlags = 0,
+            firstInstallTime = 0,
+            lastUpdateTime = 0,
+            areAttributionsUserVisible = false,
+            attributionTagsToLabels = emptyMap(),
+            deviceId = 0
+        )
+    }
+
+    /** Create the info of the fake permission group */
+    fun createPermGroupInfo(): LightPermGroupInfo {
+        return LightPermGroupInfo(PERMISSION_GROUP, PACKAGE_NAME, 0, 0, 0, false)
+    }
+
+    /** Create the permissions of the fake group, as requested by [packageInfo] */
+    fun createPermissions(packageInfo: LightPackageInfo): Map<String, LightPermission> {
+        val foregroundPermissionNames = packageInfo.requestedPermissions - BACKGROUND_PERMISSION
+        return packageInfo.requestedPermissions
+            .mapIndexed { index, name ->
+                val isBackground = name == BACKGROUND_PERMISSION
+                val permInfo =
+                    LightPermInfo(
+                        name,
+                        PACKAGE_NAME,
+                        PERMISSION_GROUP,
+                        if (isBackground) null else BACKGROUND_PERMISSION,
+                        PermissionInfo.PROTECTION_DANGEROUS,
+                        0,
+                        0
+                    )
+                name to
+                    LightPermission(
+                        packageInfo,
+                        permInfo,
+                        packageInfo.requestedPermissionsFlags[index] and
+                            REQUESTED_PERMISSION_GRANTED != 0,
+                        if (index % 3 == 0) FLAG_PERMISSION_USER_SET else 0,
+                        if (isBackground) foregroundPermissionNames else null
+                    )
+            }
+            .toMap()
+    }
+}
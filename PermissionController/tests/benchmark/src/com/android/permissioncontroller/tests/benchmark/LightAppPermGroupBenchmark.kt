@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.benchmark
+
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.permissioncontroller.permission.model.livedatatypes.LightAppPermGroup
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Benchmarks creating [LightAppPermGroup]s, which happens every time a permission of a group
+ * changes, for every group shown in the UI.
+ */
+@RunWith(AndroidJUnit4::class)
+class LightAppPermGroupBenchmark {
+    @get:Rule val benchmarkRule = BenchmarkRule()
+
+    @Test
+    fun createSmallGroup() {
+        benchmarkCreateGroup(foregroundPermissionCount = 2)
+    }
+
+    @Test
+    fun createLargeGroup() {
+        benchmarkCreateGroup(foregroundPermissionCount = 32)
+    }
+
+    private fun benchmarkCreateGroup(foregroundPermissionCount: Int) {
+        val packageInfo = FakeData.createPackageInfo(foregroundPermissionCount)
+        val permGroupInfo = FakeData.createPermGroupInfo()
+        val permissions = FakeData.createPermissions(packageInfo)
+
+        benchmarkRule.measureRepeated {
+            LightAppPermGroup(packageInfo, permGroupInfo, permissions, false, null)
+        }
+    }
+}
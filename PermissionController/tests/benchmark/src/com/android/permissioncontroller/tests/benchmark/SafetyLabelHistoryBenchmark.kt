@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.benchmark
+
+import android.os.Build
+import androidx.annotation.RequiresApi
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SdkSuppress
+import com.android.permission.safetylabel.DataCategoryConstants.CATEGORY_LOCATION
+import com.android.permissioncontroller.permission.model.v34.AppDataSharingUpdate.Companion.buildUpdateIfSignificantChange
+import com.android.permissioncontroller.safetylabel.AppsSafetyLabelHistory.AppInfo
+import com.android.permissioncontroller.safetylabel.AppsSafetyLabelHistory.AppSafetyLabelDiff
+import com.android.permissioncontroller.safetylabel.AppsSafetyLabelHistory.AppSafetyLabelHistory
+import com.android.permissioncontroller.safetylabel.AppsSafetyLabelHistory.DataCategory
+import com.android.permissioncontroller.safetylabel.AppsSafetyLabelHistory.DataLabel
+import com.android.permissioncontroller.safetylabel.AppsSafetyLabelHistory.SafetyLabel
+import java.time.Instant
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Benchmarks the safety label history processing done for every installed app by the data sharing
+ * updates.
+ */
+@RunWith(AndroidJUnit4::class)
+@SdkSuppress(minSdkVersion = Build.VERSION_CODES.UPSIDE_DOWN_CAKE, codeName = "UpsideDownCake")
+@RequiresApi(Build.VERSION_CODES.UPSIDE_DOWN_CAKE)
+class SafetyLabelHistoryBenchmark {
+    @get:Rule val benchmarkRule = BenchmarkRule()
+
+    @Test
+    fun buildDataSharingUpdates() {
+        val diffs =
+            (0 until APP_COUNT).map {
+                val appInfo = AppInfo("com.example.package$it")
+                AppSafetyLabelDiff(
+                    createSafetyLabel(appInfo, 0, sharesLocationForAds = false),
+                    createSafetyLabel(appInfo, 1, sharesLocationForAds = it % 10 == 0)
+                )
+            }
+
+        benchmarkRule.measureRepeated { diffs.mapNotNull { it.buildUpdateIfSignificantChange() } }
+    }
+
+    @Test
+    fun addSafetyLabelToFullHistory() {
+        val appInfo = AppInfo("com.example.package")
+        val history =
+            AppSafetyLabelHistory(
+                appInfo,
+                (0 until MAX_SAFETY_LABELS_PERSISTED).map {
+                    createSafetyLabel(appInfo, it, sharesLocationForAds = false)
+                }
+            )
+        val newSafetyLabel =
+            createSafetyLabel(appInfo, MAX_SAFETY_LABELS_PERSISTED, sharesLocationForAds = true)
+
+        benchmarkRule.measureRepeated {
+            history.withSafetyLabel(newSafetyLabel, MAX_SAFETY_LABELS_PERSISTED)
+        }
+    }
+
+    private fun createSafetyLabel(
+        appInfo: AppInfo,
+        version: Int,
+        sharesLocationForAds: Boolean
+    ): SafetyLabel {
+        return SafetyLabel(
+            appInfo,
+            Instant.ofEpochMilli(version.toLong()),
+            DataLabel(mapOf(CATEGORY_LOCATION to DataCategory(sharesLocationForAds)))
+        )
+    }
+
+    companion object {
+        private const val APP_COUNT = 500
+        private const val MAX_SAFETY_LABELS_PERSISTED = 20
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.benchmark
+
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.permissioncontroller.permission.utils.KotlinUtils
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Benchmarks [KotlinUtils.getMapAndListDifferences], which LiveDatas use to update their sources,
+ * e.g. one source per installed package.
+ */
+@RunWith(AndroidJUnit4::class)
+class SourceDifferenceBenchmark {
+    @get:Rule val benchmarkRule = BenchmarkRule()
+
+    @Test
+    fun unchangedPackages() {
+        val packages = (0 until PACKAGE_COUNT).map { "com.example.package$it" }
+        val sources = packages.associateWith { Any() }
+
+        benchmarkRule.measureRepeated { KotlinUtils.getMapAndListDifferences(packages, sources) }
+    }
+
+    @Test
+    fun oneChangedPackage() {
+        val packages = (0 until PACKAGE_COUNT).map { "com.example.package$it" }
+        val sources = (packages.drop(1) + "com.example.removed").associateWith { Any() }
+
+        benchmarkRule.measureRepeated { KotlinUtils.getMapAndListDifferences(packages, sources) }
+    }
+
+    companion object {
+        private const val PACKAGE_COUNT = 500
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.data
+
+import com.google.common.truth.Truth.assertThat
+import java.util.concurrent.TimeUnit
+import org.junit.Test
+
+private const val PKG_A = "com.example.a"
+private const val PKG_B = "com.example.b"
+private const val VALUES_IN_BUDGET = 8
+
+class DataRepositoryTest {
+    private class TestValue(override var timeWentInactive: Long? = null) :
+        DataRepository.InactiveTimekeeper
+
+    private open class TestRepository : DataRepositoryForPackage<Pair<String, Int>, TestValue>() {
+        override fun newValue(key: Pair<String, Int>): TestValue {
+            return TestValue()
+        }
+    }
+
+    /** Repository with room for [VALUES_IN_BUDGET] values, which are inactive since long */
+    private class BudgetedTestRepository(private val activeValues: Boolean = false) :
+        TestRepository() {
+        override val memoryBudgetBytes: Long
+            get() = VALUES_IN_BUDGET * DataRepository.estimateSizeBytes(null).toLong()
+
+        override fun newValue(key: Pair<String, Int>): TestValue {
+            if (activeValues) {
+                return TestValue()
+            }
+            return TestValue(System.nanoTime() - TimeUnit.MINUTES.toNanos(1) + key.second)
+        }
+    }
+
+    @Test
+    fun invalidateAllForPackageOnlyDropsValuesOfThatPackage() {
+        val repository = TestRepository()
+        val valueA0 = repository[PKG_A, 0]
+        val valueA1 = repository[PKG_A, 1]
+        val valueB0 = repository[PKG_B, 0]
+
+        repository.invalidateAllForPackage(PKG_A)
+
+        assertThat(repository[PKG_A, 0]).isNotSameInstanceAs(valueA0)
+        assertThat(repository[PKG_A, 1]).isNotSameInstanceAs(valueA1)
+        assertThat(repository[PKG_B, 0]).isSameInstanceAs(valueB0)
+    }
+
+    @Test
+    fun invalidateAllForPackageAfterInvalidateSingle() {
+        val repository = TestRepository()
+        val valueA0 = repository[PKG_A, 0]
+        repository.invalidateSingle(PKG_A to 0)
+        val newValueA0 = repository[PKG_A, 0]
+
+        assertThat(newValueA0).isNotSameInstanceAs(valueA0)
+
+        repository.invalidateAllForPackage(PKG_A)
+
+        assertThat(repository[PKG_A, 0]).isNotSameInstanceAs(newValueA0)
+    }
+
+    @Test
+    fun statsCountHitsAndMisses() {
+        val repository = TestRepository()
+        repository[PKG_A, 0]
+        repository[PKG_A, 0]
+        repository[PKG_B, 0]
+
+        val stats = repository.getStats()
+
+        assertThat(stats.size).isEqualTo(2)
+        assertThat(stats.hitCount).isEqualTo(1)
+        assertThat(stats.missCount).isEqualTo(2)
+    }
+
+    @Test
+    fun valuesOverBudgetAreEvictedLeastRecentlyUsedFirst() {
+        val repository = BudgetedTestRepository()
+        val values = (0 until 32).map { repository[PKG_A, it] }
+
+        val stats = repository.getStats()
+
+        assertThat(stats.size).isEqualTo(VALUES_IN_BUDGET)
+        assertThat(stats.evictionCount).isEqualTo(32 - VALUES_IN_BUDGET)
+        assertThat(stats.estimatedSizeBytes).isAtMost(stats.memoryBudgetBytes)
+        // The values that went inactive last are kept
+        assertThat(repository[PKG_A, 31]).isSameInstanceAs(values[31])
+        assertThat(repository[PKG_A, 0]).isNotSameInstanceAs(values[0])
+    }
+
+    @Test
+    fun activeValuesAreNotEvicted() {
+        val repository = BudgetedTestRepository(activeValues = true)
+        val values = (0 until 32).map { repository[PKG_A, it] }
+
+        assertThat(repository.getStats().evictionCount).isEqualTo(0)
+        assertThat(repository[PKG_A, 0]).isSameInstanceAs(values[0])
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.data
+
+import android.content.Intent
+import android.net.Uri
+import androidx.test.platform.app.InstrumentationRegistry
+import com.google.common.truth.Truth.assertThat
+import java.util.Collections
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+import org.junit.After
+import org.junit.Test
+
+private const val PKG_A = "com.example.packagebroadcastreceivertest.a"
+private const val PKG_B = "com.example.packagebroadcastreceivertest.b"
+private const val TIMEOUT_MILLIS = 10_000L
+/** Longer than the delay after which all-package listeners are notified */
+private const val BATCH_WAIT_MILLIS = 500L
+
+/**
+ * Tests how [PackageBroadcastReceiver] batches the packages delivered to listeners for all
+ * packages. Broadcasts are delivered by calling [PackageBroadcastReceiver.onReceive] directly, for
+ * packages that don't exist, so real broadcasts received meanwhile are ignored.
+ */
+class PackageBroadcastReceiverTest {
+    private val instrumentation = InstrumentationRegistry.getInstrumentation()
+    private val context = instrumentation.targetContext
+
+    private val listeners = mutableListOf<RecordingListener>()
+
+    @After
+    fun removeListeners() {
+        instrumentation.runOnMainSync {
+            listeners.forEach { PackageBroadcastReceiver.removeAllCallback(it) }
+        }
+    }
+
+    @Test
+    fun allCallbackIsNotifiedOnceOfAllChangedPackages() {
+        val listener = RecordingListener()
+
+        instrumentation.runOnMainSync {
+            addAllCallback(listener)
+            receivePackageChanged(PKG_A)
+            receivePackageChanged(PKG_B)
+            receivePackageChanged(PKG_A)
+        }
+
+        assertThat(listener.firstUpdate.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+            .containsAtLeast(PKG_A, PKG_B)
+        Thread.sleep(BATCH_WAIT_MILLIS)
+        assertThat(listener.updatesOfTestPackages()).hasSize(1)
+    }
+
+    @Test
+    fun immediateAllCallbackIsNotifiedRightAway() {
+        val listener = RecordingListener()
+
+        instrumentation.runOnMainSync {
+            addAllCallback(listener, immediate = true)
+            receivePackageChanged(PKG_A)
+            listener.updatesBeforeReturning.complete(listener.updatesOfTestPackages())
+        }
+
+        assertThat(listener.updatesBeforeReturning.get()).containsExactly(setOf(PKG_A))
+    }
+
+    @Test
+    fun allCallbackAddedAfterLastRemovedIsNotNotifiedOfEarlierPackages() {
+        val removedListener = RecordingListener()
+        val addedListener = RecordingListener()
+
+        instrumentation.runOnMainSync {
+            addAllCallback(removedListener)
+            receivePackageChanged(PKG_A)
+            PackageBroadcastReceiver.removeAllCallback(removedListener)
+            addAllCallback(addedListener)
+        }
+        Thread.sleep(BATCH_WAIT_MILLIS)
+
+        assertThat(removedListener.updatesOfTestPackages()).isEmpty()
+        assertThat(addedListener.updatesOfTestPackages()).isEmpty()
+    }
+
+    @Test
+    fun allCallbackIsNotNotifiedOfPackagesChangedBeforeItWasAdded() {
+        val changeListener = RecordingListener()
+        val allListener = RecordingListener()
+
+        instrumentation.runOnMainSync {
+            PackageBroadcastReceiver.addChangeCallback(PKG_A, changeListener)
+            receivePackageChanged(PKG_A)
+            addAllCallback(allListener)
+        }
+        try {
+            Thread.sleep(BATCH_WAIT_MILLIS)
+
+            assertThat(changeListener.updatesOfTestPackages()).containsExactly(setOf(PKG_A))
+            assertThat(allListener.updatesOfTestPackages()).isEmpty()
+        } finally {
+            instrumentation.runOnMainSync {
+                PackageBroadcastReceiver.removeChangeCallback(PKG_A, changeListener)
+            }
+        }
+    }
+
+    private fun addAllCallback(listener: RecordingListener, immediate: Boolean = false) {
+        listeners.add(listener)
+        PackageBroadcastReceiver.addAllCallback(listener, immediate)
+    }
+
+    private fun receivePackageChanged(packageName: String) {
+        PackageBroadcastReceiver.onReceive(
+            context,
+            Intent(Intent.ACTION_PACKAGE_CHANGED, Uri.fromParts("package", packageName, null))
+        )
+    }
+
+    private class RecordingListener : PackageBroadcastReceiver.PackageBroadcastListener {
+        val updates: MutableList<Set<String>> = Collections.synchronizedList(mutableListOf())
+        val firstUpdate = CompletableFuture<Set<String>>()
+        val updatesBeforeReturning = CompletableFuture<List<Set<String>>>()
+
+        override fun onPackageUpdate(packageName: String) {
+            onPackagesUpdated(setOf(packageName))
+        }
+
+        override fun onPackagesUpdated(packageNames: Set<String>) {
+            updates.add(packageNames)
+            if (PKG_A in packageNames || PKG_B in packageNames) {
+                firstUpdate.complete(packageNames)
+            }
+        }
+
+        /** The updates including the packages of this test, ignoring real broadcasts */
+        fun updatesOfTestPackages(): List<Set<String>> =
+            synchronized(updates) {
+                updates
+                    .filter { PKG_A in it || PKG_B in it }
+                    .map { names -> names.filterTo(mutableSetOf()) { it == PKG_A || it == PKG_B } }
+            }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.data
+
+import android.Manifest.permission_group.CAMERA
+import android.Manifest.permission_group.LOCATION
+import android.Manifest.permission_group.MICROPHONE
+import android.os.Handler
+import android.os.Looper
+import android.os.Process.myUserHandle
+import android.permission.cts.PermissionUtils.install
+import android.permission.cts.PermissionUtils.uninstallApp
+import androidx.lifecycle.Observer
+import com.android.permissioncontroller.permission.utils.KotlinUtils
+import com.google.common.truth.Truth.assertThat
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+import org.junit.After
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+
+private const val APK = "/data/local/tmp/pc-inprocess/AppThatUsesCameraPermission.apk"
+private const val PKG = "com.android.permissioncontroller.tests.appthatrequestpermission"
+private const val TIMEOUT_MILLIS = 10_000L
+
+class PackagePermissionFlagsLiveDataTest {
+    @Before
+    fun installTestApp() {
+        assumeTrue(KotlinUtils.canGetAllPermissionFlags())
+        install(APK)
+    }
+
+    @Test
+    fun flagsFetchesAreSharedBySeveralGroups() {
+        val permStateLiveDatas =
+            listOf(CAMERA, MICROPHONE, LOCATION).map { PermStateLiveData[PKG, it, myUserHandle()] }
+        val fetchCountBefore = PackagePermissionFlagsLiveData.flagsFetchCount.get()
+
+        val loadedValues = permStateLiveDatas.map { CompletableFuture<Any?>() }
+        val observers =
+            permStateLiveDatas.mapIndexed { index, liveData ->
+                Observer<Any?> {
+                    if (liveData.isInitialized) {
+                        loadedValues[index].complete(it)
+                    }
+                }
+            }
+        val mainHandler = Handler(Looper.getMainLooper())
+        mainHandler.post {
+            permStateLiveDatas.zip(observers).forEach { (liveData, observer) ->
+                liveData.observeForever(observer)
+            }
+        }
+        try {
+            loadedValues.forEach {
+                assertThat(it.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isNotNull()
+            }
+
+            // The flags may legitimately be reloaded, e.g. if a permission changed meanwhile, but
+            // not once per group
+            val fetchCount = PackagePermissionFlagsLiveData.flagsFetchCount.get() - fetchCountBefore
+            assertThat(fetchCount).isAtLeast(1)
+            assertThat(fetchCount).isLessThan(permStateLiveDatas.size)
+        } finally {
+            mainHandler.post {
+                permStateLiveDatas.zip(observers).forEach { (liveData, observer) ->
+                    liveData.removeObserver(observer)
+                }
+            }
+        }
+    }
+
+    @After
+    fun uninstallTestApp() {
+        uninstallApp(PKG)
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.permission.data
+
+import android.Manifest.permission_group.CAMERA
+import android.Manifest.permission_group.LOCATION
+import android.os.Handler
+import android.os.Looper
+import android.os.Process.myUserHandle
+import android.permission.cts.PermissionUtils.install
+import android.permission.cts.PermissionUtils.uninstallApp
+import androidx.lifecycle.Observer
+import com.android.permissioncontroller.PermissionControllerApplication
+import com.android.permissioncontroller.permission.model.livedatatypes.PermGroupPackagesSummary
+import com.android.permissioncontroller.permission.utils.LocationUtils
+import com.google.common.truth.Truth.assertThat
+import com.google.common.truth.Truth.assertWithMessage
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+private const val APK = "/data/local/tmp/pc-inprocess/AppThatUsesCameraPermission.apk"
+private const val PKG = "com.android.permissioncontroller.tests.appthatrequestpermission"
+private const val TIMEOUT_MILLIS = 10_000L
+
+class PermGroupPackagesSummaryLiveDataTest {
+    private val user = myUserHandle()
+
+    @Before
+    fun installTestApp() {
+        install(APK)
+    }
+
+    @Test
+    fun summaryMatchesUiInfoOfPackage() {
+        // The summary may be loaded before the test app is installed
+        val summary =
+            loadValue(PermGroupPackagesSummaryLiveData[CAMERA to user]) {
+                it != null && it.indexOf(PKG) >= 0
+            }!!
+
+        val uiInfo = loadValue(AppPermGroupUiInfoLiveData[PKG, CAMERA, user])
+
+        assertThat(summary.getUiInfo(summary.indexOf(PKG))).isEqualTo(uiInfo)
+    }
+
+    @Test
+    fun summaryMatchesUiInfoOfSpecialLocationPackages() {
+        val context = PermissionControllerApplication.get()
+        val summary = loadValue(PermGroupPackagesSummaryLiveData[LOCATION to user])!!
+
+        for (index in 0 until summary.size) {
+            val packageName = summary.getPackageName(index)
+            if (
+                !LocationUtils.isLocationProvider(context, packageName) &&
+                    !LocationUtils.isLocationGroupAndControllerExtraPackage(
+                        context,
+                        LOCATION,
+                        packageName
+                    )
+            ) {
+                continue
+            }
+            val uiInfo = loadValue(AppPermGroupUiInfoLiveData[packageName, LOCATION, user])
+
+            assertWithMessage(packageName).that(summary.getUiInfo(index)).isEqualTo(uiInfo)
+        }
+    }
+
+    @After
+    fun uninstallTestApp() {
+        uninstallApp(PKG)
+    }
+
+    private fun PermGroupPackagesSummary.indexOf(packageName: String): Int =
+        (0 until size).firstOrNull { getPackageName(it) == packageName } ?: -1
+
+    /** Returns the first loaded value of [liveData] that matches [predicate] */
+    private fun <T> loadValue(
+        liveData: SmartUpdateMediatorLiveData<T>,
+        predicate: (T?) -> Boolean = { true }
+    ): T? {
+        val loadedValue = CompletableFuture<T?>()
+        val observer =
+            Observer<T?> {
+                if (liveData.isInitialized && predicate(it)) {
+                    loadedValue.complete(it)
+                }
+            }
+        val mainHandler = Handler(Looper.getMainLooper())
+        mainHandler.post { liveData.observeForever(observer) }
+        try {
+            return loadedValue.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+        } finally {
+            mainHandler.post { liveData.removeObserver(observer) }
+        }
+    }
+}
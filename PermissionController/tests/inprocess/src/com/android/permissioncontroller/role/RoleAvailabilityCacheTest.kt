@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.role
+
+import android.app.role.RoleManager
+import android.os.Build
+import androidx.test.platform.app.InstrumentationRegistry
+import com.android.role.controller.model.Roles
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Tests that the role availability cached by [RoleManager] follows the available roles set by the
+ * role controller. Only the role controller can set the available roles, so unlike the other
+ * [RoleManager] cache tests this runs in the PermissionController process.
+ */
+class RoleAvailabilityCacheTest {
+    private val context = InstrumentationRegistry.getInstrumentation().targetContext
+    private val roleManager = context.getSystemService(RoleManager::class.java)!!
+
+    private var availableRoleNames: List<String>? = null
+
+    @Before
+    fun saveAvailableRoleNames() {
+        assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE)
+        availableRoleNames = Roles.get(context).keys.filter { roleManager.isRoleAvailable(it) }
+    }
+
+    @After
+    fun restoreAvailableRoleNames() {
+        availableRoleNames?.let { roleManager.setRoleNamesFromController(it) }
+    }
+
+    @Test
+    fun isRoleAvailableAndSetRoleNamesThenIsRoleAvailableIsUpdated() {
+        val availableRoleNames = availableRoleNames!!
+        // Removing a role drops its holders, so only remove a role without holders
+        val roleName = availableRoleNames.firstOrNull { roleManager.getRoleHolders(it).isEmpty() }
+        assumeTrue(roleName != null)
+        // Query first so that the result is cached in this process
+        assertThat(roleManager.isRoleAvailable(roleName!!)).isTrue()
+
+        roleManager.setRoleNamesFromController(availableRoleNames - roleName)
+
+        assertThat(roleManager.isRoleAvailable(roleName)).isFalse()
+
+        roleManager.setRoleNamesFromController(availableRoleNames)
+
+        assertThat(roleManager.isRoleAvailable(roleName)).isTrue()
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.mocking.permission.data
+
+import android.Manifest.permission.ACCESS_BACKGROUND_LOCATION
+import android.Manifest.permission.ACCESS_FINE_LOCATION
+import android.Manifest.permission.CAMERA
+import android.Manifest.permission_group.CAMERA as CAMERA_GROUP
+import android.Manifest.permission_group.LOCATION as LOCATION_GROUP
+import android.app.Application
+import android.content.pm.PackageManager.FLAG_PERMISSION_USER_FIXED
+import android.content.pm.PackageManager.FLAG_PERMISSION_USER_SENSITIVE_WHEN_DENIED
+import android.content.pm.PackageManager.FLAG_PERMISSION_USER_SENSITIVE_WHEN_GRANTED
+import android.content.pm.PermissionInfo
+import android.os.Build
+import android.os.Process
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.permissioncontroller.permission.data.AppPermGroupUiInfoCalculator
+import com.android.permissioncontroller.permission.model.livedatatypes.AppPermGroupUiInfo.PermGrantState
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPackageInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPermGroupInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.LightPermInfo
+import com.android.permissioncontroller.permission.model.livedatatypes.PermState
+import com.android.permissioncontroller.permission.utils.ContextCompat
+import com.android.permissioncontroller.permission.utils.LocationUtils
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** Unit tests for [AppPermGroupUiInfoCalculator]. */
+@RunWith(AndroidJUnit4::class)
+class AppPermGroupUiInfoCalculatorTest {
+    private val app: Application = ApplicationProvider.getApplicationContext()
+    private val user = Process.myUserHandle()
+
+    @Test
+    fun getAppPermGroupUiInfo_grantedCamera_isAllowedInForeground() {
+        val uiInfo =
+            getUiInfo(
+                CAMERA_GROUP,
+                CAMERA_PERM_INFOS,
+                mapOf(CAMERA to PermState(FLAG_PERMISSION_USER_SENSITIVE_WHEN_GRANTED, true))
+            )
+
+        assertThat(uiInfo.shouldShow).isTrue()
+        assertThat(uiInfo.permGrantState).isEqualTo(PermGrantState.PERMS_ALLOWED_FOREGROUND_ONLY)
+        assertThat(uiInfo.isSystem).isFalse()
+        assertThat(uiInfo.isUserSet).isFalse()
+    }
+
+    @Test
+    fun getAppPermGroupUiInfo_userFixedDeniedCamera_isDeniedAndUserSet() {
+        val uiInfo =
+            getUiInfo(
+                CAMERA_GROUP,
+                CAMERA_PERM_INFOS,
+                mapOf(CAMERA to PermState(USER_FIXED_SENSITIVE_WHEN_DENIED, false))
+            )
+
+        assertThat(uiInfo.permGrantState).isEqualTo(PermGrantState.PERMS_DENIED)
+        assertThat(uiInfo.isSystem).isFalse()
+        assertThat(uiInfo.isUserSet).isTrue()
+    }
+
+    @Test
+    fun getAppPermGroupUiInfo_notUserSensitiveCamera_isSystem() {
+        val uiInfo =
+            getUiInfo(CAMERA_GROUP, CAMERA_PERM_INFOS, mapOf(CAMERA to PermState(0, true)))
+
+        assertThat(uiInfo.isSystem).isTrue()
+    }
+
+    @Test
+    fun getAppPermGroupUiInfo_grantedBackgroundLocation_isAllowedAlways() {
+        val uiInfo =
+            getUiInfo(
+                LOCATION_GROUP,
+                LOCATION_PERM_INFOS,
+                mapOf(
+                    ACCESS_FINE_LOCATION to PermState(0, true),
+                    ACCESS_BACKGROUND_LOCATION to PermState(0, true)
+                )
+            )
+
+        assertThat(uiInfo.permGrantState).isEqualTo(PermGrantState.PERMS_ALLOWED_ALWAYS)
+    }
+
+    @Test
+    fun getAppPermGroupUiInfo_grantedForegroundLocation_isAllowedInForeground() {
+        val uiInfo =
+            getUiInfo(
+                LOCATION_GROUP,
+                LOCATION_PERM_INFOS,
+                mapOf(
+                    ACCESS_FINE_LOCATION to PermState(0, true),
+                    ACCESS_BACKGROUND_LOCATION to PermState(0, false)
+                )
+            )
+
+        assertThat(uiInfo.permGrantState).isEqualTo(PermGrantState.PERMS_ALLOWED_FOREGROUND_ONLY)
+    }
+
+    @Test
+    fun getAppPermGroupUiInfo_deniedLocationOfRegularPackage_isDenied() {
+        val calculator = calculator(LOCATION_GROUP)
+
+        val uiInfo = calculator.getUiInfo(LOCATION_GROUP, LOCATION_PERM_INFOS, DENIED_LOCATION)
+
+        assertThat(calculator.isSpecialLocation).isFalse()
+        assertThat(uiInfo.permGrantState).isEqualTo(PermGrantState.PERMS_DENIED)
+    }
+
+    @Test
+    fun getAppPermGroupUiInfo_deniedLocationOfLocationProvider_followsLocationEnabled() {
+        val calculator = calculator(LOCATION_GROUP, isLocationGroupAndProvider = true)
+
+        val uiInfo = calculator.getUiInfo(LOCATION_GROUP, LOCATION_PERM_INFOS, DENIED_LOCATION)
+
+        assertThat(calculator.isSpecialLocation).isTrue()
+        assertThat(uiInfo.permGrantState)
+            .isEqualTo(
+                if (LocationUtils.isLocationEnabled(app)) {
+                    PermGrantState.PERMS_ALLOWED_FOREGROUND_ONLY
+                } else {
+                    PermGrantState.PERMS_DENIED
+                }
+            )
+    }
+
+    @Test
+    fun getAppPermGroupUiInfo_deniedLocationOfControllerExtraPackage_followsControllerEnabled() {
+        val calculator = calculator(LOCATION_GROUP, isLocationGroupAndControllerExtraPackage = true)
+
+        val uiInfo = calculator.getUiInfo(LOCATION_GROUP, LOCATION_PERM_INFOS, DENIED_LOCATION)
+
+        assertThat(calculator.isSpecialLocation).isTrue()
+        assertThat(uiInfo.permGrantState)
+            .isEqualTo(
+                if (LocationUtils.isExtraLocationControllerPackageEnabled(app)) {
+                    PermGrantState.PERMS_ALLOWED_FOREGROUND_ONLY
+                } else {
+                    PermGrantState.PERMS_DENIED
+                }
+            )
+    }
+
+    private fun calculator(
+        permGroupName: String,
+        isLocationGroupAndProvider: Boolean = false,
+        isLocationGroupAndControllerExtraPackage: Boolean = false
+    ) =
+        AppPermGroupUiInfoCalculator(
+            app,
+            PACKAGE_NAME,
+            permGroupName,
+            user,
+            isLocationGroupAndProvider,
+            isLocationGroupAndControllerExtraPackage
+        )
+
+    private fun getUiInfo(
+        permGroupName: String,
+        permInfos: Map<String, LightPermInfo>,
+        permissionState: Map<String, PermState>
+    ) = calculator(permGroupName).getUiInfo(permGroupName, permInfos, permissionState)
+
+    private fun AppPermGroupUiInfoCalculator.getUiInfo(
+        permGroupName: String,
+        permInfos: Map<String, LightPermInfo>,
+        permissionState: Map<String, PermState>
+    ) =
+        getAppPermGroupUiInfo(
+            packageInfo(permissionState.keys.toList()),
+            LightPermGroupInfo(permGroupName, OS_PKG, 0, 0, 0, false),
+            permInfos,
+            permissionState
+        )
+
+    private fun packageInfo(requestedPermissions: List<String>) =
+        LightPackageInfo(
+            PACKAGE_NAME,
+            emptyList(),
+            requestedPermissions,
+            requestedPermissions.map { 0 },
+            UID,
+            Build.VERSION_CODES.CUR_DEVELOPMENT,
+            false /* isInstantApp */,
+            true /* enabled */,
+            0 /* appFlags */,
+            0 /* firstInstallTime */,
+            0 /* lastUpdateTime */,
+            false /* areAttributionsUserVisible */,
+            emptyMap() /* attributionTagsToLabels */,
+            ContextCompat.DEVICE_ID_DEFAULT
+        )
+
+    companion object {
+        private const val OS_PKG = "android"
+        private const val PACKAGE_NAME = "com.example.appperm"
+        private const val UID = 10001
+        private const val USER_FIXED_SENSITIVE_WHEN_DENIED =
+            FLAG_PERMISSION_USER_FIXED or FLAG_PERMISSION_USER_SENSITIVE_WHEN_DENIED
+
+        private val CAMERA_PERM_INFOS = mapOf(CAMERA to permInfo(CAMERA, CAMERA_GROUP, null))
+        private val LOCATION_PERM_INFOS =
+            mapOf(
+                ACCESS_FINE_LOCATION to
+                    permInfo(ACCESS_FINE_LOCATION, LOCATION_GROUP, ACCESS_BACKGROUND_LOCATION),
+                ACCESS_BACKGROUND_LOCATION to
+                    permInfo(ACCESS_BACKGROUND_LOCATION, LOCATION_GROUP, null)
+            )
+        private val DENIED_LOCATION =
+            mapOf(
+                ACCESS_FINE_LOCATION to PermState(0, false),
+                ACCESS_BACKGROUND_LOCATION to PermState(0, false)
+            )
+
+        private fun permInfo(name: String, group: String, backgroundPermission: String?) =
+            LightPermInfo(
+                name,
+                OS_PKG,
+                group,
+                backgroundPermission,
+                PermissionInfo.PROTECTION_DANGEROUS,
+                0 /* protectionFlags */,
+                0 /* flags */
+            )
+    }
+}
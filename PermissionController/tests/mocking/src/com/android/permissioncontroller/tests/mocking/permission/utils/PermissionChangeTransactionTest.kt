@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.mocking.permission.utils
+
+import android.Manifest
+import android.app.ActivityManager
+import android.app.Application
+import android.content.Context
+import android.content.pm.PackageManager
+import android.content.pm.PackageManager.FLAG_PERMISSION_ONE_TIME
+import android.content.pm.PackageManager.FLAG_PERMISSION_USER_FIXED
+import android.content.pm.PackageManager.FLAG_PERMISSION_USER_SET
+import android.os.UserHandle
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.permissioncontroller.permission.utils.PermissionChangeTransaction
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.ArgumentMatchers.anyInt
+import org.mockito.ArgumentMatchers.anyString
+import org.mockito.ArgumentMatchers.eq
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.never
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.`when`
+
+/** Unit tests for [PermissionChangeTransaction]. */
+@RunWith(AndroidJUnit4::class)
+class PermissionChangeTransactionTest {
+    private val app = mock(Application::class.java)
+    private val context = mock(Context::class.java)
+    private val packageManager = mock(PackageManager::class.java)
+    private val activityManager = mock(ActivityManager::class.java)
+
+    private val transaction = PermissionChangeTransaction(app)
+
+    private var flagUpdateCountBefore = 0L
+    private var mergedFlagUpdateCountBefore = 0L
+    private var killCountBefore = 0L
+    private var skippedKillCountBefore = 0L
+
+    @Before
+    fun setUp() {
+        `when`(context.packageManager).thenReturn(packageManager)
+        `when`(app.getSystemService(ActivityManager::class.java)).thenReturn(activityManager)
+
+        flagUpdateCountBefore = PermissionChangeTransaction.flagUpdateCount.get()
+        mergedFlagUpdateCountBefore = PermissionChangeTransaction.mergedFlagUpdateCount.get()
+        killCountBefore = PermissionChangeTransaction.killCount.get()
+        skippedKillCountBefore = PermissionChangeTransaction.skippedKillCount.get()
+    }
+
+    @Test
+    fun updatePermissionFlags_samePermission_mergesUpdates() {
+        transaction.updateFlags(PERM_NAME, FLAG_PERMISSION_USER_SET or FLAG_PERMISSION_ONE_TIME, 0)
+        transaction.updateFlags(PERM_NAME, FLAG_PERMISSION_USER_SET, FLAG_PERMISSION_USER_SET)
+        transaction.updateFlags(PERM_NAME, FLAG_PERMISSION_USER_FIXED, FLAG_PERMISSION_USER_FIXED)
+
+        transaction.commit()
+
+        // Later updates take precedence for the flags they update
+        verify(packageManager)
+            .updatePermissionFlags(
+                PERM_NAME,
+                PACKAGE_NAME,
+                FLAG_PERMISSION_USER_SET or FLAG_PERMISSION_ONE_TIME or FLAG_PERMISSION_USER_FIXED,
+                FLAG_PERMISSION_USER_SET or FLAG_PERMISSION_USER_FIXED,
+                USER
+            )
+        verify(packageManager, times(1))
+            .updatePermissionFlags(anyString(), anyString(), anyInt(), anyInt(), eq(USER))
+        assertThat(flagUpdateCountDelta()).isEqualTo(1)
+        assertThat(mergedFlagUpdateCountDelta()).isEqualTo(2)
+    }
+
+    @Test
+    fun updatePermissionFlags_differentPermissions_doesNotMergeUpdates() {
+        transaction.updateFlags(PERM_NAME, FLAG_PERMISSION_USER_SET, FLAG_PERMISSION_USER_SET)
+        transaction.updateFlags(PERM_2_NAME, FLAG_PERMISSION_USER_SET, FLAG_PERMISSION_USER_SET)
+
+        transaction.commit()
+
+        verify(packageManager)
+            .updatePermissionFlags(
+                PERM_NAME,
+                PACKAGE_NAME,
+                FLAG_PERMISSION_USER_SET,
+                FLAG_PERMISSION_USER_SET,
+                USER
+            )
+        verify(packageManager)
+            .updatePermissionFlags(
+                PERM_2_NAME,
+                PACKAGE_NAME,
+                FLAG_PERMISSION_USER_SET,
+                FLAG_PERMISSION_USER_SET,
+                USER
+            )
+        assertThat(flagUpdateCountDelta()).isEqualTo(2)
+        assertThat(mergedFlagUpdateCountDelta()).isEqualTo(0)
+    }
+
+    @Test
+    fun updatePermissionFlags_beforeCommit_doesNotUpdateFlags() {
+        transaction.updateFlags(PERM_NAME, FLAG_PERMISSION_USER_SET, FLAG_PERMISSION_USER_SET)
+
+        verify(packageManager, never())
+            .updatePermissionFlags(anyString(), anyString(), anyInt(), anyInt(), eq(USER))
+        assertThat(flagUpdateCountDelta()).isEqualTo(0)
+    }
+
+    @Test
+    fun killUid_sameUid_killsOnce() {
+        transaction.killUid(UID, "first reason")
+        transaction.killUid(UID, "second reason")
+        transaction.killUid(UID_2, "other reason")
+
+        transaction.commit()
+
+        verify(activityManager).killUid(UID, "first reason")
+        verify(activityManager).killUid(UID_2, "other reason")
+        verify(activityManager, times(2)).killUid(anyInt(), anyString())
+        assertThat(killCountDelta()).isEqualTo(2)
+        assertThat(skippedKillCountDelta()).isEqualTo(1)
+    }
+
+    @Test
+    fun commit_twice_doesNotApplyChangesAgain() {
+        transaction.updateFlags(PERM_NAME, FLAG_PERMISSION_USER_SET, FLAG_PERMISSION_USER_SET)
+        transaction.killUid(UID, "reason")
+        transaction.commit()
+
+        transaction.commit()
+
+        verify(packageManager, times(1))
+            .updatePermissionFlags(anyString(), anyString(), anyInt(), anyInt(), eq(USER))
+        verify(activityManager, times(1)).killUid(anyInt(), anyString())
+        assertThat(flagUpdateCountDelta()).isEqualTo(1)
+        assertThat(killCountDelta()).isEqualTo(1)
+    }
+
+    private fun PermissionChangeTransaction.updateFlags(
+        permissionName: String,
+        flagMask: Int,
+        flagValues: Int
+    ) = updatePermissionFlags(context, permissionName, PACKAGE_NAME, flagMask, flagValues, USER)
+
+    private fun flagUpdateCountDelta() =
+        PermissionChangeTransaction.flagUpdateCount.get() - flagUpdateCountBefore
+
+    private fun mergedFlagUpdateCountDelta() =
+        PermissionChangeTransaction.mergedFlagUpdateCount.get() - mergedFlagUpdateCountBefore
+
+    private fun killCountDelta() = PermissionChangeTransaction.killCount.get() - killCountBefore
+
+    private fun skippedKillCountDelta() =
+        PermissionChangeTransaction.skippedKillCount.get() - skippedKillCountBefore
+
+    companion object {
+        private const val PERM_NAME = Manifest.permission.ACCESS_FINE_LOCATION
+        private const val PERM_2_NAME = Manifest.permission.ACCESS_COARSE_LOCATION
+        private const val PACKAGE_NAME = "android.permission.cts.testapp"
+        private const val UID = 10001
+        private const val UID_2 = 10002
+        private val USER = UserHandle.getUserHandleForUid(UID)
+    }
+}
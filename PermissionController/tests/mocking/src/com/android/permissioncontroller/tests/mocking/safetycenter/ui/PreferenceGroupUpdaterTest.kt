@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permissioncontroller.tests.mocking.safetycenter.ui
+
+import android.content.Context
+import android.content.Intent
+import androidx.preference.Preference
+import androidx.preference.PreferenceGroup
+import androidx.preference.PreferenceManager
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import com.android.permissioncontroller.safetycenter.ui.ComparablePreference
+import com.android.permissioncontroller.safetycenter.ui.PreferenceGroupUpdater
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** Unit tests for [PreferenceGroupUpdater]. */
+@RunWith(AndroidJUnit4::class)
+class PreferenceGroupUpdaterTest {
+    private val context: Context = ApplicationProvider.getApplicationContext()
+    private val group: PreferenceGroup =
+        PreferenceManager(context).createPreferenceScreen(context)
+
+    @Test
+    fun setPreferences_emptyGroup_addsPreferencesInOrder() {
+        val preferences = listOf(preference("a"), preference("b"), preference("c"))
+
+        val result = PreferenceGroupUpdater.setPreferences(group, preferences)
+
+        assertThat(result).containsExactlyElementsIn(preferences).inOrder()
+        assertThat(groupPreferences()).containsExactlyElementsIn(preferences).inOrder()
+    }
+
+    @Test
+    fun setPreferences_unchangedPreferences_keepsPreferences() {
+        val oldPreferences = setInitialPreferences("a", "b", "c")
+
+        val result =
+            PreferenceGroupUpdater.setPreferences(
+                group,
+                listOf(preference("a"), preference("b"), preference("c"))
+            )
+
+        assertThat(result).containsExactlyElementsIn(oldPreferences).inOrder()
+        assertThat(groupPreferences()).containsExactlyElementsIn(oldPreferences).inOrder()
+    }
+
+    @Test
+    fun setPreferences_insertedPreference_keepsOtherPreferences() {
+        val (a, c) = setInitialPreferences("a", "c")
+        val b = preference("b")
+
+        val result =
+            PreferenceGroupUpdater.setPreferences(
+                group,
+                listOf(preference("a"), b, preference("c"))
+            )
+
+        assertThat(result).containsExactly(a, b, c).inOrder()
+        assertThat(groupPreferences()).containsExactly(a, b, c).inOrder()
+    }
+
+    @Test
+    fun setPreferences_removedPreference_keepsOtherPreferences() {
+        val (a, b, c) = setInitialPreferences("a", "b", "c")
+
+        val result =
+            PreferenceGroupUpdater.setPreferences(group, listOf(preference("a"), preference("c")))
+
+        assertThat(result).containsExactly(a, c).inOrder()
+        assertThat(b.parent).isNull()
+    }
+
+    @Test
+    fun setPreferences_reorderedPreferences_keepsUnchangedPrefixAndSuffix() {
+        val (a, _, _, d) = setInitialPreferences("a", "b", "c", "d")
+        val newB = preference("b")
+        val newC = preference("c")
+
+        val result =
+            PreferenceGroupUpdater.setPreferences(
+                group,
+                listOf(preference("a"), newC, newB, preference("d"))
+            )
+
+        assertThat(result).containsExactly(a, newC, newB, d).inOrder()
+        assertThat(result.map { it.order }).containsExactly(0, 1, 2, 3).inOrder()
+    }
+
+    @Test
+    fun setPreferences_changedContents_replacesPreference() {
+        val (a, _, c) = setInitialPreferences("a", "b", "c")
+        val newB = preference("b", contents = "changed")
+
+        val result =
+            PreferenceGroupUpdater.setPreferences(
+                group,
+                listOf(preference("a"), newB, preference("c"))
+            )
+
+        assertThat(result).containsExactly(a, newB, c).inOrder()
+    }
+
+    @Test
+    fun setPreferences_notComparablePreferences_replacesPreferences() {
+        val oldPreference = Preference(context)
+        PreferenceGroupUpdater.setPreferences(group, listOf(oldPreference))
+        val newPreference = Preference(context)
+
+        val result = PreferenceGroupUpdater.setPreferences(group, listOf(newPreference))
+
+        assertThat(result).containsExactly(newPreference)
+    }
+
+    @Test
+    fun setPreferences_keptPreference_takesVisibilityAndCallbacksOfNewPreference() {
+        val (a) = setInitialPreferences("a")
+        val newA = preference("a")
+        val clickListener = Preference.OnPreferenceClickListener { true }
+        val intent = Intent(Intent.ACTION_VIEW)
+        newA.isVisible = false
+        newA.onPreferenceClickListener = clickListener
+        newA.intent = intent
+
+        PreferenceGroupUpdater.setPreferences(group, listOf(newA))
+
+        assertThat(a.isVisible).isFalse()
+        assertThat(a.onPreferenceClickListener).isSameInstanceAs(clickListener)
+        assertThat(a.intent).isSameInstanceAs(intent)
+        assertThat(a.callbacksTakenFrom).isSameInstanceAs(newA)
+    }
+
+    private fun setInitialPreferences(vararg itemIds: String): List<TestPreference> {
+        val preferences = itemIds.map { preference(it) }
+        PreferenceGroupUpdater.setPreferences(group, preferences)
+        return preferences
+    }
+
+    private fun groupPreferences(): List<Preference> =
+        List(group.preferenceCount) { group.getPreference(it) }
+
+    private fun preference(itemId: String, contents: String = "contents"): TestPreference =
+        TestPreference(context, itemId, contents)
+
+    private class TestPreference(
+        context: Context,
+        private val itemId: String,
+        private val contents: String
+    ) : Preference(context), ComparablePreference {
+        var callbacksTakenFrom: Preference? = null
+
+        override fun isSameItem(preference: Preference): Boolean =
+            preference is TestPreference && itemId == preference.itemId
+
+        override fun hasSameContents(preference: Preference): Boolean =
+            preference is TestPreference &&
+                itemId == preference.itemId &&
+                contents == preference.contents
+
+        override fun takeCallbacksFrom(preference: Preference) {
+            callbacksTakenFrom = preference
+        }
+    }
+}
@@ -262,6 +262,9 @@ public final class RoleManager {
     private RoleControllerManager mRoleControllerManager;
     private final Object mRoleControllerManagerLock = new Object();
 
+    @Nullable
+    private final RoleQueryCache mQueryCache;
+
     /**
      * Create a new instance of this class.
      *
@@ -273,6 +276,19 @@ public final class RoleManager {
     public RoleManager(@NonNull Context context, @NonNull IRoleManager service) {
         mContext = context;
         mService = service;
+        mQueryCache = SdkLevel.isAtLeastU() ? new RoleQueryCache(service) : null;
+    }
+
+    /**
+     * Invalidate the role queries cached by all instances of this class in all processes. Must be
+     * called whenever role holders or available roles change.
+     *
+     * @hide
+     */
+    public static void invalidateCache() {
+        if (SdkLevel.isAtLeastU()) {
+            RoleQueryCache.invalidate();
+        }
     }
 
     /**
@@ -308,6 +324,9 @@ public final class RoleManager {
     public boolean isRoleAvailable(@NonNull String roleName) {
         Preconditions.checkStringNotEmpty(roleName, "roleName cannot be null or empty");
         UserHandle user = getContextUserIfAppropriate();
+        if (mQueryCache != null) {
+            return mQueryCache.isRoleAvailable(roleName, user.getIdentifier());
+        }
         try {
             return mService.isRoleAvailableAsUser(roleName, user.getIdentifier());
         } catch (RemoteException e) {
@@ -326,6 +345,10 @@ public final class RoleManager {
     public boolean isRoleHeld(@NonNull String roleName) {
         Preconditions.checkStringNotEmpty(roleName, "roleName cannot be null or empty");
         UserHandle user = getContextUserIfAppropriate();
+        if (mQueryCache != null) {
+            return mQueryCache.isRoleHeld(roleName, mContext.getPackageName(),
+                    user.getIdentifier());
+        }
         try {
             return mService.isRoleHeldAsUser(roleName, mContext.getPackageName(),
                     user.getIdentifier());
@@ -1068,11 +1091,15 @@ public final class RoleManager {
         }
 
         @Override
-        public void onRoleHoldersChanged(@NonNull String roleName, @UserIdInt int userId) {
+        public void onRoleHoldersChanged(@NonNull List<String> roleNames, @UserIdInt int userId) {
             final long token = Binder.clearCallingIdentity();
             try {
-                mExecutor.execute(() ->
-                        mListener.onRoleHoldersChanged(roleName, UserHandle.of(userId)));
+                UserHandle user = UserHandle.of(userId);
+                int roleNamesSize = roleNames.size();
+                for (int i = 0; i < roleNamesSize; i++) {
+                    String roleName = roleNames.get(i);
+                    mExecutor.execute(() -> mListener.onRoleHoldersChanged(roleName, user));
+                }
             } finally {
                 Binder.restoreCallingIdentity(token);
             }
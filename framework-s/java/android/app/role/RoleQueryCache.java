@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.app.role;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.annotation.UserIdInt;
+import android.os.Build;
+import android.os.IpcDataCache;
+import android.os.RemoteException;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.Objects;
+
+/**
+ * In-process caches for the results of {@link IRoleManager} queries.
+ * <p>
+ * Only queries that the service answers without checking a permission of the caller are cached,
+ * since a cached result is shared by all callers in the process.
+ * <p>
+ * All caches share a single system-wide nonce, which {@code RoleService} bumps through
+ * {@link #invalidate()} whenever role holders or available roles change. Queries are answered
+ * in-process until then.
+ */
+@RequiresApi(Build.VERSION_CODES.UPSIDE_DOWN_CAKE)
+final class RoleQueryCache {
+
+    private static final String CACHE_API = "getRoleState";
+
+    private static final int MAX_ENTRIES = 32;
+
+    @NonNull
+    private final IpcDataCache<RoleQuery, Boolean> mRoleAvailableCache;
+
+    @NonNull
+    private final IpcDataCache<RoleQuery, Boolean> mRoleHeldCache;
+
+    RoleQueryCache(@NonNull IRoleManager service) {
+        mRoleAvailableCache = new IpcDataCache<>(MAX_ENTRIES, IpcDataCache.MODULE_SYSTEM,
+                CACHE_API, "isRoleAvailable", new IpcDataCache.QueryHandler<>() {
+                    @Override
+                    public Boolean apply(@NonNull RoleQuery query) {
+                        try {
+                            return service.isRoleAvailableAsUser(query.mRoleName, query.mUserId);
+                        } catch (RemoteException e) {
+                            throw e.rethrowFromSystemServer();
+                        }
+                    }
+                });
+        mRoleHeldCache = new IpcDataCache<>(MAX_ENTRIES, IpcDataCache.MODULE_SYSTEM, CACHE_API,
+                "isRoleHeld", new IpcDataCache.QueryHandler<>() {
+                    @Override
+                    public Boolean apply(@NonNull RoleQuery query) {
+                        try {
+                            return service.isRoleHeldAsUser(query.mRoleName, query.mPackageName,
+                                    query.mUserId);
+                        } catch (RemoteException e) {
+                            throw e.rethrowFromSystemServer();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Invalidate the cached role queries in all processes.
+     */
+    static void invalidate() {
+        IpcDataCache.invalidateCache(IpcDataCache.MODULE_SYSTEM, CACHE_API);
+    }
+
+    /**
+     * @see IRoleManager#isRoleAvailableAsUser(String, int)
+     */
+    boolean isRoleAvailable(@NonNull String roleName, @UserIdInt int userId) {
+        return mRoleAvailableCache.query(new RoleQuery(roleName, null, userId));
+    }
+
+    /**
+     * @see IRoleManager#isRoleHeldAsUser(String, String, int)
+     */
+    boolean isRoleHeld(@NonNull String roleName, @NonNull String packageName,
+            @UserIdInt int userId) {
+        return mRoleHeldCache.query(new RoleQuery(roleName, packageName, userId));
+    }
+
+    private static final class RoleQuery {
+
+        @NonNull
+        private final String mRoleName;
+
+        @Nullable
+        private final String mPackageName;
+
+        @UserIdInt
+        private final int mUserId;
+
+        RoleQuery(@NonNull String roleName, @Nullable String packageName,
+                @UserIdInt int userId) {
+            mRoleName = roleName;
+            mPackageName = packageName;
+            mUserId = userId;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object object) {
+            if (this == object) {
+                return true;
+            }
+            if (!(object instanceof RoleQuery)) {
+                return false;
+            }
+            RoleQuery other = (RoleQuery) object;
+            return mUserId == other.mUserId && mRoleName.equals(other.mRoleName)
+                    && Objects.equals(mPackageName, other.mPackageName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mRoleName, mPackageName, mUserId);
+        }
+
+        @Override
+        public String toString() {
+            return "RoleQuery{roleName=" + mRoleName + ", packageName=" + mPackageName
+                    + ", userId=" + mUserId + "}";
+        }
+    }
+}
@@ -211,6 +211,12 @@ public final class SafetyCenterData implements Parcelable {
                 && areKnownExtrasContentsEqual(mExtras, that.mExtras);
     }
 
+    /** Returns whether the extras known to {@link #equals} are equal. */
+    static boolean areKnownExtrasEqual(
+            @NonNull SafetyCenterData left, @NonNull SafetyCenterData right) {
+        return areKnownExtrasContentsEqual(left.mExtras, right.mExtras);
+    }
+
     /** We're only comparing the bundle data that we know of. */
     private static boolean areKnownExtrasContentsEqual(
             @NonNull Bundle left, @NonNull Bundle right) {
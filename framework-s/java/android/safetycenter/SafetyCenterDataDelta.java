@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.safetycenter;
+
+import static android.os.Build.VERSION_CODES.UPSIDE_DOWN_CAKE;
+
+import static java.util.Objects.requireNonNull;
+
+import android.annotation.NonNull;
+import android.annotation.Nullable;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * The changes between two {@link SafetyCenterData} sent to the same listener.
+ *
+ * <p>Issues, dismissed issues and entries or groups are sent as the ordered list of their ids,
+ * along with the items that were added or updated. Removed items are simply not listed anymore.
+ * The status, static entry groups and extras are only sent when they changed.
+ *
+ * <p>Each delta has a sequence number, and applies to the data of the delta with its base sequence
+ * number. A delta without a base sequence number is a full snapshot.
+ *
+ * @hide
+ */
+@RequiresApi(UPSIDE_DOWN_CAKE)
+public final class SafetyCenterDataDelta implements Parcelable {
+
+    /** The base sequence number of snapshots, which don't apply to any previous data. */
+    public static final long NO_SEQUENCE_NUMBER = -1;
+
+    @NonNull
+    public static final Creator<SafetyCenterDataDelta> CREATOR =
+            new Creator<SafetyCenterDataDelta>() {
+                @Override
+                public SafetyCenterDataDelta createFromParcel(Parcel in) {
+                    long baseSequenceNumber = in.readLong();
+                    long sequenceNumber = in.readLong();
+                    SafetyCenterStatus status = in.readTypedObject(SafetyCenterStatus.CREATOR);
+                    ListDelta<SafetyCenterIssue> issues =
+                            ListDelta.readFromParcel(in, SafetyCenterIssue.CREATOR);
+                    ListDelta<SafetyCenterEntryOrGroup> entriesOrGroups =
+                            ListDelta.readFromParcel(in, SafetyCenterEntryOrGroup.CREATOR);
+                    List<SafetyCenterStaticEntryGroup> staticEntryGroups =
+                            in.readInt() != 0
+                                    ? in.createTypedArrayList(SafetyCenterStaticEntryGroup.CREATOR)
+                                    : null;
+                    ListDelta<SafetyCenterIssue> dismissedIssues =
+                            ListDelta.readFromParcel(in, SafetyCenterIssue.CREATOR);
+                    Bundle extras = in.readBundle(getClass().getClassLoader());
+                    return new SafetyCenterDataDelta(
+                            baseSequenceNumber,
+                            sequenceNumber,
+                            status,
+                            issues,
+                            entriesOrGroups,
+                            staticEntryGroups,
+                            dismissedIssues,
+                            extras);
+                }
+
+                @Override
+                public SafetyCenterDataDelta[] newArray(int size) {
+                    return new SafetyCenterDataDelta[size];
+                }
+            };
+
+    private final long mBaseSequenceNumber;
+    private final long mSequenceNumber;
+    @Nullable private final SafetyCenterStatus mStatus;
+    @NonNull private final ListDelta<SafetyCenterIssue> mIssues;
+    @NonNull private final ListDelta<SafetyCenterEntryOrGroup> mEntriesOrGroups;
+    @Nullable private final List<SafetyCenterStaticEntryGroup> mStaticEntryGroups;
+    @NonNull private final ListDelta<SafetyCenterIssue> mDismissedIssues;
+    @Nullable private final Bundle mExtras;
+
+    private SafetyCenterDataDelta(
+            long baseSequenceNumber,
+            long sequenceNumber,
+            @Nullable SafetyCenterStatus status,
+            @NonNull ListDelta<SafetyCenterIssue> issues,
+            @NonNull ListDelta<SafetyCenterEntryOrGroup> entriesOrGroups,
+            @Nullable List<SafetyCenterStaticEntryGroup> staticEntryGroups,
+            @NonNull ListDelta<SafetyCenterIssue> dismissedIssues,
+            @Nullable Bundle extras) {
+        mBaseSequenceNumber = baseSequenceNumber;
+        mSequenceNumber = sequenceNumber;
+        mStatus = status;
+        mIssues = issues;
+        mEntriesOrGroups = entriesOrGroups;
+        mStaticEntryGroups = staticEntryGroups;
+        mDismissedIssues = dismissedIssues;
+        mExtras = extras;
+    }
+
+    /** Creates a snapshot of the given {@link SafetyCenterData}. */
+    @NonNull
+    public static SafetyCenterDataDelta snapshot(
+            @NonNull SafetyCenterData data, long sequenceNumber) {
+        return new SafetyCenterDataDelta(
+                NO_SEQUENCE_NUMBER,
+                sequenceNumber,
+                data.getStatus(),
+                ListDelta.full(data.getIssues()),
+                ListDelta.full(data.getEntriesOrGroups()),
+                data.getStaticEntryGroups(),
+                ListDelta.full(data.getDismissedIssues()),
+                data.getExtras());
+    }
+
+    /**
+     * Creates the delta from the {@code base} {@link SafetyCenterData} with the given {@code
+     * baseSequenceNumber} to the {@code next} {@link SafetyCenterData}.
+     */
+    @NonNull
+    public static SafetyCenterDataDelta between(
+            @NonNull SafetyCenterData base,
+            long baseSequenceNumber,
+            @NonNull SafetyCenterData next,
+            long sequenceNumber) {
+        return new SafetyCenterDataDelta(
+                baseSequenceNumber,
+                sequenceNumber,
+                Objects.equals(base.getStatus(), next.getStatus()) ? null : next.getStatus(),
+                ListDelta.between(
+                        base.getIssues(), next.getIssues(), SafetyCenterIssue::getId),
+                ListDelta.between(
+                        base.getEntriesOrGroups(),
+                        next.getEntriesOrGroups(),
+                        SafetyCenterDataDelta::getEntryOrGroupId),
+                Objects.equals(base.getStaticEntryGroups(), next.getStaticEntryGroups())
+                        ? null
+                        : next.getStaticEntryGroups(),
+                ListDelta.between(
+                        base.getDismissedIssues(),
+                        next.getDismissedIssues(),
+                        SafetyCenterIssue::getId),
+                SafetyCenterData.areKnownExtrasEqual(base, next) ? null : next.getExtras());
+    }
+
+    /** Returns whether this delta is a snapshot, which doesn't apply to any previous data. */
+    public boolean isSnapshot() {
+        return mBaseSequenceNumber == NO_SEQUENCE_NUMBER;
+    }
+
+    /** Returns the sequence number of the data this delta applies to. */
+    public long getBaseSequenceNumber() {
+        return mBaseSequenceNumber;
+    }
+
+    /** Returns the sequence number of the data resulting from this delta. */
+    public long getSequenceNumber() {
+        return mSequenceNumber;
+    }
+
+    /**
+     * Applies this delta to the {@link SafetyCenterData} with the base sequence number, or to
+     * {@code null} if this delta is a snapshot.
+     *
+     * @throws IllegalArgumentException if this delta doesn't apply to the given data
+     */
+    @NonNull
+    public SafetyCenterData applyTo(@Nullable SafetyCenterData base) {
+        if (base == null && !isSnapshot()) {
+            throw new IllegalArgumentException("Cannot apply a delta without base data");
+        }
+        SafetyCenterStatus status = mStatus != null ? mStatus : requireNonNull(base).getStatus();
+        SafetyCenterData.Builder builder = new SafetyCenterData.Builder(status);
+
+        List<SafetyCenterIssue> issues =
+                mIssues.applyTo(base != null ? base.getIssues() : null, SafetyCenterIssue::getId);
+        for (int i = 0; i < issues.size(); i++) {
+            builder.addIssue(issues.get(i));
+        }
+        List<SafetyCenterEntryOrGroup> entriesOrGroups =
+                mEntriesOrGroups.applyTo(
+                        base != null ? base.getEntriesOrGroups() : null,
+                        SafetyCenterDataDelta::getEntryOrGroupId);
+        for (int i = 0; i < entriesOrGroups.size(); i++) {
+            builder.addEntryOrGroup(entriesOrGroups.get(i));
+        }
+        List<SafetyCenterStaticEntryGroup> staticEntryGroups =
+                mStaticEntryGroups != null
+                        ? mStaticEntryGroups
+                        : requireNonNull(base).getStaticEntryGroups();
+        for (int i = 0; i < staticEntryGroups.size(); i++) {
+            builder.addStaticEntryGroup(staticEntryGroups.get(i));
+        }
+        List<SafetyCenterIssue> dismissedIssues =
+                mDismissedIssues.applyTo(
+                        base != null ? base.getDismissedIssues() : null,
+                        SafetyCenterIssue::getId);
+        for (int i = 0; i < dismissedIssues.size(); i++) {
+            builder.addDismissedIssue(dismissedIssues.get(i));
+        }
+        Bundle extras = mExtras != null ? mExtras : requireNonNull(base).getExtras();
+        if (!extras.isEmpty()) {
+            builder.setExtras(extras);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        return "SafetyCenterDataDelta{"
+                + "mBaseSequenceNumber="
+                + mBaseSequenceNumber
+                + ", mSequenceNumber="
+                + mSequenceNumber
+                + ", mStatus="
+                + mStatus
+                + ", mIssues="
+                + mIssues
+                + ", mEntriesOrGroups="
+                + mEntriesOrGroups
+                + ", mStaticEntryGroups="
+                + mStaticEntryGroups
+                + ", mDismissedIssues="
+                + mDismissedIssues
+                + ", mExtras="
+                + (mExtras != null ? "(changed)" : "(unchanged)")
+                + '}';
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(@NonNull Parcel dest, int flags) {
+        dest.writeLong(mBaseSequenceNumber);
+        dest.writeLong(mSequenceNumber);
+        dest.writeTypedObject(mStatus, flags);
+        mIssues.writeToParcel(dest);
+        mEntriesOrGroups.writeToParcel(dest);
+        dest.writeInt(mStaticEntryGroups != null ? 1 : 0);
+        if (mStaticEntryGroups != null) {
+            dest.writeTypedList(mStaticEntryGroups);
+        }
+        mDismissedIssues.writeToParcel(dest);
+        dest.writeBundle(mExtras);
+    }
+
+    @NonNull
+    private static String getEntryOrGroupId(@NonNull SafetyCenterEntryOrGroup entryOrGroup) {
+        SafetyCenterEntry entry = entryOrGroup.getEntry();
+        if (entry != null) {
+            return entry.getId();
+        }
+        return requireNonNull(entryOrGroup.getEntryGroup()).getId();
+    }
+
+    /**
+     * The changes between two lists of items with ids.
+     *
+     * <p>If the ids are {@code null}, the changed items are the whole new list, e.g. because the
+     * ids of the new list aren't unique.
+     */
+    private static final class ListDelta<T extends Parcelable> {
+
+        @Nullable private final List<String> mIds;
+        @NonNull private final List<T> mChangedItems;
+
+        private ListDelta(@Nullable List<String> ids, @NonNull List<T> changedItems) {
+            mIds = ids;
+            mChangedItems = changedItems;
+        }
+
+        @NonNull
+        static <T extends Parcelable> ListDelta<T> full(@NonNull List<T> items) {
+            return new ListDelta<>(null, items);
+        }
+
+        @NonNull
+        static <T extends Parcelable> ListDelta<T> between(
+                @NonNull List<T> base, @NonNull List<T> next, @NonNull Function<T, String> getId) {
+            ArrayMap<String, T> baseItemsById = new ArrayMap<>(base.size());
+            for (int i = 0; i < base.size(); i++) {
+                T item = base.get(i);
+                baseItemsById.put(getId.apply(item), item);
+            }
+
+            List<String> ids = new ArrayList<>(next.size());
+            ArraySet<String> uniqueIds = new ArraySet<>(next.size());
+            List<T> changedItems = new ArrayList<>();
+            for (int i = 0; i < next.size(); i++) {
+                T item = next.get(i);
+                String id = getId.apply(item);
+                if (!uniqueIds.add(id)) {
+                    return full(next);
+                }
+                ids.add(id);
+                if (!item.equals(baseItemsById.get(id))) {
+                    changedItems.add(item);
+                }
+            }
+            return new ListDelta<>(ids, changedItems);
+        }
+
+        @NonNull
+        static <T extends Parcelable> ListDelta<T> readFromParcel(
+                @NonNull Parcel in, @NonNull Creator<T> creator) {
+            List<String> ids = in.readInt() != 0 ? in.createStringArrayList() : null;
+            List<T> changedItems = in.createTypedArrayList(creator);
+            return new ListDelta<>(ids, changedItems);
+        }
+
+        void writeToParcel(@NonNull Parcel dest) {
+            dest.writeInt(mIds != null ? 1 : 0);
+            if (mIds != null) {
+                dest.writeStringList(mIds);
+            }
+            dest.writeTypedList(mChangedItems);
+        }
+
+        @NonNull
+        List<T> applyTo(@Nullable List<T> base, @NonNull Function<T, String> getId) {
+            if (mIds == null) {
+                return mChangedItems;
+            }
+            if (base == null) {
+                throw new IllegalArgumentException("Cannot apply a list delta without base list");
+            }
+            ArrayMap<String, T> itemsById = new ArrayMap<>(base.size() + mChangedItems.size());
+            for (int i = 0; i < base.size(); i++) {
+                T item = base.get(i);
+                itemsById.put(getId.apply(item), item);
+            }
+            for (int i = 0; i < mChangedItems.size(); i++) {
+                T item = mChangedItems.get(i);
+                itemsById.put(getId.apply(item), item);
+            }
+
+            List<T> items = new ArrayList<>(mIds.size());
+            for (int i = 0; i < mIds.size(); i++) {
+                T item = itemsById.get(mIds.get(i));
+                if (item == null) {
+                    throw new IllegalArgumentException(
+                            "Delta refers to unknown item: " + mIds.get(i));
+                }
+                items.add(item);
+            }
+            return items;
+        }
+
+        @Override
+        public String toString() {
+            return "ListDelta{"
+                    + "mIds="
+                    + mIds
+                    + ", mChangedItems="
+                    + mChangedItems
+                    + '}';
+        }
+    }
+}
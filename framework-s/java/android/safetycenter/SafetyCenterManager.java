@@ -525,10 +525,16 @@ public final class SafetyCenterManager {
         synchronized (mListenersLock) {
             if (mListenersToDelegates.containsKey(listener)) return;
 
-            ListenerDelegate delegate = new ListenerDelegate(executor, listener);
+            int userId = mContext.getUser().getIdentifier();
+            ListenerDelegate delegate = new ListenerDelegate(executor, listener, mService, userId);
             try {
-                mService.addOnSafetyCenterDataChangedListener(
-                        delegate, mContext.getPackageName(), mContext.getUser().getIdentifier());
+                if (SdkLevel.isAtLeastU()) {
+                    mService.addOnSafetyCenterDataChangedListenerForDeltas(
+                            delegate, mContext.getPackageName(), userId);
+                } else {
+                    mService.addOnSafetyCenterDataChangedListener(
+                            delegate, mContext.getPackageName(), userId);
+                }
             } catch (RemoteException e) {
                 throw e.rethrowFromSystemServer();
             }
@@ -660,20 +666,82 @@ public final class SafetyCenterManager {
     private static final class ListenerDelegate extends IOnSafetyCenterDataChangedListener.Stub {
         @NonNull private final Executor mExecutor;
         @NonNull private final OnSafetyCenterDataChangedListener mOriginalListener;
+        @NonNull private final ISafetyCenterManager mService;
+        private final int mUserId;
+
+        private final Object mDeltaLock = new Object();
+
+        /** The data resulting from the last applied delta, if this listener receives deltas. */
+        @GuardedBy("mDeltaLock")
+        @Nullable
+        private SafetyCenterData mLastSafetyCenterData;
+
+        @GuardedBy("mDeltaLock")
+        private long mLastSequenceNumber = SafetyCenterDataDelta.NO_SEQUENCE_NUMBER;
 
         private volatile boolean mRemoved = false;
 
         private ListenerDelegate(
                 @NonNull Executor executor,
-                @NonNull OnSafetyCenterDataChangedListener originalListener) {
+                @NonNull OnSafetyCenterDataChangedListener originalListener,
+                @NonNull ISafetyCenterManager service,
+                int userId) {
             mExecutor = executor;
             mOriginalListener = originalListener;
+            mService = service;
+            mUserId = userId;
         }
 
         @Override
         public void onSafetyCenterDataChanged(@NonNull SafetyCenterData safetyCenterData) {
             requireNonNull(safetyCenterData, "safetyCenterData cannot be null");
+            dispatchSafetyCenterData(safetyCenterData);
+        }
+
+        @Override
+        @RequiresApi(UPSIDE_DOWN_CAKE)
+        public void onSafetyCenterDataDeltaChanged(@NonNull SafetyCenterDataDelta delta) {
+            requireNonNull(delta, "delta cannot be null");
+
+            SafetyCenterData safetyCenterData;
+            synchronized (mDeltaLock) {
+                if (!delta.isSnapshot()
+                        && (mLastSafetyCenterData == null
+                                || delta.getBaseSequenceNumber() != mLastSequenceNumber)) {
+                    requestSnapshotLocked();
+                    return;
+                }
+                try {
+                    safetyCenterData =
+                            delta.applyTo(delta.isSnapshot() ? null : mLastSafetyCenterData);
+                } catch (IllegalArgumentException e) {
+                    requestSnapshotLocked();
+                    return;
+                }
+                mLastSafetyCenterData = safetyCenterData;
+                mLastSequenceNumber = delta.getSequenceNumber();
+            }
+            dispatchSafetyCenterData(safetyCenterData);
+        }
+
+        @GuardedBy("mDeltaLock")
+        private void requestSnapshotLocked() {
+            mLastSafetyCenterData = null;
+            mLastSequenceNumber = SafetyCenterDataDelta.NO_SEQUENCE_NUMBER;
+            if (mRemoved) {
+                return;
+            }
+            final long identity = Binder.clearCallingIdentity();
+            try {
+                mService.resyncOnSafetyCenterDataChangedListener(this, mUserId);
+            } catch (RemoteException e) {
+                throw e.rethrowFromSystemServer();
+            } finally {
+                Binder.restoreCallingIdentity(identity);
+            }
+        }
 
+        private void dispatchSafetyCenterData(@NonNull SafetyCenterData safetyCenterData) {
             final long identity = Binder.clearCallingIdentity();
             try {
                 mExecutor.execute(
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permission.util;
+
+import android.annotation.NonNull;
+import android.annotation.UserIdInt;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.UserHandle;
+
+import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shared singleton registry of the users on the device.
+ * <p>
+ * Checking whether a user exists through {@link android.os.UserManager} is an IPC, which binder
+ * entry points would otherwise make on every call. The registry is populated once, kept current
+ * from user added and removed broadcasts as well as {@link #onUserStarting(int)}, and answers
+ * queries from an immutable snapshot without locking.
+ * <p>
+ * A user being removed is stopped before the broadcast for removing it is sent, so users are
+ * suspect from {@link #onUserStopping(int)} until they are checked again through
+ * {@link android.os.UserManager}.
+ */
+public final class UserRegistry {
+    private static final Object sLock = new Object();
+
+    @GuardedBy("sLock")
+    private static UserRegistry sInstance;
+
+    @NonNull
+    private final Context mContext;
+
+    @NonNull
+    private final Object mLock = new Object();
+
+    /**
+     * The sorted ids of the users on the device. Never modified, but replaced on changes.
+     */
+    @NonNull
+    private volatile int[] mUserIds;
+
+    /**
+     * The sorted ids of the users which are stopping, and might be removed. Never modified, but
+     * replaced on changes.
+     */
+    @NonNull
+    private volatile int[] mSuspectUserIds = new int[0];
+
+    @VisibleForTesting
+    UserRegistry(@NonNull Context context) {
+        mContext = context;
+        mUserIds = toSortedUserIds(UserUtils.getUserHandles(context));
+
+        IntentFilter intentFilter = new IntentFilter();
+        intentFilter.addAction(Intent.ACTION_USER_ADDED);
+        intentFilter.addAction(Intent.ACTION_USER_REMOVED);
+        context.registerReceiverForAllUsers(new BroadcastReceiver() {
+            @Override
+            public void onReceive(@NonNull Context context, @NonNull Intent intent) {
+                UserHandle user = intent.getParcelableExtra(Intent.EXTRA_USER);
+                if (user == null) {
+                    return;
+                }
+                String action = intent.getAction();
+                if (Intent.ACTION_USER_ADDED.equals(action)) {
+                    addUser(user.getIdentifier());
+                } else if (Intent.ACTION_USER_REMOVED.equals(action)) {
+                    removeUser(user.getIdentifier());
+                }
+            }
+        }, intentFilter, null, null);
+    }
+
+    /**
+     * Get the singleton instance of this class, creating it if needed.
+     *
+     * @param context the context to query and listen to the users with
+     *
+     * @return the singleton instance of this class
+     */
+    @NonNull
+    public static UserRegistry getInstance(@NonNull Context context) {
+        synchronized (sLock) {
+            if (sInstance == null) {
+                sInstance = new UserRegistry(context);
+            }
+            return sInstance;
+        }
+    }
+
+    /**
+     * Returns whether a given {@code userId} corresponds to an existing user.
+     * <p>
+     * If the user is unknown, this falls back to querying {@link android.os.UserManager}, as the
+     * user might have been added before the broadcast for it was received. If the user is suspect,
+     * this checks with {@link android.os.UserManager} that it is still alive, as it might be
+     * removed before the broadcast for it was received.
+     */
+    public boolean isUserExistent(@UserIdInt int userId) {
+        if (Arrays.binarySearch(mUserIds, userId) >= 0) {
+            if (Arrays.binarySearch(mSuspectUserIds, userId) < 0) {
+                return true;
+            }
+            if (!isUserAlive(userId)) {
+                removeUser(userId);
+                return false;
+            }
+            // The user is only stopping, it is checked again if it stops again
+            synchronized (mLock) {
+                mSuspectUserIds = removeSorted(mSuspectUserIds, userId);
+            }
+            return true;
+        }
+        if (!isUserAlive(userId)) {
+            return false;
+        }
+        addUser(userId);
+        return true;
+    }
+
+    /**
+     * Records that a user is starting, in case the broadcast for adding it was not received yet.
+     * To be called from {@link com.android.server.SystemService#onUserStarting}.
+     */
+    public void onUserStarting(@UserIdInt int userId) {
+        addUser(userId);
+    }
+
+    /**
+     * Records that a user is stopping, as it might be about to be removed before the broadcast for
+     * removing it is received. To be called from
+     * {@link com.android.server.SystemService#onUserStopping}.
+     */
+    public void onUserStopping(@UserIdInt int userId) {
+        synchronized (mLock) {
+            if (Arrays.binarySearch(mUserIds, userId) >= 0) {
+                mSuspectUserIds = insertSorted(mSuspectUserIds, userId);
+            }
+        }
+    }
+
+    private boolean isUserAlive(@UserIdInt int userId) {
+        return UserUtils.getUserHandles(mContext).contains(UserHandle.of(userId));
+    }
+
+    private void addUser(@UserIdInt int userId) {
+        synchronized (mLock) {
+            mUserIds = insertSorted(mUserIds, userId);
+            mSuspectUserIds = removeSorted(mSuspectUserIds, userId);
+        }
+    }
+
+    private void removeUser(@UserIdInt int userId) {
+        synchronized (mLock) {
+            mUserIds = removeSorted(mUserIds, userId);
+            mSuspectUserIds = removeSorted(mSuspectUserIds, userId);
+        }
+    }
+
+    /**
+     * Returns a copy of the sorted {@code values} with {@code value} inserted, or
+     * {@code values} itself if it already contains {@code value}.
+     */
+    @NonNull
+    @VisibleForTesting
+    static int[] insertSorted(@NonNull int[] values, int value) {
+        int index = Arrays.binarySearch(values, value);
+        if (index >= 0) {
+            return values;
+        }
+        int insertionIndex = -(index + 1);
+        int[] newValues = new int[values.length + 1];
+        System.arraycopy(values, 0, newValues, 0, insertionIndex);
+        newValues[insertionIndex] = value;
+        System.arraycopy(values, insertionIndex, newValues, insertionIndex + 1,
+                values.length - insertionIndex);
+        return newValues;
+    }
+
+    /**
+     * Returns a copy of the sorted {@code values} with {@code value} removed, or {@code values}
+     * itself if it does not contain {@code value}.
+     */
+    @NonNull
+    @VisibleForTesting
+    static int[] removeSorted(@NonNull int[] values, int value) {
+        int index = Arrays.binarySearch(values, value);
+        if (index < 0) {
+            return values;
+        }
+        int[] newValues = new int[values.length - 1];
+        System.arraycopy(values, 0, newValues, 0, index);
+        System.arraycopy(values, index + 1, newValues, index, values.length - index - 1);
+        return newValues;
+    }
+
+    @NonNull
+    private static int[] toSortedUserIds(@NonNull List<UserHandle> users) {
+        int usersSize = users.size();
+        int[] userIds = new int[usersSize];
+        for (int i = 0; i < usersSize; i++) {
+            userIds[i] = users.get(i).getIdentifier();
+        }
+        Arrays.sort(userIds);
+        return userIds;
+    }
+}
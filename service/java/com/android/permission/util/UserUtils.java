@@ -61,9 +61,13 @@ public final class UserUtils {
         }
     }
 
-    /** Returns whether a given {@code userId} corresponds to an existing user. */
+    /**
+     * Returns whether a given {@code userId} corresponds to an existing user.
+     * <p>
+     * This is usually answered by {@link UserRegistry} without an IPC.
+     */
     public static boolean isUserExistent(@UserIdInt int userId, @NonNull Context context) {
-        return getUserHandles(context).contains(UserHandle.of(userId));
+        return UserRegistry.getInstance(context).isUserExistent(userId);
     }
 
     /** Returns all the alive users on the device. */
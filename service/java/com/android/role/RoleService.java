@@ -64,10 +64,10 @@ import com.android.internal.util.dump.DualDumpOutputStream;
 import com.android.modules.utils.build.SdkLevel;
 import com.android.permission.compat.UserHandleCompat;
 import com.android.permission.util.ArrayUtils;
-import com.android.permission.util.CollectionUtils;
 import com.android.permission.util.ForegroundThread;
 import com.android.permission.util.PackageUtils;
 import com.android.permission.util.ThrottledRunnable;
+import com.android.permission.util.UserRegistry;
 import com.android.permission.util.UserUtils;
 import com.android.server.LocalManagerRegistry;
 import com.android.server.SystemService;
@@ -100,6 +100,8 @@ public class RoleService extends SystemService implements RoleUserState.Callback
 
     private static final long GRANT_DEFAULT_ROLES_INTERVAL_MILLIS = 1000;
 
+    private static final long NOTIFY_ROLE_HOLDERS_CHANGED_DELAY_MILLIS = 100;
+
     private static final String[] DEFAULT_APPLICATION_ROLES = {
         RoleManager.ROLE_ASSISTANT,
         RoleManager.ROLE_BROWSER,
@@ -144,6 +146,14 @@ public class RoleService extends SystemService implements RoleUserState.Callback
     @NonNull
     private final Handler mListenerHandler = ForegroundThread.getHandler();
 
+    /**
+     * Maps user id to the names of the roles whose holders changed since its listeners were last
+     * notified.
+     */
+    @GuardedBy("mLock")
+    @NonNull
+    private final SparseArray<ArraySet<String>> mPendingChangedRoleNames = new SparseArray<>();
+
     @GuardedBy("mLock")
     private boolean mBypassingRoleQualification;
 
@@ -252,6 +262,9 @@ public class RoleService extends SystemService implements RoleUserState.Callback
 
     @Override
     public void onUserStarting(@NonNull TargetUser user) {
+        UserRegistry.getInstance(getContext()).onUserStarting(
+                user.getUserHandle().getIdentifier());
+
         if (SdkLevel.isAtLeastV() && Flags.systemServerRoleControllerEnabled()) {
             upgradeLegacyFallbackEnabledRolesIfNeeded(user);
         }
@@ -259,6 +272,12 @@ public class RoleService extends SystemService implements RoleUserState.Callback
         maybeGrantDefaultRolesSync(user.getUserHandle().getIdentifier());
     }
 
+    @Override
+    public void onUserStopping(@NonNull TargetUser user) {
+        UserRegistry.getInstance(getContext()).onUserStopping(
+                user.getUserHandle().getIdentifier());
+    }
+
     private void upgradeLegacyFallbackEnabledRolesIfNeeded(@NonNull TargetUser user) {
         int userId = user.getUserHandle().getIdentifier();
         RoleUserState userState = getOrCreateUserState(userId);
@@ -395,6 +414,7 @@ public class RoleService extends SystemService implements RoleUserState.Callback
         RoleUserState userState;
         synchronized (mLock) {
             mGrantDefaultRolesThrottledRunnables.remove(userId);
+            mPendingChangedRoleNames.remove(userId);
             listeners = mListeners.get(userId);
             mListeners.remove(userId);
             mControllers.remove(userId);
@@ -407,37 +427,65 @@ public class RoleService extends SystemService implements RoleUserState.Callback
         if (userState != null) {
             userState.destroy();
         }
+        RoleManager.invalidateCache();
     }
 
     @Override
     public void onRoleHoldersChanged(@NonNull String roleName, @UserIdInt int userId) {
-        mListenerHandler.post(() -> notifyRoleHoldersChanged(roleName, userId));
+        RoleManager.invalidateCache();
+
+        // Coalesce changes to the same user, e.g. when granting default roles, so that listeners
+        // are called once with all the changed roles, instead of once per change.
+        boolean isNotificationScheduled;
+        synchronized (mLock) {
+            ArraySet<String> pendingRoleNames = mPendingChangedRoleNames.get(userId);
+            isNotificationScheduled = pendingRoleNames != null;
+            if (pendingRoleNames == null) {
+                pendingRoleNames = new ArraySet<>();
+                mPendingChangedRoleNames.put(userId, pendingRoleNames);
+            }
+            pendingRoleNames.add(roleName);
+        }
+        if (!isNotificationScheduled) {
+            mListenerHandler.postDelayed(() -> notifyRoleHoldersChanged(userId),
+                    NOTIFY_ROLE_HOLDERS_CHANGED_DELAY_MILLIS);
+        }
     }
 
     @WorkerThread
-    private void notifyRoleHoldersChanged(@NonNull String roleName, @UserIdInt int userId) {
+    private void notifyRoleHoldersChanged(@UserIdInt int userId) {
+        List<String> roleNames;
+        synchronized (mLock) {
+            ArraySet<String> pendingRoleNames = mPendingChangedRoleNames.get(userId);
+            if (pendingRoleNames == null) {
+                return;
+            }
+            mPendingChangedRoleNames.remove(userId);
+            roleNames = new ArrayList<>(pendingRoleNames);
+        }
+
         RemoteCallbackList<IOnRoleHoldersChangedListener> listeners = getListeners(userId);
         if (listeners != null) {
-            notifyRoleHoldersChangedForListeners(listeners, roleName, userId);
+            notifyRoleHoldersChangedForListeners(listeners, roleNames, userId);
         }
 
         RemoteCallbackList<IOnRoleHoldersChangedListener> allUsersListeners = getListeners(
                 UserHandleCompat.USER_ALL);
         if (allUsersListeners != null) {
-            notifyRoleHoldersChangedForListeners(allUsersListeners, roleName, userId);
+            notifyRoleHoldersChangedForListeners(allUsersListeners, roleNames, userId);
         }
     }
 
     @WorkerThread
     private void notifyRoleHoldersChangedForListeners(
             @NonNull RemoteCallbackList<IOnRoleHoldersChangedListener> listeners,
-            @NonNull String roleName, @UserIdInt int userId) {
+            @NonNull List<String> roleNames, @UserIdInt int userId) {
         int broadcastCount = listeners.beginBroadcast();
         try {
             for (int i = 0; i < broadcastCount; i++) {
                 IOnRoleHoldersChangedListener listener = listeners.getBroadcastItem(i);
                 try {
-                    listener.onRoleHoldersChanged(roleName, userId);
+                    listener.onRoleHoldersChanged(roleNames, userId);
                 } catch (RemoteException e) {
                     Log.e(LOG_TAG, "Error calling OnRoleHoldersChangedListener", e);
                 }
@@ -477,11 +525,7 @@ public class RoleService extends SystemService implements RoleUserState.Callback
             Preconditions.checkStringNotEmpty(roleName, "roleName cannot be null or empty");
             Preconditions.checkStringNotEmpty(packageName, "packageName cannot be null or empty");
 
-            ArraySet<String> roleHolders = getOrCreateUserState(userId).getRoleHolders(roleName);
-            if (roleHolders == null) {
-                return false;
-            }
-            return roleHolders.contains(packageName);
+            return getOrCreateUserState(userId).isRoleHolder(roleName, packageName);
         }
 
         @NonNull
@@ -499,11 +543,14 @@ public class RoleService extends SystemService implements RoleUserState.Callback
 
             Preconditions.checkStringNotEmpty(roleName, "roleName cannot be null or empty");
 
-            ArraySet<String> roleHolders = getOrCreateUserState(userId).getRoleHolders(roleName);
-            if (roleHolders == null) {
+            RoleUserState userState = getOrCreateUserState(userId);
+            int roleHolderCount = userState.getRoleHolderCount(roleName);
+            if (roleHolderCount == 0) {
                 return Collections.emptyList();
             }
-            return new ArrayList<>(roleHolders);
+            List<String> roleHolders = new ArrayList<>(roleHolderCount);
+            userState.addRoleHoldersTo(roleName, roleHolders);
+            return roleHolders;
         }
 
         @Override
@@ -585,12 +632,7 @@ public class RoleService extends SystemService implements RoleUserState.Callback
             Preconditions.checkStringNotEmpty(roleName, "roleName cannot be null or empty");
             Preconditions.checkArgumentIsSupported(DEFAULT_APPLICATION_ROLES, roleName);
 
-            ArraySet<String> roleHolders = getOrCreateUserState(
-                    userId).getRoleHolders(roleName);
-            if (CollectionUtils.isEmpty(roleHolders)) {
-                return null;
-            }
-            return roleHolders.valueAt(0);
+            return getOrCreateUserState(userId).getSingleRoleHolder(roleName);
         }
 
         @Override
@@ -746,6 +788,7 @@ public class RoleService extends SystemService implements RoleUserState.Callback
             Objects.requireNonNull(roleNames, "roleNames cannot be null");
 
             getOrCreateUserState(userId).setRoleNames(roleNames);
+            RoleManager.invalidateCache();
         }
 
         @Override
@@ -829,8 +872,11 @@ public class RoleService extends SystemService implements RoleUserState.Callback
 
             final long identity = Binder.clearCallingIdentity();
             try {
-                return CollectionUtils.firstOrNull(getRoleHoldersAsUser(RoleManager.ROLE_BROWSER,
-                        userId));
+                if (!UserUtils.isUserExistent(userId, getContext())) {
+                    Log.e(LOG_TAG, "user " + userId + " does not exist");
+                    return null;
+                }
+                return getOrCreateUserState(userId).getSingleRoleHolder(RoleManager.ROLE_BROWSER);
             } finally {
                 Binder.restoreCallingIdentity(identity);
             }
@@ -910,8 +956,8 @@ public class RoleService extends SystemService implements RoleUserState.Callback
             final String packageName;
             final long identity = Binder.clearCallingIdentity();
             try {
-                packageName = CollectionUtils.firstOrNull(getRoleHoldersAsUser(RoleManager.ROLE_SMS,
-                        userId));
+                packageName = getOrCreateUserState(userId).getSingleRoleHolder(
+                        RoleManager.ROLE_SMS);
             } finally {
                 Binder.restoreCallingIdentity(identity);
             }
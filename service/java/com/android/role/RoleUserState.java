@@ -31,6 +31,7 @@ import android.util.Log;
 import androidx.annotation.RequiresApi;
 
 import com.android.internal.annotations.GuardedBy;
+import com.android.internal.annotations.VisibleForTesting;
 import com.android.internal.util.dump.DualDumpOutputStream;
 import com.android.modules.utils.BackgroundThread;
 import com.android.permission.util.CollectionUtils;
@@ -57,12 +58,17 @@ class RoleUserState {
 
     private static final long WRITE_DELAY_MILLIS = 200;
 
-    private final RolesPersistence mPersistence = RolesPersistence.createInstance();
+    @NonNull
+    private final RolesPersistence mPersistence;
 
     @UserIdInt
     private final int mUserId;
 
-    @NonNull
+    /**
+     * The platform helper, only {@code null} in tests, which start from a persisted state and so
+     * never need the legacy role state.
+     */
+    @Nullable
     private final RoleServicePlatformHelper mPlatformHelper;
 
     @NonNull
@@ -114,7 +120,30 @@ class RoleUserState {
      */
     public RoleUserState(@UserIdInt int userId, @NonNull RoleServicePlatformHelper platformHelper,
             @NonNull Callback callback, boolean bypassingRoleQualification) {
+        this(userId, RolesPersistence.createInstance(), platformHelper, callback,
+                bypassingRoleQualification);
+    }
+
+    /**
+     * Create a new user state for testing, reading its state from the given persistence, which
+     * must have a persisted state for the user.
+     *
+     * @param userId the user id for this user state
+     * @param persistence the persistence to read and write the state with
+     * @param callback the callback for this user state
+     */
+    @VisibleForTesting
+    @NonNull
+    static RoleUserState createForTesting(@UserIdInt int userId,
+            @NonNull RolesPersistence persistence, @NonNull Callback callback) {
+        return new RoleUserState(userId, persistence, null, callback, false);
+    }
+
+    private RoleUserState(@UserIdInt int userId, @NonNull RolesPersistence persistence,
+            @Nullable RoleServicePlatformHelper platformHelper, @NonNull Callback callback,
+            boolean bypassingRoleQualification) {
         mUserId = userId;
+        mPersistence = persistence;
         mPlatformHelper = platformHelper;
         mCallback = callback;
 
@@ -284,6 +313,76 @@ class RoleUserState {
         }
     }
 
+    /**
+     * Check whether a package holds a role, without copying the role holders.
+     *
+     * @param roleName the name of the role to query for
+     * @param packageName the name of the package to check
+     *
+     * @return whether the package holds the role, {@code false} if the role is not found
+     */
+    public boolean isRoleHolder(@NonNull String roleName, @NonNull String packageName) {
+        synchronized (mLock) {
+            ArraySet<String> packageNames = mRoles.get(roleName);
+            return packageNames != null && packageNames.contains(packageName);
+        }
+    }
+
+    /**
+     * Get the holder of a role that has at most one holder, e.g. a default application role.
+     *
+     * @param roleName the name of the role to query for
+     *
+     * @return the first role holder, or {@code null} if the role has no holders or is not found
+     */
+    @Nullable
+    public String getSingleRoleHolder(@NonNull String roleName) {
+        synchronized (mLock) {
+            ArraySet<String> packageNames = mRoles.get(roleName);
+            if (packageNames == null || packageNames.isEmpty()) {
+                return null;
+            }
+            return packageNames.valueAt(0);
+        }
+    }
+
+    /**
+     * Add the holders of a role to a list, without an intermediate copy.
+     *
+     * @param roleName the name of the role to query for
+     * @param outPackageNames the list to add the role holders to
+     *
+     * @return whether the role was found
+     */
+    public boolean addRoleHoldersTo(@NonNull String roleName,
+            @NonNull List<String> outPackageNames) {
+        synchronized (mLock) {
+            ArraySet<String> packageNames = mRoles.get(roleName);
+            if (packageNames == null) {
+                return false;
+            }
+            int packageNamesSize = packageNames.size();
+            for (int i = 0; i < packageNamesSize; i++) {
+                outPackageNames.add(packageNames.valueAt(i));
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Get the number of holders of a role.
+     *
+     * @param roleName the name of the role to query for
+     *
+     * @return the number of role holders, {@code 0} if the role is not found
+     */
+    public int getRoleHolderCount(@NonNull String roleName) {
+        synchronized (mLock) {
+            ArraySet<String> packageNames = mRoles.get(roleName);
+            return packageNames != null ? packageNames.size() : 0;
+        }
+    }
+
     /**
      * Adds the given role, effectively marking it as {@link #isRoleAvailable available}
      *
@@ -467,7 +566,7 @@ class RoleUserState {
                 roles = roleState.getRoles();
                 fallbackEnabledRoles = roleState.getFallbackEnabledRoles();
             } else {
-                roles = mPlatformHelper.getLegacyRoleState(mUserId);
+                roles = Objects.requireNonNull(mPlatformHelper).getLegacyRoleState(mUserId);
                 fallbackEnabledRoles = roles.keySet();
             }
             mRoles.clear();
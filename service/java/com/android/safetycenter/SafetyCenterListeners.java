@@ -22,6 +22,7 @@ import android.os.RemoteCallbackList;
 import android.os.RemoteException;
 import android.safetycenter.IOnSafetyCenterDataChangedListener;
 import android.safetycenter.SafetyCenterData;
+import android.safetycenter.SafetyCenterDataDelta;
 import android.safetycenter.SafetyCenterErrorDetails;
 import android.util.ArrayMap;
 import android.util.Log;
@@ -120,6 +121,9 @@ final class SafetyCenterListeners {
      * Adds a {@link IOnSafetyCenterDataChangedListener} for the given {@code packageName} and
      * {@code userId}.
      *
+     * <p>If {@code supportsDeltas} is {@code true}, the listener receives {@link
+     * SafetyCenterDataDelta}s instead of full {@link SafetyCenterData}s.
+     *
      * <p>Returns the registered {@link IOnSafetyCenterDataChangedListener} if this operation was
      * successful. Otherwise, returns {@code null}.
      */
@@ -127,14 +131,16 @@ final class SafetyCenterListeners {
     IOnSafetyCenterDataChangedListener addListener(
             IOnSafetyCenterDataChangedListener listener,
             String packageName,
-            @UserIdInt int userId) {
+            @UserIdInt int userId,
+            boolean supportsDeltas) {
         RemoteCallbackList<IOnSafetyCenterDataChangedListener> listeners =
                 mSafetyCenterDataChangedListeners.get(userId);
         if (listeners == null) {
             listeners = new RemoteCallbackList<>();
         }
         OnSafetyCenterDataChangedListenerWrapper listenerWrapper =
-                new OnSafetyCenterDataChangedListenerWrapper(listener, packageName);
+                new OnSafetyCenterDataChangedListenerWrapper(
+                        listener, packageName, supportsDeltas);
         boolean registered = listeners.register(listenerWrapper);
         if (!registered) {
             return null;
@@ -162,6 +168,41 @@ final class SafetyCenterListeners {
         return unregistered;
     }
 
+    /**
+     * Delivers a snapshot of the {@link SafetyCenterData} to a registered {@link
+     * IOnSafetyCenterDataChangedListener} for the given {@code userId}, so that the next {@link
+     * SafetyCenterDataDelta}s apply to it.
+     *
+     * <p>Returns whether the listener was registered.
+     */
+    boolean resyncListener(
+            IOnSafetyCenterDataChangedListener listener,
+            @UserIdInt int userId,
+            UserProfileGroup userProfileGroup) {
+        RemoteCallbackList<IOnSafetyCenterDataChangedListener> listeners =
+                mSafetyCenterDataChangedListeners.get(userId);
+        if (listeners == null) {
+            return false;
+        }
+        IBinder binder = listener.asBinder();
+        int listenerCount = listeners.getRegisteredCallbackCount();
+        for (int i = 0; i < listenerCount; i++) {
+            OnSafetyCenterDataChangedListenerWrapper listenerWrapper =
+                    (OnSafetyCenterDataChangedListenerWrapper)
+                            listeners.getRegisteredCallbackItem(i);
+            if (listenerWrapper.asBinder() != binder) {
+                continue;
+            }
+            listenerWrapper.resetLastSafetyCenterData();
+            deliverDataForListener(
+                    listenerWrapper,
+                    mSafetyCenterDataFactory.assembleSafetyCenterData(
+                            listenerWrapper.getPackageName(), userProfileGroup));
+            return true;
+        }
+        return false;
+    }
+
     /** Clears all {@link IOnSafetyCenterDataChangedListener}s, for the given user. */
     void clearForUser(@UserIdInt int userId) {
         RemoteCallbackList<IOnSafetyCenterDataChangedListener> listeners =
@@ -258,30 +299,70 @@ final class SafetyCenterListeners {
 
     /**
      * A wrapper around an {@link IOnSafetyCenterDataChangedListener} to ensure it is only called
-     * when the {@link SafetyCenterData} actually changes.
+     * when the {@link SafetyCenterData} actually changes, and to send it {@link
+     * SafetyCenterDataDelta}s if it supports them.
      */
     private static final class OnSafetyCenterDataChangedListenerWrapper
             implements IOnSafetyCenterDataChangedListener {
 
         private final IOnSafetyCenterDataChangedListener mDelegate;
         private final String mPackageName;
+        private final boolean mSupportsDeltas;
 
         private final AtomicReference<SafetyCenterData> mLastSafetyCenterData =
                 new AtomicReference<>();
 
+        private long mSequenceNumber = 0;
+
         OnSafetyCenterDataChangedListenerWrapper(
-                IOnSafetyCenterDataChangedListener delegate, String packageName) {
+                IOnSafetyCenterDataChangedListener delegate,
+                String packageName,
+                boolean supportsDeltas) {
             mDelegate = delegate;
             mPackageName = packageName;
+            mSupportsDeltas = supportsDeltas;
         }
 
         @Override
         public void onSafetyCenterDataChanged(SafetyCenterData safetyCenterData)
                 throws RemoteException {
-            if (safetyCenterData.equals(mLastSafetyCenterData.getAndSet(safetyCenterData))) {
+            SafetyCenterData lastSafetyCenterData =
+                    mLastSafetyCenterData.getAndSet(safetyCenterData);
+            if (safetyCenterData.equals(lastSafetyCenterData)) {
+                return;
+            }
+            if (!mSupportsDeltas) {
+                mDelegate.onSafetyCenterDataChanged(safetyCenterData);
                 return;
             }
-            mDelegate.onSafetyCenterDataChanged(safetyCenterData);
+            long baseSequenceNumber = mSequenceNumber;
+            long sequenceNumber = ++mSequenceNumber;
+            SafetyCenterDataDelta delta =
+                    lastSafetyCenterData == null
+                            ? SafetyCenterDataDelta.snapshot(safetyCenterData, sequenceNumber)
+                            : SafetyCenterDataDelta.between(
+                                    lastSafetyCenterData,
+                                    baseSequenceNumber,
+                                    safetyCenterData,
+                                    sequenceNumber);
+            try {
+                mDelegate.onSafetyCenterDataDeltaChanged(delta);
+            } catch (RemoteException e) {
+                // The listener may have missed this delta, so the next one is a snapshot.
+                resetLastSafetyCenterData();
+                throw e;
+            }
+        }
+
+        @Override
+        public void onSafetyCenterDataDeltaChanged(SafetyCenterDataDelta delta)
+                throws RemoteException {
+            mDelegate.onSafetyCenterDataDeltaChanged(delta);
+        }
+
+        /** Makes the next {@link SafetyCenterData} be delivered in full. */
+        void resetLastSafetyCenterData() {
+            mLastSafetyCenterData.set(null);
         }
 
         @Override
@@ -307,6 +388,10 @@ final class SafetyCenterListeners {
                     + ", mPackageName='"
                     + mPackageName
                     + '\''
+                    + ", mSupportsDeltas="
+                    + mSupportsDeltas
+                    + ", mSequenceNumber="
+                    + mSequenceNumber
                     + ", mLastSafetyCenterData="
                     + mLastSafetyCenterData
                     + '}';
@@ -175,7 +175,8 @@ public final class SafetyCenterService extends SystemService {
                         context,
                         mSafetyCenterResourcesApk,
                         mNotificationChannels,
-                        mSafetyCenterDataManager);
+                        mSafetyCenterDataManager,
+                        mApiLock);
         mSafetyCenterBroadcastDispatcher =
                 new SafetyCenterBroadcastDispatcher(
                         context,
@@ -479,21 +480,47 @@ public final class SafetyCenterService extends SystemService {
                 IOnSafetyCenterDataChangedListener listener,
                 String packageName,
                 @UserIdInt int userId) {
+            addOnSafetyCenterDataChangedListener(
+                    "addOnSafetyCenterDataChangedListener",
+                    listener,
+                    packageName,
+                    userId,
+                    /* supportsDeltas= */ false);
+        }
+
+        @Override
+        public void addOnSafetyCenterDataChangedListenerForDeltas(
+                IOnSafetyCenterDataChangedListener listener,
+                String packageName,
+                @UserIdInt int userId) {
+            addOnSafetyCenterDataChangedListener(
+                    "addOnSafetyCenterDataChangedListenerForDeltas",
+                    listener,
+                    packageName,
+                    userId,
+                    /* supportsDeltas= */ SdkLevel.isAtLeastU());
+        }
+
+        private void addOnSafetyCenterDataChangedListener(
+                String methodName,
+                IOnSafetyCenterDataChangedListener listener,
+                String packageName,
+                @UserIdInt int userId,
+                boolean supportsDeltas) {
             requireNonNull(listener);
             requireNonNull(packageName);
-            getContext()
-                    .enforceCallingOrSelfPermission(
-                            MANAGE_SAFETY_CENTER, "addOnSafetyCenterDataChangedListener");
-            if (!enforceCrossUserPermission("addOnSafetyCenterDataChangedListener", userId)
+            getContext().enforceCallingOrSelfPermission(MANAGE_SAFETY_CENTER, methodName);
+            if (!enforceCrossUserPermission(methodName, userId)
                     || !enforcePackage(Binder.getCallingUid(), packageName, userId)
-                    || !checkApiEnabled("addOnSafetyCenterDataChangedListener")) {
+                    || !checkApiEnabled(methodName)) {
                 return;
             }
 
             UserProfileGroup userProfileGroup = UserProfileGroup.fromUser(getContext(), userId);
             synchronized (mApiLock) {
                 IOnSafetyCenterDataChangedListener registeredListener =
-                        mSafetyCenterListeners.addListener(listener, packageName, userId);
+                        mSafetyCenterListeners.addListener(
+                                listener, packageName, userId, supportsDeltas);
                 if (registeredListener == null) {
                     return;
                 }
@@ -521,6 +548,24 @@ public final class SafetyCenterService extends SystemService {
             }
         }
 
+        @Override
+        public void resyncOnSafetyCenterDataChangedListener(
+                IOnSafetyCenterDataChangedListener listener, @UserIdInt int userId) {
+            requireNonNull(listener);
+            getContext()
+                    .enforceCallingOrSelfPermission(
+                            MANAGE_SAFETY_CENTER, "resyncOnSafetyCenterDataChangedListener");
+            if (!enforceCrossUserPermission("resyncOnSafetyCenterDataChangedListener", userId)
+                    || !checkApiEnabled("resyncOnSafetyCenterDataChangedListener")) {
+                return;
+            }
+
+            UserProfileGroup userProfileGroup = UserProfileGroup.fromUser(getContext(), userId);
+            synchronized (mApiLock) {
+                mSafetyCenterListeners.resyncListener(listener, userId, userProfileGroup);
+            }
+        }
+
         @Override
         public void dismissSafetyCenterIssue(String issueId, @UserIdInt int userId) {
             requireNonNull(issueId);
@@ -1171,6 +1216,8 @@ public final class SafetyCenterService extends SystemService {
             if (clearDataPermanently) {
                 mSafetyCenterDataManager.clearForUser(userId);
                 mSafetyCenterDataChangeNotifier.updateDataConsumers(userProfileGroup, userId);
+                // The notifications of the removed user can't be updated anymore
+                mNotificationSender.clearForUser(userId);
             } else {
                 mSafetyCenterListeners.deliverDataForUserProfileGroup(userProfileGroup);
             }
@@ -196,6 +196,7 @@ public final class SafetyCenterDataManager {
      */
     public void dismissNotification(SafetyCenterIssueKey safetyCenterIssueKey) {
         mSafetyCenterIssueDismissalRepository.dismissNotification(safetyCenterIssueKey);
+        mSafetyCenterIssueRepository.markIssueChanged(safetyCenterIssueKey);
         mSafetyCenterIssueRepository.updateIssues(safetyCenterIssueKey.getUserId());
     }
 
@@ -396,6 +397,25 @@ public final class SafetyCenterDataManager {
         return mSafetyCenterIssueRepository.getIssuesForUser(userId);
     }
 
+    /**
+     * Returns the keys of the issues of the given {@code userId} that were added, removed or
+     * changed (including the dismissal of their notification) since the last call to this method.
+     *
+     * <p>Each change is only returned once, so this is meant for a single consumer.
+     */
+    public ArraySet<SafetyCenterIssueKey> consumeChangedIssueKeys(@UserIdInt int userId) {
+        return mSafetyCenterIssueRepository.consumeChangedIssueKeys(userId);
+    }
+
+    /**
+     * Returns the {@link SafetySourceIssueInfo} of the issue with the given key, or {@code null} if
+     * that issue is not currently part of the issues returned by {@link #getIssuesForUser}.
+     */
+    @Nullable
+    public SafetySourceIssueInfo getIssueInfo(SafetyCenterIssueKey issueKey) {
+        return mSafetyCenterIssueRepository.getIssueInfo(issueKey);
+    }
+
     /**
      * Returns a set of {@link SafetySourcesGroup} IDs that the given {@link SafetyCenterIssueKey}
      * is mapped to, or an empty list of no such mapping is configured.
@@ -28,8 +28,12 @@ import android.safetycenter.SafetySourceData;
 import android.safetycenter.SafetySourceIssue;
 import android.safetycenter.config.SafetySource;
 import android.safetycenter.config.SafetySourcesGroup;
+import android.util.ArrayMap;
+import android.util.ArraySet;
 import android.util.SparseArray;
 
+import androidx.annotation.Nullable;
+
 import com.android.modules.utils.build.SdkLevel;
 import com.android.permission.util.UserUtils;
 import com.android.safetycenter.SafetyCenterConfigReader;
@@ -70,6 +74,12 @@ final class SafetyCenterIssueRepository {
 
     private final SparseArray<DeduplicationInfo> mUserIdToDedupInfo = new SparseArray<>();
 
+    private final SparseArray<ArrayMap<SafetyCenterIssueKey, SafetySourceIssueInfo>>
+            mUserIdToVisibleIssues = new SparseArray<>();
+
+    private final SparseArray<ArraySet<SafetyCenterIssueKey>> mUserIdToChangedIssueKeys =
+            new SparseArray<>();
+
     SafetyCenterIssueRepository(
             Context context,
             SafetySourceDataRepository safetySourceDataRepository,
@@ -98,6 +108,88 @@ final class SafetyCenterIssueRepository {
         issues.sort(SAFETY_SOURCE_ISSUES_INFO_BY_SEVERITY_DESCENDING);
 
         mUserIdToDedupInfo.put(userId, produceDedupInfo(issues));
+
+        updateVisibleIssues(userId);
+    }
+
+    /**
+     * Records the keys of the visible issues of the given {@code userId} that were added, removed
+     * or changed since the last update, so that consumers only need to look at those.
+     */
+    private void updateVisibleIssues(@UserIdInt int userId) {
+        List<SafetySourceIssueInfo> issues = getIssuesForUser(userId);
+        ArrayMap<SafetyCenterIssueKey, SafetySourceIssueInfo> oldVisibleIssues =
+                mUserIdToVisibleIssues.get(userId);
+        ArrayMap<SafetyCenterIssueKey, SafetySourceIssueInfo> newVisibleIssues =
+                new ArrayMap<>(issues.size());
+        ArraySet<SafetyCenterIssueKey> changedIssueKeys = getOrCreateChangedIssueKeys(userId);
+
+        for (int i = 0; i < issues.size(); i++) {
+            SafetySourceIssueInfo issueInfo = issues.get(i);
+            SafetyCenterIssueKey issueKey = issueInfo.getSafetyCenterIssueKey();
+            newVisibleIssues.put(issueKey, issueInfo);
+
+            SafetySourceIssueInfo oldIssueInfo =
+                    oldVisibleIssues != null ? oldVisibleIssues.get(issueKey) : null;
+            if (oldIssueInfo == null
+                    || !oldIssueInfo
+                            .getSafetySourceIssue()
+                            .equals(issueInfo.getSafetySourceIssue())) {
+                changedIssueKeys.add(issueKey);
+            }
+        }
+
+        if (oldVisibleIssues != null) {
+            for (int i = 0; i < oldVisibleIssues.size(); i++) {
+                SafetyCenterIssueKey issueKey = oldVisibleIssues.keyAt(i);
+                if (!newVisibleIssues.containsKey(issueKey)) {
+                    changedIssueKeys.add(issueKey);
+                }
+            }
+        }
+
+        mUserIdToVisibleIssues.put(userId, newVisibleIssues);
+    }
+
+    private ArraySet<SafetyCenterIssueKey> getOrCreateChangedIssueKeys(@UserIdInt int userId) {
+        ArraySet<SafetyCenterIssueKey> changedIssueKeys = mUserIdToChangedIssueKeys.get(userId);
+        if (changedIssueKeys == null) {
+            changedIssueKeys = new ArraySet<>();
+            mUserIdToChangedIssueKeys.put(userId, changedIssueKeys);
+        }
+        return changedIssueKeys;
+    }
+
+    /**
+     * Marks the issue with the given key as changed, for state that affects consumers of the issue
+     * but is not part of the issue itself (e.g. the dismissal of its notification).
+     */
+    void markIssueChanged(SafetyCenterIssueKey issueKey) {
+        getOrCreateChangedIssueKeys(issueKey.getUserId()).add(issueKey);
+    }
+
+    /**
+     * Returns the keys of the issues of the given {@code userId} that were added, removed or
+     * changed since the last call to this method, and forgets about them.
+     */
+    ArraySet<SafetyCenterIssueKey> consumeChangedIssueKeys(@UserIdInt int userId) {
+        ArraySet<SafetyCenterIssueKey> changedIssueKeys = mUserIdToChangedIssueKeys.get(userId);
+        if (changedIssueKeys == null) {
+            return new ArraySet<>();
+        }
+        mUserIdToChangedIssueKeys.delete(userId);
+        return changedIssueKeys;
+    }
+
+    /**
+     * Returns the visible issue with the given key as of the last update, or {@code null} if there
+     * is no such issue.
+     */
+    @Nullable
+    SafetySourceIssueInfo getIssueInfo(SafetyCenterIssueKey issueKey) {
+        ArrayMap<SafetyCenterIssueKey, SafetySourceIssueInfo> visibleIssues =
+                mUserIdToVisibleIssues.get(issueKey.getUserId());
+        return visibleIssues != null ? visibleIssues.get(issueKey) : null;
     }
 
     private DeduplicationInfo produceDedupInfo(List<SafetySourceIssueInfo> issues) {
@@ -277,16 +369,44 @@ final class SafetyCenterIssueRepository {
             fout.println("\tUSER ID=" + mUserIdToDedupInfo.keyAt(i));
             fout.println("\tDEDUPLICATION INFO=" + mUserIdToDedupInfo.valueAt(i));
         }
+        for (int i = 0; i < mUserIdToChangedIssueKeys.size(); i++) {
+            fout.println();
+            fout.println("\tUSER ID=" + mUserIdToChangedIssueKeys.keyAt(i));
+            fout.println("\tCHANGED ISSUE KEYS=" + mUserIdToChangedIssueKeys.valueAt(i));
+        }
         fout.println();
     }
 
-    /** Clears all the data from the repository. */
+    /**
+     * Clears all the data from the repository.
+     *
+     * <p>The issues that were visible are reported as changed by {@link #consumeChangedIssueKeys}.
+     */
     void clear() {
         mUserIdToDedupInfo.clear();
+        for (int i = 0; i < mUserIdToVisibleIssues.size(); i++) {
+            markVisibleIssuesChanged(mUserIdToVisibleIssues.keyAt(i));
+        }
+        mUserIdToVisibleIssues.clear();
     }
 
-    /** Clears all data related to the given {@code userId}. */
+    /**
+     * Clears all data related to the given {@code userId}.
+     *
+     * <p>The issues that were visible are reported as changed by {@link #consumeChangedIssueKeys}.
+     */
     void clearForUser(@UserIdInt int userId) {
         mUserIdToDedupInfo.delete(userId);
+        markVisibleIssuesChanged(userId);
+        mUserIdToVisibleIssues.delete(userId);
+    }
+
+    private void markVisibleIssuesChanged(@UserIdInt int userId) {
+        ArrayMap<SafetyCenterIssueKey, SafetySourceIssueInfo> visibleIssues =
+                mUserIdToVisibleIssues.get(userId);
+        if (visibleIssues == null) {
+            return;
+        }
+        getOrCreateChangedIssueKeys(userId).addAll(visibleIssues.keySet());
     }
 }
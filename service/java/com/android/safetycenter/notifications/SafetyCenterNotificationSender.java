@@ -26,6 +26,7 @@ import android.app.Notification;
 import android.app.NotificationManager;
 import android.content.Context;
 import android.os.Binder;
+import android.os.Handler;
 import android.os.UserHandle;
 import android.safetycenter.SafetyEvent;
 import android.safetycenter.SafetySourceIssue;
@@ -36,8 +37,10 @@ import android.util.Log;
 
 import androidx.annotation.Nullable;
 
+import com.android.modules.utils.BackgroundThread;
 import com.android.modules.utils.build.SdkLevel;
 import com.android.permission.util.UserUtils;
+import com.android.safetycenter.ApiLock;
 import com.android.safetycenter.SafetyCenterFlags;
 import com.android.safetycenter.SafetySourceIssueInfo;
 import com.android.safetycenter.SafetySourceIssues;
@@ -53,7 +56,6 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.List;
 
 import javax.annotation.concurrent.NotThreadSafe;
 
@@ -61,7 +63,12 @@ import javax.annotation.concurrent.NotThreadSafe;
  * Class responsible for posting, updating and dismissing Safety Center notifications each time
  * Safety Center's issues change.
  *
- * <p>This class isn't thread safe. Thread safety must be handled by the caller.
+ * <p>Only the issues reported as changed by the {@link SafetyCenterDataManager} are looked at on
+ * each update. Issues with delayed notification behavior are notified by a wake-up scheduled for
+ * when their delay elapses.
+ *
+ * <p>This class isn't thread safe. Thread safety must be handled by the caller, which must hold
+ * the {@link ApiLock} that is also used by the scheduled wake-up.
  *
  * @hide
  */
@@ -104,28 +111,51 @@ public final class SafetyCenterNotificationSender {
 
     private final SafetyCenterDataManager mSafetyCenterDataManager;
 
+    private final ApiLock mApiLock;
+
+    private final Handler mBackgroundHandler = BackgroundThread.getHandler();
+
+    private final Runnable mDelayedIssuesWakeUp = this::onDelayedIssuesDue;
+
     private final ArrayMap<SafetyCenterIssueKey, SafetySourceIssue> mNotifiedIssues =
             new ArrayMap<>();
 
+    /**
+     * Issues with delayed behavior that can't be notified yet, and when they can be notified as
+     * per the flags at the time they were last checked. These are checked again on each update for
+     * their user, as the flags may have changed.
+     */
+    private final ArrayMap<SafetyCenterIssueKey, Instant> mDelayedIssues = new ArrayMap<>();
+
+    /**
+     * Issues whose notification is currently dismissed. These are checked again on each update for
+     * their user, as their notification may resurface.
+     */
+    private final ArraySet<SafetyCenterIssueKey> mDismissedIssueKeys = new ArraySet<>();
+
     private SafetyCenterNotificationSender(
             Context context,
             SafetyCenterNotificationFactory notificationFactory,
-            SafetyCenterDataManager safetyCenterDataManager) {
+            SafetyCenterDataManager safetyCenterDataManager,
+            ApiLock apiLock) {
         mContext = context;
         mNotificationFactory = notificationFactory;
         mSafetyCenterDataManager = safetyCenterDataManager;
+        mApiLock = apiLock;
     }
 
     public static SafetyCenterNotificationSender newInstance(
             Context context,
             SafetyCenterResourcesApk safetyCenterResourcesApk,
             SafetyCenterNotificationChannels notificationChannels,
-            SafetyCenterDataManager dataManager) {
+            SafetyCenterDataManager dataManager,
+            ApiLock apiLock) {
         return new SafetyCenterNotificationSender(
                 context,
                 new SafetyCenterNotificationFactory(
                         context, notificationChannels, safetyCenterResourcesApk),
-                dataManager);
+                dataManager,
+                apiLock);
     }
 
     /**
@@ -203,7 +233,7 @@ public final class SafetyCenterNotificationSender {
         if (wasPosted) {
             // If the original issue notification was successfully replaced the key removed from
             // mNotifiedIssues to prevent the success notification from being removed by
-            // cancelStaleNotifications below.
+            // updateNotification when the issue is resolved.
             mNotifiedIssues.remove(issueKey);
         }
     }
@@ -221,6 +251,10 @@ public final class SafetyCenterNotificationSender {
     /**
      * Updates Safety Center notifications, usually in response to a change in the issues for the
      * given userId.
+     *
+     * <p>Only the notifications of the issues that changed since the last update, and of the issues
+     * whose notification is dismissed or delayed and may be posted now, are updated. When delayed
+     * issues can be notified is recomputed from the current flags.
      */
     public void updateNotifications(@UserIdInt int userId) {
         if (!SafetyCenterFlags.getNotificationsEnabled()) {
@@ -234,34 +268,61 @@ public final class SafetyCenterNotificationSender {
             return;
         }
 
-        ArrayMap<SafetyCenterIssueKey, SafetySourceIssue> issuesToNotify =
-                getIssuesToNotify(userId);
+        ArraySet<SafetyCenterIssueKey> issueKeysToUpdate =
+                mSafetyCenterDataManager.consumeChangedIssueKeys(userId);
+        for (int i = 0; i < mDismissedIssueKeys.size(); i++) {
+            SafetyCenterIssueKey issueKey = mDismissedIssueKeys.valueAt(i);
+            if (issueKey.getUserId() == userId) {
+                issueKeysToUpdate.add(issueKey);
+            }
+        }
+        // The delay may have changed, and the scheduled wake-up may run late, e.g. if the device
+        // was asleep
+        for (int i = 0; i < mDelayedIssues.size(); i++) {
+            SafetyCenterIssueKey issueKey = mDelayedIssues.keyAt(i);
+            if (issueKey.getUserId() == userId) {
+                issueKeysToUpdate.add(issueKey);
+            }
+        }
 
-        // Post or update notifications for notifiable issues. We keep track of the "fresh" issues
-        // keys of those issues which were just notified because doing so allows us to cancel any
-        // notifications for other, non-fresh issues.
-        ArraySet<SafetyCenterIssueKey> freshIssueKeys = new ArraySet<>();
-        for (int i = 0; i < issuesToNotify.size(); i++) {
-            SafetyCenterIssueKey issueKey = issuesToNotify.keyAt(i);
-            SafetySourceIssue issue = issuesToNotify.valueAt(i);
+        for (int i = 0; i < issueKeysToUpdate.size(); i++) {
+            updateNotification(notificationManager, issueKeysToUpdate.valueAt(i));
+        }
 
-            boolean unchanged = issue.equals(mNotifiedIssues.get(issueKey));
-            if (unchanged) {
-                freshIssueKeys.add(issueKey);
-                continue;
-            }
+        scheduleDelayedIssuesWakeUp();
+    }
 
-            boolean wasPosted = postNotificationForIssue(notificationManager, issue, issueKey);
-            if (wasPosted) {
-                freshIssueKeys.add(issueKey);
+    /**
+     * Forgets all the notifications of the given {@code userId}, and the issue keys that changed
+     * for it, e.g. because the user was removed along with its notifications.
+     */
+    public void clearForUser(@UserIdInt int userId) {
+        mSafetyCenterDataManager.consumeChangedIssueKeys(userId);
+        // Loop in reverse index order to be able to remove entries while iterating
+        for (int i = mNotifiedIssues.size() - 1; i >= 0; i--) {
+            if (mNotifiedIssues.keyAt(i).getUserId() == userId) {
+                mNotifiedIssues.removeAt(i);
             }
         }
-
-        cancelStaleNotifications(notificationManager, userId, freshIssueKeys);
+        for (int i = mDelayedIssues.size() - 1; i >= 0; i--) {
+            if (mDelayedIssues.keyAt(i).getUserId() == userId) {
+                mDelayedIssues.removeAt(i);
+            }
+        }
+        for (int i = mDismissedIssueKeys.size() - 1; i >= 0; i--) {
+            if (mDismissedIssueKeys.valueAt(i).getUserId() == userId) {
+                mDismissedIssueKeys.removeAt(i);
+            }
+        }
+        scheduleDelayedIssuesWakeUp();
     }
 
     /** Cancels all notifications previously posted by this class */
     public void cancelAllNotifications() {
+        mDelayedIssues.clear();
+        mDismissedIssueKeys.clear();
+        mBackgroundHandler.removeCallbacks(mDelayedIssuesWakeUp);
+
         // Loop in reverse index order to be able to remove entries while iterating
         for (int i = mNotifiedIssues.size() - 1; i >= 0; i--) {
             SafetyCenterIssueKey issueKey = mNotifiedIssues.keyAt(i);
@@ -284,43 +345,89 @@ public final class SafetyCenterNotificationSender {
             SafetySourceIssue issue = mNotifiedIssues.valueAt(i);
             fout.println("\t[" + i + "] " + toUserFriendlyString(key) + " -> " + issue);
         }
+        int delayedIssuesCount = mDelayedIssues.size();
+        fout.println("DELAYED ISSUES (" + delayedIssuesCount + ")");
+        for (int i = 0; i < delayedIssuesCount; i++) {
+            SafetyCenterIssueKey key = mDelayedIssues.keyAt(i);
+            Instant notifyAt = mDelayedIssues.valueAt(i);
+            fout.println("\t[" + i + "] " + toUserFriendlyString(key) + " -> " + notifyAt);
+        }
+        int dismissedIssuesCount = mDismissedIssueKeys.size();
+        fout.println("DISMISSED ISSUES (" + dismissedIssuesCount + ")");
+        for (int i = 0; i < dismissedIssuesCount; i++) {
+            SafetyCenterIssueKey key = mDismissedIssueKeys.valueAt(i);
+            fout.println("\t[" + i + "] " + toUserFriendlyString(key));
+        }
         fout.println();
     }
 
-    /** Gets all the key-issue pairs for which notifications should be posted or updated now. */
-    private ArrayMap<SafetyCenterIssueKey, SafetySourceIssue> getIssuesToNotify(
-            @UserIdInt int userId) {
-        ArrayMap<SafetyCenterIssueKey, SafetySourceIssue> result = new ArrayMap<>();
-        List<SafetySourceIssueInfo> allIssuesInfo =
-                mSafetyCenterDataManager.getIssuesForUser(userId);
+    /**
+     * Posts, updates or cancels the notification of the issue with the given key, as per the
+     * current state of that issue.
+     */
+    private void updateNotification(
+            NotificationManager notificationManager, SafetyCenterIssueKey issueKey) {
+        SafetySourceIssue issue = getIssueToNotify(issueKey);
+        if (issue == null) {
+            cancelNotificationForIssue(notificationManager, issueKey);
+            return;
+        }
 
-        for (int i = 0; i < allIssuesInfo.size(); i++) {
-            SafetySourceIssueInfo issueInfo = allIssuesInfo.get(i);
-            SafetyCenterIssueKey issueKey = issueInfo.getSafetyCenterIssueKey();
-            SafetySourceIssue issue = issueInfo.getSafetySourceIssue();
+        boolean unchanged = issue.equals(mNotifiedIssues.get(issueKey));
+        if (unchanged) {
+            return;
+        }
 
-            if (!areNotificationsAllowedForSource(issueInfo.getSafetySource())) {
-                continue;
-            }
+        boolean wasPosted = postNotificationForIssue(notificationManager, issue, issueKey);
+        if (!wasPosted) {
+            cancelNotificationForIssue(notificationManager, issueKey);
+        }
+    }
 
-            if (mSafetyCenterDataManager.isNotificationDismissedNow(
-                    issueKey, issue.getSeverityLevel())) {
-                continue;
-            }
+    /**
+     * Returns the issue with the given key if a notification should be posted or updated for it
+     * now, or {@code null} otherwise.
+     *
+     * <p>Also keeps track of whether the issue is delayed or has a dismissed notification, so that
+     * it can be checked again later.
+     */
+    @Nullable
+    private SafetySourceIssue getIssueToNotify(SafetyCenterIssueKey issueKey) {
+        mDelayedIssues.remove(issueKey);
+        mDismissedIssueKeys.remove(issueKey);
 
-            // Get the notification behavior for this issue which determines whether we should
-            // send a notification about it now
-            int behavior = getBehavior(issue, issueKey);
-            if (behavior == NOTIFICATION_BEHAVIOR_INTERNAL_IMMEDIATELY) {
-                result.put(issueKey, issue);
-            } else if (behavior == NOTIFICATION_BEHAVIOR_INTERNAL_DELAYED) {
-                if (canNotifyDelayedIssueNow(issueKey)) {
-                    result.put(issueKey, issue);
-                }
-                // TODO(b/259094736): else handle delayed notifications using a scheduled job
+        SafetySourceIssueInfo issueInfo = mSafetyCenterDataManager.getIssueInfo(issueKey);
+        if (issueInfo == null) {
+            return null;
+        }
+        SafetySourceIssue issue = issueInfo.getSafetySourceIssue();
+
+        if (!areNotificationsAllowedForSource(issueInfo.getSafetySource())) {
+            return null;
+        }
+
+        if (mSafetyCenterDataManager.isNotificationDismissedNow(
+                issueKey, issue.getSeverityLevel())) {
+            mDismissedIssueKeys.add(issueKey);
+            return null;
+        }
+
+        // Get the notification behavior for this issue which determines whether we should
+        // send a notification about it now
+        int behavior = getBehavior(issue, issueKey);
+        if (behavior == NOTIFICATION_BEHAVIOR_INTERNAL_IMMEDIATELY) {
+            return issue;
+        } else if (behavior == NOTIFICATION_BEHAVIOR_INTERNAL_DELAYED) {
+            Instant notifyAt = getDelayedIssueNotifyAt(issueKey);
+            if (notifyAt == null) {
+                return null;
+            }
+            if (notifyAt.isBefore(Instant.now())) {
+                return issue;
             }
+            mDelayedIssues.put(issueKey, notifyAt);
         }
-        return result;
+        return null;
     }
 
     @NotificationBehaviorInternal
@@ -365,11 +472,60 @@ public final class SafetyCenterNotificationSender {
         return SafetyCenterFlags.getNotificationsAllowedSourceIds().contains(safetySource.getId());
     }
 
-    private boolean canNotifyDelayedIssueNow(SafetyCenterIssueKey issueKey) {
-        Duration minNotificationsDelay = SafetyCenterFlags.getNotificationsMinDelay();
-        Instant threshold = Instant.now().minus(minNotificationsDelay);
+    /**
+     * Returns the {@link Instant} after which an issue with delayed behavior can be notified, or
+     * {@code null} if it is not known when the issue was first seen.
+     */
+    @Nullable
+    private Instant getDelayedIssueNotifyAt(SafetyCenterIssueKey issueKey) {
         Instant seenAt = mSafetyCenterDataManager.getIssueFirstSeenAt(issueKey);
-        return seenAt != null && seenAt.isBefore(threshold);
+        if (seenAt == null) {
+            return null;
+        }
+        return seenAt.plus(SafetyCenterFlags.getNotificationsMinDelay());
+    }
+
+    /** Schedules {@link #onDelayedIssuesDue} for when the first delayed issue can be notified. */
+    private void scheduleDelayedIssuesWakeUp() {
+        mBackgroundHandler.removeCallbacks(mDelayedIssuesWakeUp);
+        if (mDelayedIssues.isEmpty()) {
+            return;
+        }
+
+        Instant earliestNotifyAt = mDelayedIssues.valueAt(0);
+        for (int i = 1; i < mDelayedIssues.size(); i++) {
+            Instant notifyAt = mDelayedIssues.valueAt(i);
+            if (notifyAt.isBefore(earliestNotifyAt)) {
+                earliestNotifyAt = notifyAt;
+            }
+        }
+        // Delayed issues can only be notified strictly after their notifyAt instant
+        long delayMillis = Duration.between(Instant.now(), earliestNotifyAt).toMillis();
+        mBackgroundHandler.postDelayed(mDelayedIssuesWakeUp, Math.max(0, delayMillis) + 1);
+    }
+
+    private void onDelayedIssuesDue() {
+        synchronized (mApiLock) {
+            if (!SafetyCenterFlags.getNotificationsEnabled()) {
+                return;
+            }
+
+            // Check all delayed issues, as the delay may have changed since they were scheduled
+            ArraySet<SafetyCenterIssueKey> delayedIssueKeys =
+                    new ArraySet<>(mDelayedIssues.keySet());
+            for (int i = 0; i < delayedIssueKeys.size(); i++) {
+                SafetyCenterIssueKey issueKey = delayedIssueKeys.valueAt(i);
+                NotificationManager notificationManager =
+                        getNotificationManagerForUser(issueKey.getUserId());
+                if (notificationManager == null) {
+                    mDelayedIssues.remove(issueKey);
+                    continue;
+                }
+                updateNotification(notificationManager, issueKey);
+            }
+
+            scheduleDelayedIssuesWakeUp();
+        }
     }
 
     private boolean postNotificationForIssue(
@@ -394,18 +550,10 @@ public final class SafetyCenterNotificationSender {
         return wasPosted;
     }
 
-    private void cancelStaleNotifications(
-            NotificationManager notificationManager,
-            @UserIdInt int userId,
-            ArraySet<SafetyCenterIssueKey> freshIssueKeys) {
-        // Loop in reverse index order to be able to remove entries while iterating
-        for (int i = mNotifiedIssues.size() - 1; i >= 0; i--) {
-            SafetyCenterIssueKey key = mNotifiedIssues.keyAt(i);
-            if (key.getUserId() == userId && !freshIssueKeys.contains(key)) {
-                String tag = getNotificationTag(key);
-                cancelNotificationFromSystem(notificationManager, tag);
-                mNotifiedIssues.removeAt(i);
-            }
+    private void cancelNotificationForIssue(
+            NotificationManager notificationManager, SafetyCenterIssueKey key) {
+        if (mNotifiedIssues.remove(key) != null) {
+            cancelNotificationFromSystem(notificationManager, getNotificationTag(key));
         }
     }
 
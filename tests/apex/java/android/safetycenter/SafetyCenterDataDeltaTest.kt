@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.safetycenter
+
+import android.app.PendingIntent
+import android.content.Intent
+import android.os.Build.VERSION_CODES.UPSIDE_DOWN_CAKE
+import android.os.Bundle
+import android.os.Parcel
+import androidx.test.filters.SdkSuppress
+import androidx.test.platform.app.InstrumentationRegistry
+import com.android.safetycenter.internaldata.SafetyCenterBundles.ISSUES_TO_GROUPS_BUNDLE_KEY
+import com.google.common.truth.Truth.assertThat
+import org.junit.Assert.assertThrows
+import org.junit.Test
+
+@SdkSuppress(minSdkVersion = UPSIDE_DOWN_CAKE, codeName = "UpsideDownCake")
+class SafetyCenterDataDeltaTest {
+    private val context = InstrumentationRegistry.getInstrumentation().context
+
+    private val pendingIntent =
+        PendingIntent.getActivity(context, 0, Intent("Fake Data"), PendingIntent.FLAG_IMMUTABLE)
+
+    private val status1 =
+        SafetyCenterStatus.Builder("Status title", "Status summary")
+            .setSeverityLevel(SafetyCenterStatus.OVERALL_SEVERITY_LEVEL_RECOMMENDATION)
+            .build()
+    private val status2 =
+        SafetyCenterStatus.Builder("Other status title", "Other status summary")
+            .setSeverityLevel(SafetyCenterStatus.OVERALL_SEVERITY_LEVEL_OK)
+            .build()
+
+    private val issueA = issue(ISSUE_ID_A, "Issue A")
+    private val issueB = issue(ISSUE_ID_B, "Issue B")
+    private val issueC = issue(ISSUE_ID_C, "Issue C")
+
+    private val entry1 =
+        SafetyCenterEntry.Builder("entry_id_1", "Entry 1")
+            .setPendingIntent(pendingIntent)
+            .setSeverityLevel(SafetyCenterEntry.ENTRY_SEVERITY_LEVEL_OK)
+            .build()
+    private val entry2 =
+        SafetyCenterEntry.Builder("entry_id_2", "Entry 2")
+            .setPendingIntent(pendingIntent)
+            .setSeverityLevel(SafetyCenterEntry.ENTRY_SEVERITY_LEVEL_RECOMMENDATION)
+            .build()
+    private val entryGroup =
+        SafetyCenterEntryGroup.Builder("entry_group_id", "Entry group")
+            .setSeverityLevel(SafetyCenterEntry.ENTRY_SEVERITY_LEVEL_RECOMMENDATION)
+            .setEntries(listOf(entry2))
+            .build()
+
+    private val staticEntryGroup1 =
+        SafetyCenterStaticEntryGroup(
+            "Static entry group",
+            listOf(
+                SafetyCenterStaticEntry.Builder("Static entry")
+                    .setPendingIntent(pendingIntent)
+                    .build()
+            )
+        )
+    private val staticEntryGroup2 =
+        SafetyCenterStaticEntryGroup(
+            "Other static entry group",
+            listOf(
+                SafetyCenterStaticEntry.Builder("Other static entry")
+                    .setPendingIntent(pendingIntent)
+                    .build()
+            )
+        )
+
+    private val extras1 = issuesToGroupsExtras(ISSUE_ID_A)
+    private val extras2 = issuesToGroupsExtras(ISSUE_ID_B)
+
+    private val baseData =
+        data(
+            issues = listOf(issueA, issueB),
+            entriesOrGroups =
+                listOf(SafetyCenterEntryOrGroup(entry1), SafetyCenterEntryOrGroup(entryGroup)),
+            dismissedIssues = listOf(issueC)
+        )
+
+    @Test
+    fun snapshot_appliesToNoData() {
+        val delta = SafetyCenterDataDelta.snapshot(baseData, 1)
+
+        assertThat(delta.isSnapshot).isTrue()
+        assertThat(delta.sequenceNumber).isEqualTo(1)
+        assertThat(delta.applyTo(null)).isEqualTo(baseData)
+    }
+
+    @Test
+    fun between_appliesToBaseData() {
+        val nextData = data(status = status2, issues = listOf(issueB), extras = extras2)
+
+        val delta = SafetyCenterDataDelta.between(baseData, 1, nextData, 2)
+
+        assertThat(delta.isSnapshot).isFalse()
+        assertThat(delta.baseSequenceNumber).isEqualTo(1)
+        assertThat(delta.sequenceNumber).isEqualTo(2)
+        assertThat(delta.applyTo(baseData)).isEqualTo(nextData)
+    }
+
+    @Test
+    fun between_parcelRoundTrip_appliesToBaseData() {
+        val nextData =
+            data(
+                status = status2,
+                issues = listOf(issueB, issue(ISSUE_ID_A, "Updated issue A"), issueC),
+                staticEntryGroups = listOf(staticEntryGroup2),
+                extras = extras2
+            )
+
+        val delta = parcelRoundTrip(SafetyCenterDataDelta.between(baseData, 1, nextData, 2))
+
+        assertThat(delta.baseSequenceNumber).isEqualTo(1)
+        assertThat(delta.sequenceNumber).isEqualTo(2)
+        assertThat(delta.applyTo(baseData)).isEqualTo(nextData)
+    }
+
+    @Test
+    fun snapshot_parcelRoundTrip_appliesToNoData() {
+        val delta = parcelRoundTrip(SafetyCenterDataDelta.snapshot(baseData, 1))
+
+        assertThat(delta.isSnapshot).isTrue()
+        assertThat(delta.applyTo(null)).isEqualTo(baseData)
+    }
+
+    @Test
+    fun between_reorderedItems_onlySendsTheOrder() {
+        val nextData =
+            data(
+                issues = listOf(issueB, issueA),
+                entriesOrGroups =
+                    listOf(SafetyCenterEntryOrGroup(entryGroup), SafetyCenterEntryOrGroup(entry1)),
+                dismissedIssues = listOf(issueC)
+            )
+        val otherIssueA = issue(ISSUE_ID_A, "Other issue A")
+        val otherIssueB = issue(ISSUE_ID_B, "Other issue B")
+        // Same ids as the base data, but different items
+        val otherBaseData =
+            data(
+                issues = listOf(otherIssueA, otherIssueB),
+                entriesOrGroups = baseData.entriesOrGroups,
+                dismissedIssues = listOf(issueC)
+            )
+
+        val delta = SafetyCenterDataDelta.between(baseData, 1, nextData, 2)
+
+        assertThat(delta.applyTo(baseData)).isEqualTo(nextData)
+        // The unchanged items are taken from the data the delta is applied to
+        assertThat(delta.applyTo(otherBaseData).issues)
+            .containsExactly(otherIssueB, otherIssueA)
+            .inOrder()
+    }
+
+    @Test
+    fun between_addedAndRemovedItems_appliesToBaseData() {
+        val nextData =
+            data(
+                issues = listOf(issueB, issueC),
+                entriesOrGroups = listOf(SafetyCenterEntryOrGroup(entry1)),
+                dismissedIssues = listOf(issueA)
+            )
+
+        val delta = SafetyCenterDataDelta.between(baseData, 1, nextData, 2)
+
+        assertThat(delta.applyTo(baseData)).isEqualTo(nextData)
+    }
+
+    @Test
+    fun between_updatedItem_sendsOnlyThatItem() {
+        val updatedIssueA = issue(ISSUE_ID_A, "Updated issue A")
+        val otherIssueB = issue(ISSUE_ID_B, "Other issue B")
+        val nextData = data(issues = listOf(updatedIssueA, issueB))
+        val otherBaseData = data(issues = listOf(issueA, otherIssueB))
+
+        val delta = SafetyCenterDataDelta.between(baseData, 1, nextData, 2)
+
+        assertThat(delta.applyTo(baseData)).isEqualTo(nextData)
+        assertThat(delta.applyTo(otherBaseData).issues)
+            .containsExactly(updatedIssueA, otherIssueB)
+            .inOrder()
+    }
+
+    @Test
+    fun between_duplicateIds_sendsAllItems() {
+        val duplicateIssueA = issue(ISSUE_ID_A, "Duplicate issue A")
+        val nextData = data(issues = listOf(issueA, duplicateIssueA, issueB))
+        // Applying the delta to unrelated data shows that all the items are sent
+        val otherBaseData = data(issues = listOf(issue(ISSUE_ID_B, "Other issue B")))
+
+        val delta = SafetyCenterDataDelta.between(baseData, 1, nextData, 2)
+
+        assertThat(delta.applyTo(baseData)).isEqualTo(nextData)
+        assertThat(delta.applyTo(otherBaseData).issues)
+            .containsExactly(issueA, duplicateIssueA, issueB)
+            .inOrder()
+    }
+
+    @Test
+    fun between_unchangedStatusStaticEntryGroupsAndExtras_areLeftOut() {
+        val nextData = data(issues = listOf(issueA))
+        val otherBaseData =
+            data(
+                status = status2,
+                issues = listOf(issueA),
+                staticEntryGroups = listOf(staticEntryGroup2),
+                extras = extras2
+            )
+
+        val delta = SafetyCenterDataDelta.between(baseData, 1, nextData, 2)
+        val appliedData = delta.applyTo(otherBaseData)
+
+        assertThat(appliedData.status).isEqualTo(status2)
+        assertThat(appliedData.staticEntryGroups).containsExactly(staticEntryGroup2)
+        assertThat(appliedData.extras.getBundle(ISSUES_TO_GROUPS_BUNDLE_KEY)!!.keySet())
+            .containsExactly(ISSUE_ID_B)
+    }
+
+    @Test
+    fun between_changedStatusStaticEntryGroupsAndExtras_areSent() {
+        val nextData =
+            data(
+                status = status2,
+                issues = listOf(issueA),
+                staticEntryGroups = listOf(staticEntryGroup2),
+                extras = extras2
+            )
+
+        val delta = SafetyCenterDataDelta.between(baseData, 1, nextData, 2)
+        val appliedData = delta.applyTo(data(issues = listOf(issueA)))
+
+        assertThat(appliedData.status).isEqualTo(status2)
+        assertThat(appliedData.staticEntryGroups).containsExactly(staticEntryGroup2)
+        assertThat(appliedData.extras.getBundle(ISSUES_TO_GROUPS_BUNDLE_KEY)!!.keySet())
+            .containsExactly(ISSUE_ID_B)
+    }
+
+    @Test
+    fun applyTo_deltaWithoutBaseData_throws() {
+        val delta = SafetyCenterDataDelta.between(baseData, 1, baseData, 2)
+
+        assertThrows(IllegalArgumentException::class.java) { delta.applyTo(null) }
+    }
+
+    @Test
+    fun applyTo_dataWithoutUnchangedItem_throws() {
+        val delta = SafetyCenterDataDelta.between(baseData, 1, baseData, 2)
+
+        assertThrows(IllegalArgumentException::class.java) {
+            delta.applyTo(data(issues = listOf(issueA)))
+        }
+    }
+
+    private fun issue(id: String, title: String): SafetyCenterIssue =
+        SafetyCenterIssue.Builder(id, title, "Issue summary")
+            .setSeverityLevel(SafetyCenterIssue.ISSUE_SEVERITY_LEVEL_RECOMMENDATION)
+            .build()
+
+    private fun issuesToGroupsExtras(issueId: String): Bundle =
+        Bundle().apply {
+            putBundle(
+                ISSUES_TO_GROUPS_BUNDLE_KEY,
+                Bundle().apply { putStringArrayList(issueId, arrayListOf(entryGroup.id)) }
+            )
+        }
+
+    private fun data(
+        status: SafetyCenterStatus = status1,
+        issues: List<SafetyCenterIssue> = emptyList(),
+        entriesOrGroups: List<SafetyCenterEntryOrGroup> = emptyList(),
+        staticEntryGroups: List<SafetyCenterStaticEntryGroup> = listOf(staticEntryGroup1),
+        dismissedIssues: List<SafetyCenterIssue> = emptyList(),
+        extras: Bundle = extras1
+    ): SafetyCenterData =
+        SafetyCenterData.Builder(status)
+            .apply {
+                issues.forEach { addIssue(it) }
+                entriesOrGroups.forEach { addEntryOrGroup(it) }
+                staticEntryGroups.forEach { addStaticEntryGroup(it) }
+                dismissedIssues.forEach { addDismissedIssue(it) }
+                setExtras(extras)
+            }
+            .build()
+
+    private fun parcelRoundTrip(delta: SafetyCenterDataDelta): SafetyCenterDataDelta {
+        val parcel = Parcel.obtain()
+        try {
+            delta.writeToParcel(parcel, 0)
+            parcel.setDataPosition(0)
+            return SafetyCenterDataDelta.CREATOR.createFromParcel(parcel)
+        } finally {
+            parcel.recycle()
+        }
+    }
+
+    companion object {
+        private const val ISSUE_ID_A = "issue_id_a"
+        private const val ISSUE_ID_B = "issue_id_b"
+        private const val ISSUE_ID_C = "issue_id_c"
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.safetycenter
+
+import android.os.Build.VERSION_CODES.UPSIDE_DOWN_CAKE
+import android.safetycenter.SafetyCenterManager.OnSafetyCenterDataChangedListener
+import androidx.test.filters.SdkSuppress
+import androidx.test.platform.app.InstrumentationRegistry
+import com.google.common.truth.Truth.assertThat
+import java.util.concurrent.Executor
+import org.junit.Before
+import org.junit.Test
+import org.mockito.ArgumentCaptor
+import org.mockito.ArgumentMatchers.anyInt
+import org.mockito.ArgumentMatchers.anyString
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.never
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.`when`
+
+/** Tests how a [SafetyCenterManager] listener applies the deltas sent by the service. */
+@SdkSuppress(minSdkVersion = UPSIDE_DOWN_CAKE, codeName = "UpsideDownCake")
+class SafetyCenterManagerDeltaListenerTest {
+    private val context = InstrumentationRegistry.getInstrumentation().context
+    private val userId = context.user.identifier
+
+    private val service = mock(ISafetyCenterManager::class.java)
+    private val safetyCenterManager = SafetyCenterManager(context, service)
+
+    private val receivedData = mutableListOf<SafetyCenterData>()
+    private lateinit var delegate: IOnSafetyCenterDataChangedListener
+
+    private val data1 = data(issue(ISSUE_ID_A))
+    private val data2 = data(issue(ISSUE_ID_A), issue(ISSUE_ID_B))
+    private val data3 = data(issue(ISSUE_ID_B), issue(ISSUE_ID_C))
+
+    @Before
+    fun addListener() {
+        safetyCenterManager.addOnSafetyCenterDataChangedListener(
+            Executor { it.run() },
+            OnSafetyCenterDataChangedListener { receivedData.add(it) }
+        )
+        val delegateCaptor = ArgumentCaptor.forClass(IOnSafetyCenterDataChangedListener::class.java)
+        verify(service)
+            .addOnSafetyCenterDataChangedListenerForDeltas(
+                delegateCaptor.capture(),
+                anyString(),
+                anyInt()
+            )
+        delegate = delegateCaptor.value
+        `when`(service.getSafetyCenterData(anyString(), anyInt())).thenReturn(data3)
+    }
+
+    @Test
+    fun successiveDeltas_areApplied() {
+        delegate.onSafetyCenterDataDeltaChanged(SafetyCenterDataDelta.snapshot(data1, 1))
+        delegate.onSafetyCenterDataDeltaChanged(SafetyCenterDataDelta.between(data1, 1, data2, 2))
+        delegate.onSafetyCenterDataDeltaChanged(SafetyCenterDataDelta.between(data2, 2, data3, 3))
+
+        verify(service, never()).resyncOnSafetyCenterDataChangedListener(delegate, userId)
+        assertThat(receivedData).containsExactly(data1, data2, data3).inOrder()
+    }
+
+    @Test
+    fun droppedDelta_resyncsWithSnapshot() {
+        delegate.onSafetyCenterDataDeltaChanged(SafetyCenterDataDelta.snapshot(data1, 1))
+
+        // The delta from data1 to data2 is dropped
+        delegate.onSafetyCenterDataDeltaChanged(SafetyCenterDataDelta.between(data2, 2, data3, 3))
+
+        verify(service).resyncOnSafetyCenterDataChangedListener(delegate, userId)
+        assertThat(receivedData).containsExactly(data1)
+
+        delegate.onSafetyCenterDataDeltaChanged(SafetyCenterDataDelta.snapshot(data3, 4))
+
+        assertThat(receivedData.last()).isEqualTo(safetyCenterManager.safetyCenterData)
+    }
+
+    @Test
+    fun outOfOrderDeltas_resyncWithSnapshot() {
+        delegate.onSafetyCenterDataDeltaChanged(SafetyCenterDataDelta.snapshot(data1, 1))
+
+        delegate.onSafetyCenterDataDeltaChanged(SafetyCenterDataDelta.between(data2, 2, data3, 3))
+        // Deltas received while waiting for the snapshot are dropped and request it again
+        delegate.onSafetyCenterDataDeltaChanged(SafetyCenterDataDelta.between(data1, 1, data2, 2))
+
+        verify(service, times(2)).resyncOnSafetyCenterDataChangedListener(delegate, userId)
+        assertThat(receivedData).containsExactly(data1)
+
+        delegate.onSafetyCenterDataDeltaChanged(SafetyCenterDataDelta.snapshot(data3, 4))
+
+        assertThat(receivedData.last()).isEqualTo(safetyCenterManager.safetyCenterData)
+    }
+
+    @Test
+    fun deltaNotApplyingToData_resyncsWithSnapshot() {
+        delegate.onSafetyCenterDataDeltaChanged(SafetyCenterDataDelta.snapshot(data1, 1))
+
+        // Has the expected base sequence number, but refers to an issue data1 doesn't have
+        delegate.onSafetyCenterDataDeltaChanged(SafetyCenterDataDelta.between(data3, 1, data3, 2))
+
+        verify(service).resyncOnSafetyCenterDataChangedListener(delegate, userId)
+        assertThat(receivedData).containsExactly(data1)
+
+        delegate.onSafetyCenterDataDeltaChanged(SafetyCenterDataDelta.snapshot(data3, 3))
+
+        assertThat(receivedData.last()).isEqualTo(safetyCenterManager.safetyCenterData)
+    }
+
+    private fun issue(id: String): SafetyCenterIssue =
+        SafetyCenterIssue.Builder(id, "Issue title $id", "Issue summary")
+            .setSeverityLevel(SafetyCenterIssue.ISSUE_SEVERITY_LEVEL_RECOMMENDATION)
+            .build()
+
+    private fun data(vararg issues: SafetyCenterIssue): SafetyCenterData =
+        SafetyCenterData.Builder(
+                SafetyCenterStatus.Builder("Status title", "Status summary")
+                    .setSeverityLevel(SafetyCenterStatus.OVERALL_SEVERITY_LEVEL_RECOMMENDATION)
+                    .build()
+            )
+            .apply { issues.forEach { addIssue(it) } }
+            .build()
+
+    companion object {
+        private const val ISSUE_ID_A = "issue_id_a"
+        private const val ISSUE_ID_B = "issue_id_b"
+        private const val ISSUE_ID_C = "issue_id_c"
+    }
+}
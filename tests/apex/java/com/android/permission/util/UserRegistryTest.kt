@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.permission.util
+
+import android.content.BroadcastReceiver
+import android.content.Context
+import android.content.Intent
+import android.os.UserHandle
+import com.android.dx.mockito.inline.extended.ExtendedMockito.mockitoSession
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.mockito.ArgumentCaptor
+import org.mockito.ArgumentMatchers.any
+import org.mockito.ArgumentMatchers.isNull
+import org.mockito.Mock
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.`when`
+import org.mockito.MockitoAnnotations.initMocks
+import org.mockito.MockitoSession
+import org.mockito.quality.Strictness
+
+class UserRegistryTest {
+    private lateinit var mockitoSession: MockitoSession
+    @Mock lateinit var context: Context
+
+    /** The users returned by the mocked [UserUtils.getUserHandles] */
+    private var aliveUserIds = listOf(USER_ID_0)
+    private var userManagerQueryCount = 0
+
+    private lateinit var userRegistry: UserRegistry
+    private lateinit var receiver: BroadcastReceiver
+
+    @Before
+    fun setUp() {
+        initMocks(this)
+        mockitoSession =
+            mockitoSession()
+                .mockStatic(UserUtils::class.java)
+                .strictness(Strictness.LENIENT)
+                .startMocking()
+        `when`(UserUtils.getUserHandles(any(Context::class.java))).thenAnswer {
+            userManagerQueryCount++
+            aliveUserIds.map { UserHandle.of(it) }
+        }
+
+        userRegistry = UserRegistry(context)
+        userManagerQueryCount = 0
+
+        val receiverCaptor = ArgumentCaptor.forClass(BroadcastReceiver::class.java)
+        verify(context)
+            .registerReceiverForAllUsers(receiverCaptor.capture(), any(), isNull(), isNull())
+        receiver = receiverCaptor.value
+    }
+
+    @After
+    fun finishMocking() {
+        mockitoSession.finishMocking()
+    }
+
+    @Test
+    fun insertSortedInsertsInOrder() {
+        val values = intArrayOf(0, 10)
+
+        assertThat(UserRegistry.insertSorted(values, 5).toList())
+            .containsExactly(0, 5, 10)
+            .inOrder()
+        assertThat(UserRegistry.insertSorted(values, -1).toList())
+            .containsExactly(-1, 0, 10)
+            .inOrder()
+        assertThat(UserRegistry.insertSorted(values, 20).toList())
+            .containsExactly(0, 10, 20)
+            .inOrder()
+        assertThat(UserRegistry.insertSorted(values, 10)).isSameInstanceAs(values)
+        assertThat(UserRegistry.insertSorted(IntArray(0), 10).toList()).containsExactly(10)
+    }
+
+    @Test
+    fun removeSortedRemovesInOrder() {
+        val values = intArrayOf(0, 5, 10)
+
+        assertThat(UserRegistry.removeSorted(values, 5).toList()).containsExactly(0, 10).inOrder()
+        assertThat(UserRegistry.removeSorted(values, 0).toList()).containsExactly(5, 10).inOrder()
+        assertThat(UserRegistry.removeSorted(values, 10).toList()).containsExactly(0, 5).inOrder()
+        assertThat(UserRegistry.removeSorted(values, 7)).isSameInstanceAs(values)
+        assertThat(UserRegistry.removeSorted(intArrayOf(10), 10).toList()).isEmpty()
+    }
+
+    @Test
+    fun isUserExistent_knownUser_doesNotQueryUserManager() {
+        assertThat(userRegistry.isUserExistent(USER_ID_0)).isTrue()
+        assertThat(userManagerQueryCount).isEqualTo(0)
+    }
+
+    @Test
+    fun isUserExistent_unknownUser_fallsBackToUserManager() {
+        assertThat(userRegistry.isUserExistent(USER_ID_10)).isFalse()
+        assertThat(userManagerQueryCount).isEqualTo(1)
+
+        aliveUserIds = listOf(USER_ID_0, USER_ID_10)
+
+        assertThat(userRegistry.isUserExistent(USER_ID_10)).isTrue()
+        assertThat(userManagerQueryCount).isEqualTo(2)
+        // The user is now known
+        assertThat(userRegistry.isUserExistent(USER_ID_10)).isTrue()
+        assertThat(userManagerQueryCount).isEqualTo(2)
+    }
+
+    @Test
+    fun isUserExistent_afterUserAddedAndRemoved_doesNotQueryUserManager() {
+        aliveUserIds = listOf(USER_ID_0, USER_ID_10, USER_ID_11)
+        receiver.onReceive(context, userIntent(Intent.ACTION_USER_ADDED, USER_ID_11))
+        receiver.onReceive(context, userIntent(Intent.ACTION_USER_ADDED, USER_ID_10))
+
+        assertThat(userRegistry.isUserExistent(USER_ID_10)).isTrue()
+        assertThat(userRegistry.isUserExistent(USER_ID_11)).isTrue()
+        assertThat(userManagerQueryCount).isEqualTo(0)
+
+        aliveUserIds = listOf(USER_ID_0, USER_ID_11)
+        receiver.onReceive(context, userIntent(Intent.ACTION_USER_REMOVED, USER_ID_10))
+
+        assertThat(userRegistry.isUserExistent(USER_ID_0)).isTrue()
+        assertThat(userRegistry.isUserExistent(USER_ID_11)).isTrue()
+        assertThat(userManagerQueryCount).isEqualTo(0)
+        assertThat(userRegistry.isUserExistent(USER_ID_10)).isFalse()
+    }
+
+    @Test
+    fun isUserExistent_stoppingUserRemoved_returnsFalse() {
+        userRegistry.onUserStarting(USER_ID_10)
+        userRegistry.onUserStopping(USER_ID_10)
+        // The user is dying, but the broadcast for removing it was not received yet
+        aliveUserIds = listOf(USER_ID_0)
+
+        assertThat(userRegistry.isUserExistent(USER_ID_10)).isFalse()
+        assertThat(userManagerQueryCount).isEqualTo(1)
+    }
+
+    @Test
+    fun isUserExistent_stoppingUserAlive_returnsTrueAndStopsQuerying() {
+        aliveUserIds = listOf(USER_ID_0, USER_ID_10)
+        userRegistry.onUserStarting(USER_ID_10)
+        userRegistry.onUserStopping(USER_ID_10)
+
+        assertThat(userRegistry.isUserExistent(USER_ID_10)).isTrue()
+        assertThat(userRegistry.isUserExistent(USER_ID_10)).isTrue()
+        assertThat(userManagerQueryCount).isEqualTo(1)
+    }
+
+    @Test
+    fun isUserExistent_stoppingUserStartedAgain_doesNotQueryUserManager() {
+        userRegistry.onUserStarting(USER_ID_10)
+        userRegistry.onUserStopping(USER_ID_10)
+        userRegistry.onUserStarting(USER_ID_10)
+
+        assertThat(userRegistry.isUserExistent(USER_ID_10)).isTrue()
+        assertThat(userManagerQueryCount).isEqualTo(0)
+    }
+
+    private fun userIntent(action: String, userId: Int): Intent =
+        Intent(action).putExtra(Intent.EXTRA_USER, UserHandle.of(userId))
+
+    companion object {
+        private const val USER_ID_0 = 0
+        private const val USER_ID_10 = 10
+        private const val USER_ID_11 = 11
+    }
+}
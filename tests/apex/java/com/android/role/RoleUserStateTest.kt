@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.role
+
+import android.os.Build
+import android.os.Process
+import android.os.UserHandle
+import androidx.test.filters.SdkSuppress
+import com.android.role.persistence.RolesPersistence
+import com.android.role.persistence.RolesState
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import org.mockito.ArgumentMatchers.any
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.`when`
+
+@SdkSuppress(minSdkVersion = Build.VERSION_CODES.S)
+class RoleUserStateTest {
+    private val userId = Process.myUserHandle().identifier
+    private val persistence = mock(RolesPersistence::class.java)
+
+    private lateinit var userState: RoleUserState
+
+    @Before
+    fun setUp() {
+        val roles =
+            mapOf(
+                ROLE_NAME_NO_HOLDER to emptySet(),
+                ROLE_NAME_ONE_HOLDER to setOf(HOLDER_1),
+                ROLE_NAME_TWO_HOLDERS to setOf(HOLDER_1, HOLDER_2)
+            )
+        `when`(persistence.readForUser(any(UserHandle::class.java)))
+            .thenReturn(RolesState(VERSION, null, roles))
+        userState =
+            RoleUserState.createForTesting(
+                userId,
+                persistence,
+                mock(RoleUserState.Callback::class.java)
+            )
+    }
+
+    @After
+    fun destroyUserState() {
+        userState.destroy()
+    }
+
+    @Test
+    fun isRoleHolder_returnsWhetherPackageHoldsRole() {
+        assertThat(userState.isRoleHolder(ROLE_NAME_TWO_HOLDERS, HOLDER_1)).isTrue()
+        assertThat(userState.isRoleHolder(ROLE_NAME_TWO_HOLDERS, HOLDER_2)).isTrue()
+        assertThat(userState.isRoleHolder(ROLE_NAME_ONE_HOLDER, HOLDER_2)).isFalse()
+        assertThat(userState.isRoleHolder(ROLE_NAME_NO_HOLDER, HOLDER_1)).isFalse()
+        assertThat(userState.isRoleHolder(ROLE_NAME_UNKNOWN, HOLDER_1)).isFalse()
+    }
+
+    @Test
+    fun getSingleRoleHolder_returnsHolderOrNull() {
+        assertThat(userState.getSingleRoleHolder(ROLE_NAME_ONE_HOLDER)).isEqualTo(HOLDER_1)
+        assertThat(userState.getSingleRoleHolder(ROLE_NAME_TWO_HOLDERS))
+            .isAnyOf(HOLDER_1, HOLDER_2)
+        assertThat(userState.getSingleRoleHolder(ROLE_NAME_NO_HOLDER)).isNull()
+        assertThat(userState.getSingleRoleHolder(ROLE_NAME_UNKNOWN)).isNull()
+    }
+
+    @Test
+    fun getRoleHolderCount_returnsNumberOfHolders() {
+        assertThat(userState.getRoleHolderCount(ROLE_NAME_TWO_HOLDERS)).isEqualTo(2)
+        assertThat(userState.getRoleHolderCount(ROLE_NAME_ONE_HOLDER)).isEqualTo(1)
+        assertThat(userState.getRoleHolderCount(ROLE_NAME_NO_HOLDER)).isEqualTo(0)
+        assertThat(userState.getRoleHolderCount(ROLE_NAME_UNKNOWN)).isEqualTo(0)
+    }
+
+    @Test
+    fun addRoleHoldersTo_addsHoldersAfterExistingElements() {
+        val packageNames = mutableListOf(HOLDER_3)
+
+        assertThat(userState.addRoleHoldersTo(ROLE_NAME_TWO_HOLDERS, packageNames)).isTrue()
+
+        assertThat(packageNames).containsExactly(HOLDER_3, HOLDER_1, HOLDER_2)
+        assertThat(packageNames.first()).isEqualTo(HOLDER_3)
+    }
+
+    @Test
+    fun addRoleHoldersTo_roleWithoutHolders_returnsTrueAndAddsNothing() {
+        val packageNames = mutableListOf<String>()
+
+        assertThat(userState.addRoleHoldersTo(ROLE_NAME_NO_HOLDER, packageNames)).isTrue()
+
+        assertThat(packageNames).isEmpty()
+    }
+
+    @Test
+    fun addRoleHoldersTo_unknownRole_returnsFalseAndAddsNothing() {
+        val packageNames = mutableListOf<String>()
+
+        assertThat(userState.addRoleHoldersTo(ROLE_NAME_UNKNOWN, packageNames)).isFalse()
+
+        assertThat(packageNames).isEmpty()
+    }
+
+    @Test
+    fun queries_followRoleHolderChanges() {
+        assertThat(userState.addRoleHolder(ROLE_NAME_NO_HOLDER, HOLDER_3)).isTrue()
+        assertThat(userState.removeRoleHolder(ROLE_NAME_ONE_HOLDER, HOLDER_1)).isTrue()
+
+        assertThat(userState.isRoleHolder(ROLE_NAME_NO_HOLDER, HOLDER_3)).isTrue()
+        assertThat(userState.getSingleRoleHolder(ROLE_NAME_NO_HOLDER)).isEqualTo(HOLDER_3)
+        assertThat(userState.getRoleHolderCount(ROLE_NAME_NO_HOLDER)).isEqualTo(1)
+        assertThat(userState.isRoleHolder(ROLE_NAME_ONE_HOLDER, HOLDER_1)).isFalse()
+        assertThat(userState.getSingleRoleHolder(ROLE_NAME_ONE_HOLDER)).isNull()
+        assertThat(userState.getRoleHolderCount(ROLE_NAME_ONE_HOLDER)).isEqualTo(0)
+    }
+
+    @Test
+    fun queries_matchGetRoleHolders() {
+        for (roleName in listOf(ROLE_NAME_NO_HOLDER, ROLE_NAME_ONE_HOLDER, ROLE_NAME_TWO_HOLDERS)) {
+            val roleHolders = userState.getRoleHolders(roleName)!!
+            val packageNames = mutableListOf<String>()
+            userState.addRoleHoldersTo(roleName, packageNames)
+
+            assertThat(packageNames).containsExactlyElementsIn(roleHolders).inOrder()
+            assertThat(userState.getRoleHolderCount(roleName)).isEqualTo(roleHolders.size)
+            assertThat(userState.getSingleRoleHolder(roleName))
+                .isEqualTo(roleHolders.firstOrNull())
+        }
+    }
+
+    companion object {
+        private const val VERSION = 1
+        private const val ROLE_NAME_NO_HOLDER = "roleNameNoHolder"
+        private const val ROLE_NAME_ONE_HOLDER = "roleNameOneHolder"
+        private const val ROLE_NAME_TWO_HOLDERS = "roleNameTwoHolders"
+        private const val ROLE_NAME_UNKNOWN = "roleNameUnknown"
+        private const val HOLDER_1 = "holder1"
+        private const val HOLDER_2 = "holder2"
+        private const val HOLDER_3 = "holder3"
+    }
+}
@@ -70,7 +70,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
@@ -911,6 +913,49 @@ public class RoleManagerTest {
         assertThat(result.second).isEqualTo(user);
     }
 
+    @Test
+    public void addOnRoleHoldersChangedListenerAndChangeRoleHoldersInBurstThenIsNotifiedForRole()
+            throws Exception {
+        List<String> notifiedRoleNames = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<Void> notifiedFuture = new CompletableFuture<>();
+        OnRoleHoldersChangedListener listener = (roleName, user) -> {
+            notifiedRoleNames.add(roleName);
+            notifiedFuture.complete(null);
+        };
+        UserHandle user = Process.myUserHandle();
+        runWithShellPermissionIdentity(() -> sRoleManager.addOnRoleHoldersChangedListenerAsUser(
+                sContext.getMainExecutor(), listener, user));
+        try {
+            CallbackFuture addFuture = new CallbackFuture();
+            CallbackFuture removeFuture = new CallbackFuture();
+            CallbackFuture addAgainFuture = new CallbackFuture();
+            runWithShellPermissionIdentity(() -> {
+                sRoleManager.addRoleHolderAsUser(ROLE_NAME, APP_PACKAGE_NAME, 0, user,
+                        sContext.getMainExecutor(), addFuture);
+                sRoleManager.removeRoleHolderAsUser(ROLE_NAME, APP_PACKAGE_NAME, 0, user,
+                        sContext.getMainExecutor(), removeFuture);
+                sRoleManager.addRoleHolderAsUser(ROLE_NAME, APP_PACKAGE_NAME, 0, user,
+                        sContext.getMainExecutor(), addAgainFuture);
+            });
+            assertThat(addFuture.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+            assertThat(removeFuture.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+            assertThat(addAgainFuture.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+            notifiedFuture.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            // Wait for any notification still pending for the later changes
+            Thread.sleep(UNEXPECTED_TIMEOUT_MILLIS);
+        } finally {
+            runWithShellPermissionIdentity(() ->
+                    sRoleManager.removeOnRoleHoldersChangedListenerAsUser(listener, user));
+        }
+
+        // Changes within the same delay are notified together, but how many of the three changes
+        // fall within one delay depends on timing, so only check there is at most one notification
+        // per change
+        List<String> roleNames = new ArrayList<>(notifiedRoleNames);
+        assertThat(roleNames.size()).isAtMost(3);
+        assertThat(new HashSet<>(roleNames)).containsExactly(ROLE_NAME);
+    }
+
     @Test
     public void addAndRemoveOnRoleHoldersChangedListenerAndAddRoleHolderThenIsNotNotified()
             throws Exception {
@@ -3204,6 +3204,30 @@ class SafetyCenterManagerTest {
         assertThat(safetyCenterDataFromListener).isEqualTo(safetyCenterDataFromConfig)
     }
 
+    @Test
+    fun addOnSafetyCenterDataChangedListener_successiveChanges_listenerDataMatchesApiData() {
+        safetyCenterTestHelper.setConfig(safetyCenterTestConfigs.multipleSourcesConfig)
+        val listener = safetyCenterTestHelper.addListener()
+        val updates =
+            listOf(
+                SOURCE_ID_1 to safetySourceTestData.recommendationWithGeneralIssue,
+                // Adds a more severe issue before the existing one
+                SOURCE_ID_2 to safetySourceTestData.criticalWithResolvingGeneralIssue,
+                // Removes the first issue
+                SOURCE_ID_1 to safetySourceTestData.information,
+                SOURCE_ID_2 to null
+            )
+
+        for ((sourceId, safetySourceData) in updates) {
+            safetyCenterTestHelper.setData(sourceId, safetySourceData)
+            val safetyCenterDataFromListener = listener.receiveSafetyCenterData()
+
+            // On U+ the listener receives changes as deltas applied to its previous data
+            assertThat(safetyCenterDataFromListener)
+                .isEqualTo(safetyCenterManager.getSafetyCenterDataWithPermission())
+        }
+    }
+
     @Test
     fun dismissSafetyCenterIssue_existing_callsListenerAndDismisses() {
         safetyCenterTestHelper.setConfig(safetyCenterTestConfigs.singleSourceConfig)
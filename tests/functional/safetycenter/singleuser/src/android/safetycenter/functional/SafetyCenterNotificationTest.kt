@@ -223,6 +223,35 @@ class SafetyCenterNotificationTest {
         )
     }
 
+    @Test
+    @SdkSuppress(minSdkVersion = UPSIDE_DOWN_CAKE)
+    fun setSafetySourceData_withNotificationBehaviorDelay_sendsNotificationWithoutNewData() {
+        SafetyCenterFlags.immediateNotificationBehaviorIssues = emptySet()
+        SafetyCenterFlags.notificationsMinDelay = TIMEOUT_SHORT
+        val data =
+            safetySourceTestData
+                .defaultRecommendationDataBuilder()
+                .addIssue(
+                    safetySourceTestData
+                        .defaultRecommendationIssueBuilder("Notify later", "This is not urgent.")
+                        .setNotificationBehavior(SafetySourceIssue.NOTIFICATION_BEHAVIOR_DELAYED)
+                        .build()
+                )
+                .build()
+
+        safetyCenterTestHelper.setData(SINGLE_SOURCE_ID, data)
+
+        // The delayed issue is notified once its delay elapsed, without Safety Center receiving
+        // any new data.
+        TestNotificationListener.waitForSingleNotificationMatching(
+            NotificationCharacteristics(
+                title = "Notify later",
+                text = "This is not urgent.",
+                actions = listOf("See issue")
+            )
+        )
+    }
+
     @Test
     @SdkSuppress(minSdkVersion = UPSIDE_DOWN_CAKE)
     fun setSafetySourceData_withNotificationBehaviorDelayOfZero_sendsNotificationImmediately() {
@@ -526,6 +555,107 @@ class SafetyCenterNotificationTest {
         TestNotificationListener.waitForZeroNotifications()
     }
 
+    @Test
+    fun setSafetySourceData_twiceUpdatingOneOfTwoIssues_onlyUpdatesItsNotification() {
+        val otherIssue =
+            safetySourceTestData
+                .defaultInformationIssueBuilder(title = "Other", summary = "Unchanged")
+                .build()
+        val data1 =
+            safetySourceTestData
+                .defaultRecommendationDataBuilder()
+                .addIssue(
+                    safetySourceTestData
+                        .defaultRecommendationIssueBuilder("Initial", "Blah")
+                        .build()
+                )
+                .addIssue(otherIssue)
+                .build()
+        val data2 =
+            safetySourceTestData
+                .defaultRecommendationDataBuilder()
+                .addIssue(
+                    safetySourceTestData
+                        .defaultRecommendationIssueBuilder("Revised", "Different")
+                        .build()
+                )
+                .addIssue(otherIssue)
+                .build()
+        val otherCharacteristics =
+            NotificationCharacteristics(
+                title = "Other",
+                text = "Unchanged",
+                actions = listOf("Review")
+            )
+
+        safetyCenterTestHelper.setData(SINGLE_SOURCE_ID, data1)
+
+        val initialNotifications =
+            TestNotificationListener.waitForNotificationsMatching(
+                NotificationCharacteristics(
+                    title = "Initial",
+                    text = "Blah",
+                    actions = listOf("See issue")
+                ),
+                otherCharacteristics
+            )
+
+        safetyCenterTestHelper.setData(SINGLE_SOURCE_ID, data2)
+
+        val revisedNotifications =
+            TestNotificationListener.waitForNotificationsMatching(
+                NotificationCharacteristics(
+                    title = "Revised",
+                    text = "Different",
+                    actions = listOf("See issue")
+                ),
+                otherCharacteristics
+            )
+        assertThat(revisedNotifications.map { it.statusBarNotification.key })
+            .containsExactlyElementsIn(initialNotifications.map { it.statusBarNotification.key })
+    }
+
+    @Test
+    fun setSafetySourceData_twiceRemovingOneOfTwoIssues_onlyCancelsItsNotification() {
+        val otherIssue =
+            safetySourceTestData
+                .defaultInformationIssueBuilder(title = "Other", summary = "Unchanged")
+                .build()
+        val data1 =
+            safetySourceTestData
+                .defaultRecommendationDataBuilder()
+                .addIssue(
+                    safetySourceTestData
+                        .defaultRecommendationIssueBuilder("Removed", "Blah")
+                        .build()
+                )
+                .addIssue(otherIssue)
+                .build()
+        val data2 =
+            safetySourceTestData.defaultRecommendationDataBuilder().addIssue(otherIssue).build()
+        val otherCharacteristics =
+            NotificationCharacteristics(
+                title = "Other",
+                text = "Unchanged",
+                actions = listOf("Review")
+            )
+
+        safetyCenterTestHelper.setData(SINGLE_SOURCE_ID, data1)
+
+        TestNotificationListener.waitForNotificationsMatching(
+            NotificationCharacteristics(
+                title = "Removed",
+                text = "Blah",
+                actions = listOf("See issue")
+            ),
+            otherCharacteristics
+        )
+
+        safetyCenterTestHelper.setData(SINGLE_SOURCE_ID, data2)
+
+        TestNotificationListener.waitForSingleNotificationMatching(otherCharacteristics)
+    }
+
     // TODO(b/284271124): Decide what to do with existing notifications when flag flipped off
     @Test
     fun setSafetySourceData_removingAnIssue_afterFlagTurnedOff_noNotificationChanges() {